@@ -1,6 +1,7 @@
 package com.bad.batch.config.security;
 
-import com.bad.batch.model.entities.User;
+import com.bad.batch.dto.security.AuthPrincipal;
+import com.bad.batch.dto.security.ParsedToken;
 import com.bad.batch.repository.UserRepository;
 import com.bad.batch.service.JwtService;
 import jakarta.servlet.FilterChain;
@@ -28,10 +29,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private static final Logger log = LoggerFactory.getLogger(JwtAuthenticationFilter.class);
     private final JwtService jwtService;
     private final UserRepository userRepository;
+    private final TokenAuthenticationCache tokenCache;
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserRepository userRepository) {
+    public JwtAuthenticationFilter(JwtService jwtService, UserRepository userRepository, TokenAuthenticationCache tokenCache) {
         this.jwtService = jwtService;
         this.userRepository = userRepository;
+        this.tokenCache = tokenCache;
     }
 
 
@@ -56,77 +59,73 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         jwt = authHeader.substring(7); // Extraer el token
 
-        try {
-            // 2. Validar si el token ha expirado
-            if (jwtService.isExpired(jwt)) {
-                log.warn("JWT token has expired.");
-                filterChain.doFilter(request, response);
-                return;
-            }
-
-            // 3. Extraer información del token
-            userId = jwtService.extractUserId(jwt);
-            roleName = jwtService.extractRole(jwt); // Esperamos "ADMIN", "DEVELOPER", etc.
-
-            log.debug("Token validated. UserID: {}, Role: {}", userId, roleName);
-
-        } catch (Exception e) {
-            log.error("Error processing JWT token: {}", e.getMessage(), e); // Loggear la excepción completa
-            SecurityContextHolder.clearContext();
+        // Si ya hay autenticación en el contexto no hace falta procesar el token
+        if (SecurityContextHolder.getContext().getAuthentication() != null) {
+            log.trace("Security context already contains authentication. Skipping token authentication.");
             filterChain.doFilter(request, response);
             return;
         }
 
-        // 4. Si tenemos userId, rol y no hay autenticación previa en el contexto
-        if (userId != null && StringUtils.hasText(roleName) && SecurityContextHolder.getContext().getAuthentication() == null) {
-
-            // ---- Validación OBLIGATORIA en BD (descomentada y activada) ----
-            Optional<User> userOptional = userRepository.findById(userId.longValue());
-
-            // Verificar si el usuario existe Y si está habilitado (u otras condiciones como no bloqueado)
-            if (userOptional.isEmpty() || !userOptional.get().isEnabled()) { // Ajusta las condiciones según tu UserEntity (isEnabled, isAccountNonLocked, etc.)
-                log.warn("User ID {} from token not found in DB or is not active/enabled.", userId);
-                SecurityContextHolder.clearContext(); // Limpiar contexto si el usuario no es válido
-                filterChain.doFilter(request, response); // Continuar, pero sin autenticar
-                return; // Salir del filtro para esta solicitud
+        // 2. Buscar el token en la caché de tokens verificados
+        TokenAuthenticationCache.CachedPrincipal cached = tokenCache.get(jwt);
+
+        if (cached == null) {
+            try {
+                // 3. Verificar el token una sola vez y extraer sus claims
+                ParsedToken parsedToken = jwtService.parse(jwt); // Lanza excepción si es inválido o ha expirado
+                userId = parsedToken.userId();
+                roleName = parsedToken.role(); // Esperamos "ADMIN", "DEVELOPER", etc.
+
+                log.debug("Token validated. UserID: {}, Role: {}", userId, roleName);
+
+                // 4. Validación OBLIGATORIA en BD (solo en fallo de caché)
+                Optional<AuthPrincipal> userOptional = userRepository.findAuthPrincipalById(userId);
+
+                // Verificar si el usuario existe Y si está habilitado
+                if (userOptional.isEmpty() || !userOptional.get().isEnabled()) {
+                    log.warn("User ID {} from token not found in DB or is not active/enabled.", userId);
+                    SecurityContextHolder.clearContext(); // Limpiar contexto si el usuario no es válido
+                    filterChain.doFilter(request, response); // Continuar, pero sin autenticar
+                    return; // Salir del filtro para esta solicitud
+                }
+
+                // Usar el email como principal estable del usuario
+                cached = new TokenAuthenticationCache.CachedPrincipal(
+                        userId, userOptional.get().email(), roleName, parsedToken.expiresAt());
+                tokenCache.put(jwt, cached);
+
+            } catch (Exception e) {
+                log.error("Error processing JWT token: {}", e.getMessage(), e); // Loggear la excepción completa
+                SecurityContextHolder.clearContext();
+                filterChain.doFilter(request, response);
+                return;
             }
-            // Si el usuario existe y es válido, obtenemos sus detalles
-            User user = userOptional.get();
-            // Usar un identificador único y estable del usuario como principal (email o username)
-            String principal = user.getEmail(); // O user.getUsername(), dependiendo de lo que uses consistentemente
-            // ---- Fin Validación en BD ---
-
-            // Crear la autoridad directamente con el nombre del rol extraído del token.
-            List<SimpleGrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + roleName));
-            log.debug("Creating Authentication object with principal: {} and authorities: {}", principal, authorities);
-
-            // Crear el objeto Authentication
-            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                    principal,   // Principal obtenido de la BD (email/username)
-                    null,        // Credenciales no necesarias
-                    authorities  // Autoridades (SIN prefijo "ROLE_")
-            );
+        }
 
+        userId = cached.userId();
+        roleName = cached.role();
+        String principal = cached.email();
 
+        // Crear la autoridad directamente con el nombre del rol extraído del token.
+        List<SimpleGrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + roleName));
+        log.debug("Creating Authentication object with principal: {} and authorities: {}", principal, authorities);
 
-            // Establecer la autenticación en el contexto de seguridad
-            SecurityContext context = SecurityContextHolder.createEmptyContext();
-            context.setAuthentication(authToken);
-            SecurityContextHolder.setContext(context);
+        // Crear el objeto Authentication
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                principal,   // Principal obtenido de la BD (email/username)
+                null,        // Credenciales no necesarias
+                authorities  // Autoridades (SIN prefijo "ROLE_")
+        );
 
-            log.info("User {} successfully authenticated with role {}.", principal, roleName);
+        // Establecer la autenticación en el contexto de seguridad
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(authToken);
+        SecurityContextHolder.setContext(context);
 
-            // (Opcional) Agregar ID de usuario a los atributos de la solicitud
-            request.setAttribute("X-User-Id", userId);
+        log.debug("User {} successfully authenticated with role {}.", principal, roleName);
 
-        } else {
-            // Log si ya hay autenticación o si faltan datos del token
-            if (SecurityContextHolder.getContext().getAuthentication() != null) {
-                log.trace("Security context already contains authentication. Skipping token authentication.");
-            } else {
-                log.warn("Could not authenticate user. UserID or Role missing from token.");
-            }
-        }
+        // (Opcional) Agregar ID de usuario a los atributos de la solicitud
+        request.setAttribute("X-User-Id", userId);
 
         // 5. Continuar con la cadena de filtros
         filterChain.doFilter(request, response);
@@ -48,10 +48,10 @@ public class SecurityConfig {
                         .requestMatchers(
                                 "/ws/**"
                         ).permitAll()
-                        // Rutas de error y actuator (si las usas)
+                        // Ruta de error y health check; el resto de actuator (metrics, info) requiere autenticación
                         .requestMatchers(
                                 "/error",
-                                "/actuator/**"
+                                "/actuator/health"
                         ).permitAll()
                         // Keep-alive endpoint
                         .requestMatchers(
@@ -0,0 +1,91 @@
+package com.bad.batch.config.security;
+
+import com.bad.batch.model.events.UserChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Caché acotada de tokens ya verificados. La clave es el hash SHA-256 del token
+ * (nunca se guarda el token en claro) y el valor contiene los claims necesarios
+ * y una instantánea del usuario activo, de modo que una petición con un token
+ * conocido no vuelve a verificar la firma ni consulta la base de datos.
+ */
+@Component
+public class TokenAuthenticationCache {
+    private static final Logger log = LoggerFactory.getLogger(TokenAuthenticationCache.class);
+
+    private final Cache<String, CachedPrincipal> cache;
+
+    public TokenAuthenticationCache(
+            @Value("${jwt.auth-cache.maximum-size:10000}") long maximumSize,
+            @Value("${jwt.auth-cache.ttl-seconds:300}") long ttlSeconds,
+            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt.auth");
+    }
+
+    /**
+     * Devuelve la entrada asociada al token si existe y el token sigue vigente.
+     */
+    public CachedPrincipal get(String token) {
+        String key = hash(token);
+        CachedPrincipal cached = cache.getIfPresent(key);
+        if (cached != null && cached.expiresAt().isBefore(Instant.now())) {
+            cache.invalidate(key);
+            return null;
+        }
+        return cached;
+    }
+
+    public void put(String token, CachedPrincipal principal) {
+        cache.put(hash(token), principal);
+    }
+
+    /**
+     * Elimina todas las entradas de un usuario. Se recorre la caché completa,
+     * pero está acotada y los cambios de usuario son poco frecuentes.
+     */
+    public void invalidateUser(Long userId) {
+        cache.asMap().values().removeIf(p -> p.userId().equals(userId));
+        log.debug("Entradas de token invalidadas para el usuario {}", userId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidateUser(event.userId());
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashed = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hashed);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Datos mínimos para autenticar la petición sin tocar la base de datos.
+     */
+    public record CachedPrincipal(Long userId, String email, String role, Instant expiresAt) {
+    }
+}
@@ -6,19 +6,30 @@ import com.bad.batch.dto.request.ChallengeSubmissionRequest;
 import com.bad.batch.dto.response.ChallengeSubmissionResponse;
 import com.bad.batch.dto.request.ContentRequest;
 import com.bad.batch.dto.response.ContentResponse;
+import com.bad.batch.dto.response.JoinResponse;
+import com.bad.batch.dto.response.SubmissionTicketResponse;
 import com.bad.batch.model.entities.Content;
+import com.bad.batch.service.ContentCatalogSnapshot;
+import com.bad.batch.service.ContentResponseCache;
 import com.bad.batch.service.ContentService;
+import com.bad.batch.service.SubmissionIngestionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -27,7 +38,13 @@ import java.util.Optional;
 @Tag(name = "Contenidos", description = "Gestión de mentorías y desafíos técnicos dentro de SkillLink")
 public class ContentController {
 
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_BATCH_CONTENT_IDS = 100;
+
     private final ContentService contentService;
+    private final ContentResponseCache contentResponseCache;
+    private final ContentCatalogSnapshot contentCatalogSnapshot;
+    private final SubmissionIngestionService submissionIngestionService;
 
     @PostMapping
     @Operation(summary = "Crear nuevo contenido",
@@ -50,31 +67,42 @@ public class ContentController {
 
     @GetMapping
     @Operation(summary = "Listar contenidos",
-            description = "Devuelve contenidos publicados o filtrados por el ID de un usuario (creador o participante).")
-    public ResponseEntity<List<ContentResponse>> getAllContents(@RequestParam(required = false) Long userId) {
+            description = "Devuelve los contenidos publicados y, si se indica un usuario, también los creados por él. Admite paginación.")
+    public ResponseEntity<?> getAllContents(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        validatePage(page, size);
         try {
-            List<Content> contents = (userId != null)
-                    ? contentService.getAllContentsForUser(userId)
-                    : contentService.getAllContents().stream()
-                    .filter(c -> c.getStatus() != null && c.getStatus().name().equals("PUBLISHED"))
-                    .toList();
-            return ResponseEntity.ok(contents.stream().map(contentService::toResponse).toList());
+            // El catálogo público se sirve desde la instantánea ya serializada
+            if (userId == null) {
+                Optional<byte[]> snapshotPage = contentCatalogSnapshot.getPage(page, size);
+                if (snapshotPage.isPresent()) {
+                    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(snapshotPage.get());
+                }
+            }
+            return ResponseEntity.ok(contentService.getAllContentsForUser(userId, page, size));
         } catch (Exception e) {
             System.err.println("Error al listar contenidos: " + e.getMessage());
             e.printStackTrace();
-            // En lugar de propagar la excepción, devolvemos una lista vacía
-            return ResponseEntity.ok(new ArrayList<>());
+            // En lugar de propagar la excepción, devolvemos una página vacía
+            return ResponseEntity.ok(Page.empty(PageRequest.of(page, size)));
         }
     }
 
     @GetMapping("/{id}")
     @Operation(summary = "Obtener contenido por ID",
-            description = "Obtiene los detalles completos de un contenido usando su ID único.")
-    public ResponseEntity<ContentResponse> getContentById(@PathVariable Long id) {
+            description = "Obtiene los detalles completos de un contenido usando su ID único. Admite If-None-Match para responder 304.")
+    public ResponseEntity<byte[]> getContentById(@PathVariable Long id,
+                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            return contentService.getContentById(id)
-                    .map(contentService::toResponse)
-                    .map(ResponseEntity::ok)
+            return contentResponseCache.get(id)
+                    .map(cached -> cached.matches(ifNoneMatch)
+                            ? ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cached.etag()).<byte[]>build()
+                            : ResponseEntity.ok()
+                                    .eTag(cached.etag())
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .body(cached.body()))
                     .orElse(ResponseEntity.notFound().build());
         } catch (Exception e) {
             System.err.println("Error al obtener contenido por ID " + id + ": " + e.getMessage());
@@ -128,11 +156,13 @@ public class ContentController {
 
     @PostMapping("/{id}/join")
     @Operation(summary = "Unirse a contenido",
-            description = "Permite a un usuario participar en una mentoría o desafío.")
-    public ResponseEntity<Void> joinContent(@PathVariable Long id, @RequestParam Long userId) {
+            description = "Permite a un usuario participar en una mentoría o desafío. Si no quedan plazas, entra en la lista de espera (202) y se le avisa por /user/queue/waitlist al obtener plaza.")
+    public ResponseEntity<JoinResponse> joinContent(@PathVariable Long id, @RequestParam Long userId) {
         try {
-            contentService.joinContent(id, userId);
-            return ResponseEntity.ok().build();
+            JoinResponse response = contentService.joinContent(id, userId);
+            return "WAITLISTED".equals(response.getStatus())
+                    ? ResponseEntity.accepted().body(response)
+                    : ResponseEntity.ok(response);
         } catch (Exception e) {
             System.err.println("Error al unirse al contenido ID " + id + ": " + e.getMessage());
             e.printStackTrace();
@@ -168,14 +198,36 @@ public class ContentController {
         }
     }
 
+    @GetMapping("/participants")
+    @Operation(summary = "Listar participantes de varios contenidos",
+            description = "Devuelve, para cada ID de contenido indicado, los IDs de sus participantes. Máximo " + MAX_BATCH_CONTENT_IDS + " contenidos por petición.")
+    public ResponseEntity<Map<Long, List<Long>>> getParticipantsBatch(@RequestParam List<Long> ids) {
+        if (ids.size() > MAX_BATCH_CONTENT_IDS) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(contentService.getParticipants(new LinkedHashSet<>(ids)));
+        } catch (Exception e) {
+            System.err.println("Error al obtener participantes de los contenidos " + ids + ": " + e.getMessage());
+            e.printStackTrace();
+            return ResponseEntity.ok(Collections.emptyMap());
+        }
+    }
+
     @PostMapping("/{id}/submissions")
     @Operation(summary = "Enviar desafío",
-            description = "Envía una solución a un contenido de tipo CHALLENGE. El usuario debe estar unido al contenido.")
-    public ResponseEntity<ChallengeSubmissionResponse> submitChallenge(@PathVariable Long id,
-                                                                       @RequestParam Long userId,
-                                                                       @RequestBody ChallengeSubmissionRequest request) {
+            description = "Envía una solución a un contenido de tipo CHALLENGE. El usuario debe estar unido al contenido. " +
+                    "La entrega se guarda de forma asíncrona: responde 202 con la URL de estado del ticket. " +
+                    "Los reintentos con la misma cabecera Idempotency-Key devuelven el mismo ticket.")
+    public ResponseEntity<SubmissionTicketResponse> submitChallenge(@PathVariable Long id,
+                                                                    @RequestParam Long userId,
+                                                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                                    @RequestBody ChallengeSubmissionRequest request) {
         try {
-            return ResponseEntity.ok(contentService.submitChallenge(id, userId, request));
+            SubmissionTicketResponse ticket = submissionIngestionService.accept(id, userId, idempotencyKey, request);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, ticket.getStatusUrl())
+                    .body(ticket);
         } catch (Exception e) {
             System.err.println("Error al enviar submission para el contenido ID " + id + ": " + e.getMessage());
             e.printStackTrace();
@@ -183,6 +235,16 @@ public class ContentController {
         }
     }
 
+    @GetMapping("/{id}/submissions/status/{ticketId}")
+    @Operation(summary = "Estado de una entrega",
+            description = "Devuelve el estado del ticket de una entrega: ACCEPTED (en cola), STORED (guardada) o REJECTED.")
+    public ResponseEntity<SubmissionTicketResponse> getSubmissionStatus(@PathVariable Long id,
+                                                                        @PathVariable String ticketId) {
+        return submissionIngestionService.getTicket(id, ticketId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping("/{id}/submissions")
     @Operation(summary = "Listar entregas por usuario",
             description = "Devuelve todas las entregas hechas por un usuario en un desafío específico.")
@@ -230,21 +292,34 @@ public class ContentController {
     @GetMapping("/search")
     @Operation(summary = "Buscar contenidos",
             description = "Filtra contenidos por tipo, tecnología, dificultad y creador. Admite paginación.")
-    public ResponseEntity<List<ContentResponse>> searchContents(
+    public ResponseEntity<Page<ContentResponse>> searchContents(
             @RequestParam(required = false) ContentType type,
             @RequestParam(required = false) String tech,
             @RequestParam(required = false) String difficulty,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(required = false) Long userId) {
+        validatePage(page, size);
         try {
-            List<Content> contents = contentService.searchContents(type, tech, difficulty, page, size, userId);
-            List<ContentResponse> responses = contents.stream().map(contentService::toResponse).toList();
-            return ResponseEntity.ok(responses);
+            Page<Content> contents = contentService.searchContents(type, tech, difficulty, page, size, userId);
+            return ResponseEntity.ok(contents.map(contentService::toResponse));
         } catch (Exception e) {
             System.err.println("Error al buscar contenidos: " + e.getMessage());
             e.printStackTrace();
-            return ResponseEntity.ok(Collections.emptyList());
+            return ResponseEntity.ok(Page.empty(PageRequest.of(page, size)));
+        }
+    }
+
+    /**
+     * Comprueba la paginación antes de consultar: un valor inválido responde 400 en lugar de
+     * fallar de nuevo al construir la página vacía de respaldo.
+     */
+    private void validatePage(int page, int size) {
+        if (page < 0) {
+            throw new IllegalArgumentException("El número de página no puede ser negativo.");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("El tamaño de página debe estar entre 1 y " + MAX_PAGE_SIZE + ".");
         }
     }
 
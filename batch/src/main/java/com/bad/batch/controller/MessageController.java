@@ -2,6 +2,8 @@ package com.bad.batch.controller;
 
 import com.bad.batch.websocket.dto.ChatMessageRequest;
 import com.bad.batch.websocket.dto.ChatMessageResponse;
+import com.bad.batch.websocket.dto.MessageCursor;
+import com.bad.batch.websocket.dto.MessageSliceResponse;
 import com.bad.batch.websocket.service.ChatService;
 import com.bad.batch.websocket.service.MessageHistoryService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -10,6 +12,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -92,6 +95,62 @@ public class MessageController {
         return ResponseEntity.ok(messages);
     }
 
+    @GetMapping("/direct/{otherUserId}/cursor")
+    @Operation(
+        summary = "Obtener mensajes directos por cursor",
+        description = "Recupera mensajes directos paginando por cursor opaco ('before' o 'after'), sin conteo total. Sin cursor devuelve los más recientes."
+    )
+    public ResponseEntity<MessageSliceResponse> getDirectMessagesByCursor(
+            @PathVariable Long otherUserId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int size,
+            HttpServletRequest request) {
+        
+        Long currentUserId = extractUserIdFromRequest(request);
+        Slice<ChatMessageResponse> messages = messageHistoryService.getDirectMessages(
+            currentUserId, otherUserId, before, after, size
+        );
+        
+        return ResponseEntity.ok(toSliceResponse(messages));
+    }
+
+    @GetMapping("/challenge/{challengeId}/cursor")
+    @Operation(
+        summary = "Obtener mensajes de challenge por cursor",
+        description = "Recupera mensajes de un challenge paginando por cursor opaco ('before' o 'after'), sin conteo total. Sin cursor devuelve los más recientes."
+    )
+    public ResponseEntity<MessageSliceResponse> getChallengeMessagesByCursor(
+            @PathVariable Long challengeId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int size) {
+        
+        Slice<ChatMessageResponse> messages = messageHistoryService.getChallengeMessages(
+            challengeId, before, after, size
+        );
+        
+        return ResponseEntity.ok(toSliceResponse(messages));
+    }
+
+    @GetMapping("/mentorship/{mentorshipId}/cursor")
+    @Operation(
+        summary = "Obtener mensajes de mentoría por cursor",
+        description = "Recupera mensajes de una mentoría paginando por cursor opaco ('before' o 'after'), sin conteo total. Sin cursor devuelve los más recientes."
+    )
+    public ResponseEntity<MessageSliceResponse> getMentorshipMessagesByCursor(
+            @PathVariable Long mentorshipId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int size) {
+        
+        Slice<ChatMessageResponse> messages = messageHistoryService.getMentorshipMessages(
+            mentorshipId, before, after, size
+        );
+        
+        return ResponseEntity.ok(toSliceResponse(messages));
+    }
+
     @GetMapping("/conversations")
     @Operation(
         summary = "Obtener últimas conversaciones",
@@ -120,6 +179,21 @@ public class MessageController {
         return ResponseEntity.ok(unreadCount);
     }
 
+    @GetMapping("/unread/count/{otherUserId}")
+    @Operation(
+        summary = "Contar mensajes no leídos de una conversación",
+        description = "Obtiene el número de mensajes directos no leídos que otro usuario ha enviado al usuario autenticado."
+    )
+    public ResponseEntity<Long> getUnreadCountForConversation(
+            @PathVariable Long otherUserId,
+            HttpServletRequest request) {
+        
+        Long currentUserId = extractUserIdFromRequest(request);
+        Long unreadCount = messageHistoryService.getUnreadCount(currentUserId, otherUserId);
+        
+        return ResponseEntity.ok(unreadCount);
+    }
+
     @PutMapping("/{messageId}/read")
     @Operation(
         summary = "Marcar mensaje como leído",
@@ -253,6 +327,17 @@ public class MessageController {
                                ", Mensajes creados: 3");
     }
 
+    private MessageSliceResponse toSliceResponse(Slice<ChatMessageResponse> slice) {
+        List<ChatMessageResponse> content = slice.getContent();
+        return MessageSliceResponse.builder()
+            .content(content)
+            .size(content.size())
+            .hasNext(slice.hasNext())
+            .nextBefore(content.isEmpty() ? null : MessageCursor.of(content.get(0)).encode())
+            .nextAfter(content.isEmpty() ? null : MessageCursor.of(content.get(content.size() - 1)).encode())
+            .build();
+    }
+
     private Long extractUserIdFromRequest(HttpServletRequest request) {
         // Primero intentar desde el atributo establecido por JwtAuthenticationFilter
         Long userId = (Long) request.getAttribute("X-User-Id");
@@ -0,0 +1,49 @@
+package com.bad.batch.controller;
+
+import com.bad.batch.dto.response.PresenceResponse;
+import com.bad.batch.websocket.service.PresenceRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/presence")
+@RequiredArgsConstructor
+@Tag(name = "Presencia", description = "Usuarios conectados a las salas de chat de challenges y mentorías")
+@SecurityRequirement(name = "JWT")
+public class PresenceController {
+
+    private final PresenceRegistry presenceRegistry;
+
+    @GetMapping("/challenges/{id}")
+    @Operation(summary = "Presencia en un challenge", description = "Usuarios suscritos ahora mismo al chat del challenge.")
+    public ResponseEntity<PresenceResponse> getChallengePresence(@PathVariable Long id) {
+        return ResponseEntity.ok(presence(PresenceRegistry.RoomType.CHALLENGE, id));
+    }
+
+    @GetMapping("/mentorships/{id}")
+    @Operation(summary = "Presencia en una mentoría", description = "Usuarios suscritos ahora mismo al chat de la mentoría.")
+    public ResponseEntity<PresenceResponse> getMentorshipPresence(@PathVariable Long id) {
+        return ResponseEntity.ok(presence(PresenceRegistry.RoomType.MENTORSHIP, id));
+    }
+
+    @GetMapping("/users/{userId}")
+    @Operation(summary = "Estado de conexión", description = "Indica si el usuario tiene alguna sesión WebSocket abierta.")
+    public ResponseEntity<Map<String, Object>> getUserPresence(@PathVariable Long userId) {
+        return ResponseEntity.ok(Map.of(
+                "userId", userId,
+                "online", presenceRegistry.isOnline(userId),
+                "sessions", presenceRegistry.getSessionCount(userId)));
+    }
+
+    private PresenceResponse presence(PresenceRegistry.RoomType type, Long id) {
+        Set<Long> users = presenceRegistry.getUsers(type, id);
+        return new PresenceResponse(type.name(), id, users.size(), users);
+    }
+}
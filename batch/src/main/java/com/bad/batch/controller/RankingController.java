@@ -0,0 +1,82 @@
+package com.bad.batch.controller;
+
+import com.bad.batch.dto.response.RankingEntryResponse;
+import com.bad.batch.model.enums.RankingType;
+import com.bad.batch.service.Leaderboard;
+import com.bad.batch.service.LeaderboardService;
+import com.bad.batch.websocket.service.SenderSummaryCache;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/rankings")
+@RequiredArgsConstructor
+@Tag(name = "Rankings", description = "Clasificaciones globales, por challenge y por tecnología")
+@SecurityRequirement(name = "JWT")
+public class RankingController {
+
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_WINDOW = 50;
+
+    private final LeaderboardService leaderboardService;
+    private final SenderSummaryCache senderSummaryCache;
+
+    @GetMapping("/{type}/top")
+    @Operation(summary = "Mejores posiciones",
+            description = "Devuelve las primeras posiciones del ranking. CHALLENGE_SPECIFIC requiere challengeId y TECHNOLOGY_SPECIFIC requiere category.")
+    public ResponseEntity<List<RankingEntryResponse>> getTop(
+            @PathVariable RankingType type,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Long challengeId,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            LeaderboardService.BoardKey key = LeaderboardService.BoardKey.of(type, category, challengeId);
+            int boundedLimit = Math.max(1, Math.min(limit, MAX_LIMIT));
+            return ResponseEntity.ok(toResponse(leaderboardService.top(key, boundedLimit)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/{type}/around/{userId}")
+    @Operation(summary = "Posiciones alrededor de un usuario",
+            description = "Devuelve la posición del usuario junto con las entradas inmediatamente anteriores y posteriores.")
+    public ResponseEntity<List<RankingEntryResponse>> getAround(
+            @PathVariable RankingType type,
+            @PathVariable Long userId,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) Long challengeId,
+            @RequestParam(defaultValue = "5") int window) {
+        try {
+            LeaderboardService.BoardKey key = LeaderboardService.BoardKey.of(type, category, challengeId);
+            List<Leaderboard.Entry> entries = leaderboardService.around(key, userId, Math.max(0, Math.min(window, MAX_WINDOW)));
+            if (entries.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(toResponse(entries));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private List<RankingEntryResponse> toResponse(List<Leaderboard.Entry> entries) {
+        return entries.stream()
+                .map(entry -> new RankingEntryResponse(entry.userId(), userName(entry.userId()), entry.position(), entry.points()))
+                .toList();
+    }
+
+    // Nombre desde la caché de resúmenes de usuario, sin consultar la base de datos en cada fila
+    private String userName(Long userId) {
+        try {
+            return senderSummaryCache.get(userId).displayName();
+        } catch (IllegalArgumentException e) {
+            return "Desconocido";
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.bad.batch.controller;
+
+import com.bad.batch.dto.request.SubmissionReviewRequest;
+import com.bad.batch.dto.response.ChallengeSubmissionResponse;
+import com.bad.batch.service.SubmissionReviewQueue;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/submissions")
+@RequiredArgsConstructor
+@Tag(name = "Revisión de entregas", description = "Cola de revisión de las soluciones enviadas a los challenges")
+@SecurityRequirement(name = "JWT")
+@PreAuthorize("hasAnyRole('MENTOR', 'ADMIN')")
+public class SubmissionReviewController {
+
+    private static final int MAX_CLAIM_BATCH = 50;
+
+    private final SubmissionReviewQueue submissionReviewQueue;
+
+    @PostMapping("/claim")
+    @Operation(summary = "Reclamar entregas",
+            description = "Asigna al revisor autenticado (mentor o administrador) un lote de entregas pendientes, primero las de los challenges que antes terminan. Máximo " + MAX_CLAIM_BATCH + " por petición.")
+    public ResponseEntity<List<ChallengeSubmissionResponse>> claim(@RequestAttribute("X-User-Id") Long reviewerId,
+                                                                   @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(submissionReviewQueue.claim(reviewerId, Math.max(1, Math.min(limit, MAX_CLAIM_BATCH))));
+    }
+
+    @PutMapping("/{id}/review")
+    @Operation(summary = "Revisar entrega",
+            description = "Puntúa y aprueba o rechaza una entrega reclamada por el revisor autenticado.")
+    public ResponseEntity<ChallengeSubmissionResponse> review(@PathVariable Long id,
+                                                              @RequestAttribute("X-User-Id") Long reviewerId,
+                                                              @RequestBody SubmissionReviewRequest request) {
+        try {
+            return ResponseEntity.ok(submissionReviewQueue.review(id, reviewerId, request));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.bad.batch.dto.request;
+
+import lombok.Data;
+
+@Data
+public class SubmissionReviewRequest {
+    private Integer score; // 0 a 100
+    private String feedback;
+    private Boolean approved;
+}
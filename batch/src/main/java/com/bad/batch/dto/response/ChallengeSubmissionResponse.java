@@ -1,5 +1,6 @@
 package com.bad.batch.dto.response;
 
+import com.bad.batch.model.entities.ChallengeSubmission;
 import lombok.Data;
 import java.time.LocalDateTime;
 
@@ -15,5 +16,19 @@ public class ChallengeSubmissionResponse {
     private Integer score;
     private String feedback;
     private Long reviewerId;
-}
 
+    public static ChallengeSubmissionResponse from(ChallengeSubmission submission) {
+        ChallengeSubmissionResponse response = new ChallengeSubmissionResponse();
+        response.setId(submission.getId());
+        response.setParticipationId(submission.getParticipation().getId());
+        response.setRepositoryUrl(submission.getRepositoryUrl());
+        response.setDemoUrl(submission.getDemoUrl());
+        response.setDescription(submission.getDescription());
+        response.setStatus(submission.getStatus() != null ? submission.getStatus().name() : null);
+        response.setSubmittedAt(submission.getSubmittedAt());
+        response.setScore(submission.getScore());
+        response.setFeedback(submission.getFeedback());
+        response.setReviewerId(submission.getReviewer() != null ? submission.getReviewer().getId() : null);
+        return response;
+    }
+}
@@ -1,14 +1,18 @@
 package com.bad.batch.dto.response;
 
 import com.bad.batch.model.enums.ChallengeType;
+import com.bad.batch.model.enums.ContentStatus;
 import com.bad.batch.model.enums.ContentType;
+import com.bad.batch.model.enums.DifficultyLevel;
 import com.bad.batch.model.enums.MentorshipType;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 import java.util.Set;
 
 @Data
+@NoArgsConstructor
 public class ContentResponse {
     private Long id;
     private String title;
@@ -35,4 +39,40 @@ public class ContentResponse {
     private String acceptanceCriteria;
     private Boolean allowsTeams;
     private ChallengeType challengeType;
+
+    /**
+     * Constructor usado por la proyección JPQL del listado. Las tecnologías se cargan
+     * aparte y solo se conservan los campos específicos del tipo de contenido.
+     */
+    public ContentResponse(Long id, String title, String description, Long creatorId, String creatorName,
+                           ContentStatus status, DifficultyLevel difficulty, Integer maxParticipants,
+                           LocalDateTime startDate, LocalDateTime endDate,
+                           LocalDateTime createdAt, LocalDateTime updatedAt, ContentType type,
+                           Integer durationMinutes, MentorshipType mentorshipType, Boolean isLive,
+                           String problemStatement, String acceptanceCriteria, Boolean allowsTeams,
+                           ChallengeType challengeType) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.creatorId = creatorId;
+        this.creatorName = creatorName;
+        this.status = status != null ? status.name() : null;
+        this.difficulty = difficulty != null ? difficulty.name() : null;
+        this.maxParticipants = maxParticipants;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.type = type;
+        if (type == ContentType.MENTORSHIP) {
+            this.durationMinutes = durationMinutes;
+            this.mentorshipType = mentorshipType;
+            this.isLive = isLive;
+        } else if (type == ContentType.CHALLENGE) {
+            this.problemStatement = problemStatement;
+            this.acceptanceCriteria = acceptanceCriteria;
+            this.allowsTeams = allowsTeams;
+            this.challengeType = challengeType;
+        }
+    }
 }
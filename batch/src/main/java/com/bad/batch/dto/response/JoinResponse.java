@@ -0,0 +1,13 @@
+package com.bad.batch.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JoinResponse {
+    private String status; // JOINED o WAITLISTED
+    private Long waitlistPosition; // Solo en lista de espera (1 = el siguiente)
+}
@@ -0,0 +1,17 @@
+package com.bad.batch.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceResponse {
+    private String roomType; // CHALLENGE o MENTORSHIP
+    private Long roomId;
+    private int userCount;
+    private Set<Long> userIds;
+}
@@ -0,0 +1,15 @@
+package com.bad.batch.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RankingEntryResponse {
+    private Long userId;
+    private String userName;
+    private Integer position;
+    private Integer points;
+}
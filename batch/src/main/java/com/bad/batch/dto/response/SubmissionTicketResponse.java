@@ -0,0 +1,17 @@
+package com.bad.batch.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SubmissionTicketResponse {
+    private String ticketId;
+    private Long contentId;
+    private String status; // ACCEPTED, STORED o REJECTED
+    private Long submissionId; // Solo cuando ya está guardada
+    private String statusUrl;
+    private String error; // Motivo del rechazo
+}
@@ -0,0 +1,14 @@
+package com.bad.batch.dto.security;
+
+import com.bad.batch.model.enums.UserRole;
+
+/**
+ * Proyección mínima de User para autenticación. Evita hidratar la entidad
+ * completa (perfil y colecciones de contenidos y mensajes) en cada petición.
+ */
+public record AuthPrincipal(Long id, String email, String password, UserRole role, Boolean isActive) {
+
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(isActive);
+    }
+}
@@ -0,0 +1,13 @@
+package com.bad.batch.dto.security;
+
+import java.time.Instant;
+
+/**
+ * Resultado inmutable de verificar un JWT una única vez.
+ */
+public record ParsedToken(Long userId, String role, Instant expiresAt) {
+
+    public boolean isExpired() {
+        return expiresAt.isBefore(Instant.now());
+    }
+}
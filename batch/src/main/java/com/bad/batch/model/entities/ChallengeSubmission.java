@@ -9,7 +9,10 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "challenge_submissions")
+@Table(name = "challenge_submissions", indexes = {
+    @Index(name = "idx_submissions_participation", columnList = "participation_id"),
+    @Index(name = "idx_submissions_status", columnList = "status")
+})
 @Data
 public class ChallengeSubmission {
     @Id
@@ -31,6 +34,8 @@ public class ChallengeSubmission {
 
     private LocalDateTime submittedAt;
     private LocalDateTime reviewedAt;
+    // Momento en que un revisor la reclamó; las reclamaciones caducadas vuelven a la cola
+    private LocalDateTime claimedAt;
 
     private Integer score;
     private String feedback;
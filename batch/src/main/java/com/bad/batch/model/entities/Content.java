@@ -3,8 +3,12 @@ package com.bad.batch.model.entities;
 import com.bad.batch.model.enums.ContentStatus;
 import com.bad.batch.model.enums.ContentType;
 import com.bad.batch.model.enums.DifficultyLevel;
+import com.bad.batch.model.listeners.ContentEntityListener;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -12,9 +16,13 @@ import java.time.LocalDateTime;
 import java.util.Set;
 
 @Entity
-@Table(name = "contents")
+@Table(name = "contents", indexes = {
+    @Index(name = "idx_contents_status_created", columnList = "status, created_at"),
+    @Index(name = "idx_contents_creator_created", columnList = "creator_id, created_at")
+})
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "content_type")
+@EntityListeners(ContentEntityListener.class)
 @Data
 public class Content {
     @Id
@@ -42,6 +50,13 @@ public class Content {
     private Set<String> requiredTechnologies;
 
     private Integer maxParticipants;
+
+    // Plazas ocupadas. Solo cambia mediante los UPDATE condicionales de ContentRepository
+    // (reserveSeat/releaseSeat), nunca al guardar la entidad, para no pisar reservas concurrentes
+    @ColumnDefault("0")
+    @Column(name = "participant_count", nullable = false, updatable = false)
+    private Integer participantCount = 0;
+
     private LocalDateTime startDate;
     private LocalDateTime endDate;
 
@@ -51,6 +66,8 @@ public class Content {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @OneToMany(mappedBy = "content", cascade = CascadeType.ALL)
     private Set<Participation> participations;
 
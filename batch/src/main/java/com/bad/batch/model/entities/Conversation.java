@@ -0,0 +1,45 @@
+package com.bad.batch.model.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resumen de una conversación directa entre dos usuarios. La pareja se guarda
+ * ordenada (userLowId &lt; userHighId) para que exista una sola fila por conversación.
+ * Se actualiza en cada envío y permite obtener las últimas
+ * conversaciones de un usuario sin agrupar toda la tabla de mensajes.
+ */
+@Entity
+@Table(name = "conversations",
+    uniqueConstraints = @UniqueConstraint(name = "uk_conversation_pair", columnNames = {"user_low_id", "user_high_id"}),
+    indexes = {
+        @Index(name = "idx_conversation_low_last", columnList = "user_low_id, last_message_at"),
+        @Index(name = "idx_conversation_high_last", columnList = "user_high_id, last_message_at")
+    })
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Conversation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_low_id", nullable = false)
+    private Long userLowId;
+
+    @Column(name = "user_high_id", nullable = false)
+    private Long userHighId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "last_message_at", nullable = false)
+    private LocalDateTime lastMessageAt;
+}
@@ -6,9 +6,9 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 @Entity
 @Table(name = "messages", indexes = {
@@ -24,8 +24,10 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class Message {
     
+    // Secuencia con asignación en bloques: a diferencia de IDENTITY permite agrupar INSERTs en lotes JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_id_gen")
+    @SequenceGenerator(name = "messages_id_gen", sequenceName = "messages_id_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false, length = 1000)
@@ -61,7 +63,8 @@ public class Message {
     @Builder.Default
     private Boolean isRead = false;
     
-    @CreationTimestamp
+    // Se asigna al persistir (no al hacer flush) y con la precisión de la columna, para que
+    // la respuesta difundida y los cursores lleven exactamente la fecha que se guarda
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
@@ -76,6 +79,13 @@ public class Message {
     @Enumerated(EnumType.STRING)
     private ConversationType conversationType;
     
+    @PrePersist
+    void onPersist() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        }
+    }
+    
     public enum ConversationType {
         DIRECT,      // Mensaje directo entre dos usuarios
         CHALLENGE,   // Mensaje en chat de challenge
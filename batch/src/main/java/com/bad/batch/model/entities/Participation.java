@@ -3,13 +3,17 @@ package com.bad.batch.model.entities;
 import com.bad.batch.model.enums.ParticipationStatus;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Set;
 
 @Entity
-@Table(name = "participations")
+@Table(name = "participations",
+    uniqueConstraints = @UniqueConstraint(name = "uk_participation_user_content", columnNames = {"user_id", "content_id"}),
+    indexes = @Index(name = "idx_participations_content", columnList = "content_id"))
 @Data
 public class Participation {
     @Id
@@ -31,6 +35,8 @@ public class Participation {
     private LocalDateTime completedAt;
 
     // Para desafíos
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @OneToMany(mappedBy = "participation", cascade = CascadeType.ALL)
     private Set<ChallengeSubmission> submissions;
 
@@ -1,12 +1,15 @@
 package com.bad.batch.model.entities;
 
 import com.bad.batch.model.enums.UserRole; // Tu enum de roles
+import com.bad.batch.model.listeners.UserEntityListener;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;   // ¡Añadido! Necesario con @NoArgsConstructor y @Builder a veces
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;    // ¡Añadido! Necesario para JPA
+import lombok.ToString;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.springframework.security.core.GrantedAuthority;
@@ -24,6 +27,7 @@ import java.util.Set; // Asegúrate de que las entidades Profile, Content, Messa
 @AllArgsConstructor   // ¡Importante si usas @Builder con constructor con todos los args!
 @Entity
 @Table(name = "users")
+@EntityListeners(UserEntityListener.class)
 public class User implements UserDetails { // Correcto que implemente UserDetails
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -60,15 +64,23 @@ public class User implements UserDetails { // Correcto que implemente UserDetail
     // Nota: Si aún no tienes estas entidades (Profile, Content, Message), déjalas comentadas por ahora.
     // O si ya las tienes, asegúrate de que sus paquetes sean correctos.
 
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @OneToOne(mappedBy = "user", cascade = CascadeType.ALL)
     private Profile profile; // Asume que Profile es una entidad en el paquete Model
 
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @OneToMany(mappedBy = "creator", cascade = CascadeType.ALL)
     private Set<Content> createdContent; // Asume que Content es una entidad en el paquete Model
 
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @OneToMany(mappedBy = "sender", cascade = CascadeType.ALL)
     private Set<Message> sentMessages; // Asume que Message es una entidad en el paquete Model
 
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @OneToMany(mappedBy = "recipient", cascade = CascadeType.ALL)
     private Set<Message> receivedMessages; // Asume que Message es una entidad en el paquete Model
 
@@ -4,6 +4,9 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.*;
 import jakarta.persistence.Table;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
@@ -17,8 +20,10 @@ public class UserStats {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Las estadísticas se escriben en segundo plano; al borrar el usuario se borran con él
     @OneToOne
     @JoinColumn(name = "user_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
     private User user;
 
     // Estadísticas de desafíos
@@ -26,6 +31,10 @@ public class UserStats {
     private Integer challengesCreated = 0;
     private BigDecimal averageChallengeScore = BigDecimal.ZERO;
     private Integer totalChallengeScore = 0;
+    // Entregas puntuadas: número de valores que promedia averageChallengeScore
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Integer scoredSubmissions = 0;
 
     // Estadísticas de mentorías
     private Integer mentorshipsAttended = 0;
@@ -0,0 +1,38 @@
+package com.bad.batch.model.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Usuario en la lista de espera de un contenido sin plazas libres. El id
+ * (creciente) es la posición en la cola: el índice (content_id, id) permite
+ * obtener el primero en espera o la posición de un usuario sin recorrer la lista.
+ */
+@Entity
+@Table(name = "waitlist_entries",
+    uniqueConstraints = @UniqueConstraint(name = "uk_waitlist_content_user", columnNames = {"content_id", "user_id"}),
+    indexes = @Index(name = "idx_waitlist_content_position", columnList = "content_id, id"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WaitlistEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "content_id", nullable = false)
+    private Long contentId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "enqueued_at", nullable = false)
+    private LocalDateTime enqueuedAt;
+}
@@ -0,0 +1,8 @@
+package com.bad.batch.model.events;
+
+/**
+ * Evento publicado cuando un Content se actualiza (incluida su publicación) o se elimina.
+ * Las cachés de respuestas de contenido lo escuchan para invalidar sus entradas.
+ */
+public record ContentChangedEvent(Long contentId) {
+}
@@ -0,0 +1,11 @@
+package com.bad.batch.model.events;
+
+import com.bad.batch.model.entities.Message;
+
+/**
+ * Evento publicado por ChatServiceImpl cuando un mensaje nuevo se guarda (o,
+ * con write-behind, recibe id y se encola). Los índices derivados del contenido
+ * de los mensajes lo escuchan para actualizarse de forma incremental.
+ */
+public record MessageStoredEvent(Message message) {
+}
@@ -0,0 +1,8 @@
+package com.bad.batch.model.events;
+
+/**
+ * Evento publicado cuando cambia la lista de participantes activos de un contenido
+ * (alta, baja, expulsión o promoción desde la lista de espera).
+ */
+public record ParticipantsChangedEvent(Long contentId) {
+}
@@ -0,0 +1,10 @@
+package com.bad.batch.model.events;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento publicado al guardar una entrega de challenge pendiente de revisión.
+ * {@code deadline} es la fecha de fin del challenge (null si no tiene).
+ */
+public record SubmissionReceivedEvent(Long submissionId, LocalDateTime deadline, LocalDateTime submittedAt) {
+}
@@ -0,0 +1,8 @@
+package com.bad.batch.model.events;
+
+/**
+ * Evento publicado cuando cambia el número de mensajes no leídos de un usuario
+ * (mensaje directo recibido o conversación marcada como leída).
+ */
+public record UnreadCountChangedEvent(Long userId) {
+}
@@ -0,0 +1,26 @@
+package com.bad.batch.model.events;
+
+/**
+ * Evento publicado por cada actividad que modifica las estadísticas de un usuario.
+ * {@code score} solo se informa en SUBMISSION_SCORED.
+ */
+public record UserActivityEvent(Long userId, Type type, Integer score) {
+
+    public enum Type {
+        CHALLENGE_CREATED,
+        MENTORSHIP_CREATED,
+        MENTORSHIP_JOINED,
+        MENTORSHIP_LEFT,
+        CHALLENGE_COMPLETED,
+        MENTORSHIP_COMPLETED,
+        SUBMISSION_SCORED
+    }
+
+    public static UserActivityEvent of(Long userId, Type type) {
+        return new UserActivityEvent(userId, type, null);
+    }
+
+    public static UserActivityEvent scored(Long userId, int score) {
+        return new UserActivityEvent(userId, Type.SUBMISSION_SCORED, score);
+    }
+}
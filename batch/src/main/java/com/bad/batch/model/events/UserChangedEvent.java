@@ -0,0 +1,9 @@
+package com.bad.batch.model.events;
+
+/**
+ * Evento publicado cuando una entidad User se actualiza o se elimina.
+ * Las cachés que guardan datos derivados del usuario (estado activo, rol, nombre)
+ * lo escuchan para invalidar sus entradas.
+ */
+public record UserChangedEvent(Long userId) {
+}
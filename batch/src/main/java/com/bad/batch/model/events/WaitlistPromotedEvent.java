@@ -0,0 +1,7 @@
+package com.bad.batch.model.events;
+
+/**
+ * Evento publicado cuando un usuario en lista de espera ocupa una plaza liberada.
+ */
+public record WaitlistPromotedEvent(Long contentId, Long userId) {
+}
@@ -0,0 +1,30 @@
+package com.bad.batch.model.listeners;
+
+import com.bad.batch.model.entities.Content;
+import com.bad.batch.model.events.ContentChangedEvent;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA de Content (y sus subtipos). Hibernate lo obtiene del contenedor
+ * de Spring, por lo que puede publicar eventos de aplicación.
+ */
+@Component
+public class ContentEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ContentEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onContentChanged(Content content) {
+        if (content.getId() != null) {
+            eventPublisher.publishEvent(new ContentChangedEvent(content.getId()));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.bad.batch.model.listeners;
+
+import com.bad.batch.model.entities.User;
+import com.bad.batch.model.events.UserChangedEvent;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA de User. Hibernate lo obtiene del contenedor de Spring,
+ * por lo que puede publicar eventos de aplicación.
+ */
+@Component
+public class UserEntityListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public UserEntityListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onUserChanged(User user) {
+        if (user.getId() != null) {
+            eventPublisher.publishEvent(new UserChangedEvent(user.getId()));
+        }
+    }
+}
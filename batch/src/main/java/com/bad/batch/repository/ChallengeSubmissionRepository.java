@@ -2,13 +2,41 @@ package com.bad.batch.repository;
 
 import com.bad.batch.model.entities.ChallengeSubmission;
 import com.bad.batch.model.entities.Participation;
+import com.bad.batch.model.enums.SubmissionStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ChallengeSubmissionRepository extends JpaRepository<ChallengeSubmission, Long> {
     List<ChallengeSubmission> findByParticipation(Participation participation);
+
+    @Query("""
+        SELECT s FROM ChallengeSubmission s
+        WHERE s.participation.content.id = :contentId AND s.participation.participant.id = :userId
+        ORDER BY s.submittedAt DESC, s.id DESC
+        """)
+    List<ChallengeSubmission> findByContentIdAndUserId(@Param("contentId") Long contentId, @Param("userId") Long userId);
+
+    // Cierra la revisión solo si la entrega sigue reclamada por ese revisor; devuelve 0 en otro caso.
+    // Limpia el contexto para que la entrega se vuelva a leer con los datos de la revisión
+    @Modifying(clearAutomatically = true)
+    @Query("""
+        UPDATE ChallengeSubmission s
+        SET s.status = :status, s.score = :score, s.feedback = :feedback, s.reviewedAt = :reviewedAt
+        WHERE s.id = :id AND s.reviewer.id = :reviewerId
+        AND s.status = com.bad.batch.model.enums.SubmissionStatus.UNDER_REVIEW
+        """)
+    int completeReview(@Param("id") Long id,
+                       @Param("reviewerId") Long reviewerId,
+                       @Param("status") SubmissionStatus status,
+                       @Param("score") Integer score,
+                       @Param("feedback") String feedback,
+                       @Param("reviewedAt") LocalDateTime reviewedAt);
 }
 
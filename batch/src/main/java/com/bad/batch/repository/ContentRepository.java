@@ -1,16 +1,36 @@
 package com.bad.batch.repository;
 
+import com.bad.batch.dto.response.ContentResponse;
 import com.bad.batch.model.entities.Content;
+import com.bad.batch.model.enums.ContentStatus;
+import com.bad.batch.model.enums.ContentType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
-public interface ContentRepository extends JpaRepository<Content, Long> {
+public interface ContentRepository extends JpaRepository<Content, Long>, ContentSearchRepository {
+
+    // Proyección común de los listados a ContentResponse, sin cargar entidades
+    String RESPONSE_SELECT = "SELECT new com.bad.batch.dto.response.ContentResponse(" +
+           "c.id, c.title, c.description, u.id, CONCAT(u.firstName, ' ', u.lastName), " +
+           "c.status, c.difficulty, c.maxParticipants, c.startDate, c.endDate, c.createdAt, c.updatedAt, c.type, " +
+           "TREAT(c AS Mentorship).durationMinutes, TREAT(c AS Mentorship).mentorshipType, TREAT(c AS Mentorship).isLive, " +
+           "TREAT(c AS Challenge).problemStatement, TREAT(c AS Challenge).acceptanceCriteria, " +
+           "TREAT(c AS Challenge).allowsTeams, TREAT(c AS Challenge).challengeType) " +
+           "FROM Content c JOIN c.creator u ";
     
     // Método para obtener contenido con tecnologías cargadas eagerly
     @Query("SELECT c FROM Content c " +
@@ -28,12 +48,90 @@ public interface ContentRepository extends JpaRepository<Content, Long> {
            "ORDER BY c.createdAt DESC")
     List<Content> findAllWithTechnologies();
     
-    // Método para obtener contenidos con paginación y filtros, incluyendo tecnologías
+    // Segunda fase de la búsqueda paginada: carga los contenidos de una página de ids
     @Query("SELECT DISTINCT c FROM Content c " +
            "JOIN FETCH c.creator u " +
            "LEFT JOIN FETCH u.profile " +
            "LEFT JOIN FETCH c.requiredTechnologies " +
-           "WHERE (:userId IS NULL OR u.id = :userId) " +
-           "ORDER BY c.createdAt DESC")
-    List<Content> findAllWithTechnologiesForSearch(@Param("userId") Long userId);
+           "WHERE c.id IN :ids")
+    List<Content> findAllWithTechnologiesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Contenidos con un estado, ordenados por idx_contents_status_created
+    @Query(value = RESPONSE_SELECT +
+           "WHERE c.status = :status " +
+           "ORDER BY c.createdAt DESC, c.id DESC",
+           countQuery = "SELECT COUNT(c) FROM Content c WHERE c.status = :status")
+    Page<ContentResponse> findResponsesByStatus(@Param("status") ContentStatus status, Pageable pageable);
+
+    // Ids de una página del listado visible para un usuario: publicados + propios en cualquier otro estado.
+    // Las dos ramas son disjuntas y cada una recorre su índice ordenado (idx_contents_status_created,
+    // idx_contents_creator_created); un OR entre ambas condiciones obligaría a leer y ordenar todas las
+    // filas que cumplen cualquiera. La base de datos mezcla las ramas y aplica LIMIT/OFFSET
+    @Query(value = """
+        SELECT v.id FROM (
+            SELECT c.id, c.created_at FROM contents c
+            WHERE c.status = :status
+            UNION ALL
+            SELECT c.id, c.created_at FROM contents c
+            WHERE c.creator_id = :creatorId AND (c.status IS NULL OR c.status <> :status)
+        ) v
+        ORDER BY v.created_at DESC, v.id DESC
+        LIMIT :limit OFFSET :offset
+        """, nativeQuery = true)
+    List<Long> findVisibleIds(
+        @Param("creatorId") Long creatorId,
+        @Param("status") String status,
+        @Param("limit") int limit,
+        @Param("offset") long offset
+    );
+
+    // Total del listado visible: la suma de las dos ramas en una sola consulta
+    @Query(value = """
+        SELECT (SELECT COUNT(*) FROM contents c WHERE c.status = :status)
+             + (SELECT COUNT(*) FROM contents c
+                WHERE c.creator_id = :creatorId AND (c.status IS NULL OR c.status <> :status))
+        """, nativeQuery = true)
+    long countVisible(@Param("creatorId") Long creatorId, @Param("status") String status);
+
+    // Proyecciones de una página de ids, sin orden garantizado
+    @Query(RESPONSE_SELECT + "WHERE c.id IN :ids")
+    List<ContentResponse> findResponsesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Tecnologías de una página de contenidos en una sola consulta: filas [contentId, tecnología]
+    @Query("SELECT c.id, t FROM Content c JOIN c.requiredTechnologies t WHERE c.id IN :ids")
+    List<Object[]> findTechnologiesByContentIdIn(@Param("ids") Collection<Long> ids);
+
+    // Tipo del contenido sin cargar la entidad
+    @Query("SELECT c.type FROM Content c WHERE c.id = :id")
+    Optional<ContentType> findTypeById(@Param("id") Long id);
+
+    // Tipo y fecha de fin sin cargar la entidad: como mucho una fila [type, endDate]
+    @Query("SELECT c.type, c.endDate FROM Content c WHERE c.id = :id")
+    List<Object[]> findTypeAndEndDateById(@Param("id") Long id);
+
+    // Reserva una plaza solo si queda alguna libre; devuelve 0 si el contenido está lleno o no existe
+    @Modifying
+    @Query("UPDATE Content c SET c.participantCount = c.participantCount + 1 " +
+           "WHERE c.id = :id AND (c.maxParticipants IS NULL OR c.participantCount < c.maxParticipants)")
+    int reserveSeat(@Param("id") Long id);
+
+    // Bloquea la fila del contenido hasta el fin de la transacción; serializa las entradas en
+    // la lista de espera con las bajas, que bloquean la misma fila al liberar su plaza
+    @Query(value = "SELECT id FROM contents WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockById(@Param("id") Long id);
+
+    // Libera una plaza ocupada
+    @Modifying
+    @Query("UPDATE Content c SET c.participantCount = c.participantCount - 1 " +
+           "WHERE c.id = :id AND c.participantCount > 0")
+    int releaseSeat(@Param("id") Long id);
+
+    // Agrupa por contenido las tecnologías de los ids indicados
+    default Map<Long, Set<String>> findTechnologiesByContentId(Collection<Long> ids) {
+        Map<Long, Set<String>> technologies = new HashMap<>();
+        for (Object[] row : findTechnologiesByContentIdIn(ids)) {
+            technologies.computeIfAbsent((Long) row[0], id -> new HashSet<>()).add((String) row[1]);
+        }
+        return technologies;
+    }
 }
@@ -0,0 +1,18 @@
+package com.bad.batch.repository;
+
+import com.bad.batch.model.entities.Content;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Consultas de contenidos que Spring Data no deriva por sí solo.
+ */
+public interface ContentSearchRepository {
+
+    /**
+     * Página de ids de contenidos que cumplen la especificación, del más reciente al más antiguo.
+     * Es la primera fase de la búsqueda: las colecciones se cargan después solo para esos ids.
+     */
+    Page<Long> findIds(Specification<Content> specification, Pageable pageable);
+}
@@ -0,0 +1,43 @@
+package com.bad.batch.repository;
+
+import com.bad.batch.model.entities.Content;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+class ContentSearchRepositoryImpl implements ContentSearchRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Long> findIds(Specification<Content> specification, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Long> idQuery = cb.createQuery(Long.class);
+        Root<Content> root = idQuery.from(Content.class);
+        idQuery.select(root.get("id"))
+                .where(specification.toPredicate(root, idQuery, cb))
+                .orderBy(cb.desc(root.get("createdAt")), cb.desc(root.get("id")));
+        List<Long> ids = entityManager.createQuery(idQuery)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        Root<Content> countRoot = countQuery.from(Content.class);
+        countQuery.select(cb.count(countRoot))
+                .where(specification.toPredicate(countRoot, countQuery, cb));
+        Long total = entityManager.createQuery(countQuery).getSingleResult();
+
+        return new PageImpl<>(ids, pageable, total);
+    }
+}
@@ -0,0 +1,45 @@
+package com.bad.batch.repository;
+
+import com.bad.batch.model.entities.Content;
+import com.bad.batch.model.enums.ContentType;
+import com.bad.batch.model.enums.DifficultyLevel;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Filtros de búsqueda de contenidos. Un filtro con valor null no restringe nada.
+ */
+public final class ContentSpecifications {
+
+    private ContentSpecifications() {
+    }
+
+    public static Specification<Content> hasType(ContentType type) {
+        return (root, query, cb) -> type == null ? null : cb.equal(root.get("type"), type);
+    }
+
+    public static Specification<Content> hasDifficulty(DifficultyLevel difficulty) {
+        return (root, query, cb) -> difficulty == null ? null : cb.equal(root.get("difficulty"), difficulty);
+    }
+
+    public static Specification<Content> createdBy(Long userId) {
+        return (root, query, cb) -> userId == null ? null : cb.equal(root.get("creator").get("id"), userId);
+    }
+
+    // EXISTS sobre la colección para no duplicar filas ni romper la paginación
+    public static Specification<Content> requiresTechnology(String tech) {
+        return (root, query, cb) -> {
+            if (tech == null) {
+                return null;
+            }
+            Subquery<Long> subquery = query.subquery(Long.class);
+            Root<Content> content = subquery.from(Content.class);
+            Join<Content, String> technology = content.join("requiredTechnologies");
+            subquery.select(content.get("id"))
+                    .where(cb.equal(content, root), cb.equal(cb.lower(technology), tech.toLowerCase()));
+            return cb.exists(subquery);
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.bad.batch.repository;
+
+import com.bad.batch.model.entities.Conversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ConversationRepository extends JpaRepository<Conversation, Long> {
+
+    Optional<Conversation> findByUserLowIdAndUserHighId(Long userLowId, Long userHighId);
+
+    // Registra un mensaje nuevo: avanza el último mensaje solo si es posterior por (fecha, id).
+    // Los ids salen de bloques de la secuencia repartidos entre nodos y no siguen el orden de envío
+    @Modifying
+    @Query("""
+        UPDATE Conversation c 
+        SET c.lastMessageAt = CASE WHEN c.lastMessageAt < :createdAt
+                                    OR (c.lastMessageAt = :createdAt AND c.lastMessageId < :messageId)
+                                   THEN :createdAt ELSE c.lastMessageAt END,
+            c.lastMessageId = CASE WHEN c.lastMessageAt < :createdAt
+                                    OR (c.lastMessageAt = :createdAt AND c.lastMessageId < :messageId)
+                                   THEN :messageId ELSE c.lastMessageId END
+        WHERE c.userLowId = :userLowId 
+        AND c.userHighId = :userHighId
+        """)
+    int recordMessage(
+        @Param("userLowId") Long userLowId,
+        @Param("userHighId") Long userHighId,
+        @Param("messageId") Long messageId,
+        @Param("createdAt") LocalDateTime createdAt
+    );
+
+    // Crea el resumen de la pareja; devuelve 0 si ya existía (uk_conversation_pair) sin abortar la transacción
+    @Modifying
+    @Query(value = """
+        INSERT INTO conversations (user_low_id, user_high_id, last_message_id, last_message_at)
+        VALUES (:userLowId, :userHighId, :messageId, :createdAt)
+        ON CONFLICT DO NOTHING
+        """, nativeQuery = true)
+    int insertIfAbsent(
+        @Param("userLowId") Long userLowId,
+        @Param("userHighId") Long userHighId,
+        @Param("messageId") Long messageId,
+        @Param("createdAt") LocalDateTime createdAt
+    );
+}
@@ -2,8 +2,10 @@ package com.bad.batch.repository;
 
 import com.bad.batch.model.entities.Message;
 import com.bad.batch.model.entities.User;
+import com.bad.batch.websocket.dto.ChatMessageResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -12,11 +14,21 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
+    // Proyección directa a ChatMessageResponse: m.sender.id y m.recipient.id se resuelven con las
+    // claves foráneas, sin JOIN a users. MessageHistoryService completa senderName desde SenderSummaryCache
+    String RESPONSE_SELECT = """
+        SELECT new com.bad.batch.websocket.dto.ChatMessageResponse(
+            m.id, m.content, m.type, m.sender.id, m.recipient.id,
+            m.challengeId, m.mentorshipId, m.createdAt, m.readAt, m.isSystem)
+        FROM Message m
+        """;
+
     // Mensajes directos entre dos usuarios
     @Query("""
         SELECT m FROM Message m 
@@ -32,14 +44,13 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     );
 
     // Mensajes directos con paginación
-    @Query("""
-        SELECT m FROM Message m 
+    @Query(RESPONSE_SELECT + """
         WHERE m.conversationType = 'DIRECT' 
         AND m.isDeleted = false
         AND ((m.sender.id = :userId1 AND m.recipient.id = :userId2) 
              OR (m.sender.id = :userId2 AND m.recipient.id = :userId1))
         """)
-    Page<Message> findDirectMessagesBetweenUsers(
+    Page<ChatMessageResponse> findDirectMessagesBetweenUsers(
         @Param("userId1") Long userId1, 
         @Param("userId2") Long userId2, 
         Pageable pageable
@@ -56,13 +67,12 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findChallengeMessages(@Param("challengeId") Long challengeId);
 
     // Mensajes de challenge con paginación
-    @Query("""
-        SELECT m FROM Message m 
+    @Query(RESPONSE_SELECT + """
         WHERE m.conversationType = 'CHALLENGE' 
         AND m.challengeId = :challengeId 
         AND m.isDeleted = false
         """)
-    Page<Message> findChallengeMessages(
+    Page<ChatMessageResponse> findChallengeMessages(
         @Param("challengeId") Long challengeId, 
         Pageable pageable
     );
@@ -78,30 +88,24 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     List<Message> findMentorshipMessages(@Param("mentorshipId") Long mentorshipId);
 
     // Mensajes de mentoría con paginación
-    @Query("""
-        SELECT m FROM Message m 
+    @Query(RESPONSE_SELECT + """
         WHERE m.conversationType = 'MENTORSHIP' 
         AND m.mentorshipId = :mentorshipId 
         AND m.isDeleted = false
         """)
-    Page<Message> findMentorshipMessages(
+    Page<ChatMessageResponse> findMentorshipMessages(
         @Param("mentorshipId") Long mentorshipId, 
         Pageable pageable
     );
 
-    // Últimos mensajes de cada conversación para un usuario
+    // Últimos mensajes de cada conversación para un usuario (a partir del resumen en conversations)
     @Query("""
         SELECT m FROM Message m 
         WHERE m.id IN (
-            SELECT MAX(m2.id) FROM Message m2 
-            WHERE m2.conversationType = 'DIRECT' 
-            AND m2.isDeleted = false
-            AND (m2.sender.id = :userId OR m2.recipient.id = :userId)
-            GROUP BY CASE 
-                WHEN m2.sender.id = :userId THEN m2.recipient.id 
-                ELSE m2.sender.id 
-            END
+            SELECT c.lastMessageId FROM Conversation c 
+            WHERE c.userLowId = :userId OR c.userHighId = :userId
         )
+        AND m.isDeleted = false
         ORDER BY m.createdAt DESC
         """)
     List<Message> findLastDirectMessagesForUser(@Param("userId") Long userId);
@@ -128,6 +132,16 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
         @Param("senderId") Long senderId
     );
 
+    // No leídos agrupados por destinatario y remitente (carga y reconciliación de contadores)
+    @Query("""
+        SELECT m.recipient.id, m.sender.id, COUNT(m) FROM Message m 
+        WHERE m.recipient.id IN :recipientIds 
+        AND m.isRead = false 
+        AND m.isDeleted = false
+        GROUP BY m.recipient.id, m.sender.id
+        """)
+    List<Object[]> countUnreadBySender(@Param("recipientIds") Collection<Long> recipientIds);
+
     // Buscar mensajes por contenido
     @Query("""
         SELECT m FROM Message m 
@@ -171,28 +185,16 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
 
     // Métodos adicionales necesarios para MessageHistoryService
     
-    // Mensajes de challenge con ordenación específica
-    Page<Message> findByChallengeIdOrderByCreatedAtAsc(Long challengeId, Pageable pageable);
-    
-    // Mensajes de mentoría con ordenación específica  
-    Page<Message> findByMentorshipIdOrderByCreatedAtAsc(Long mentorshipId, Pageable pageable);
-    
-    // Últimas conversaciones del usuario
-    @Query("""
-        SELECT m FROM Message m 
+    // Últimas conversaciones del usuario (a partir del resumen en conversations)
+    @Query(RESPONSE_SELECT + """
         WHERE m.id IN (
-            SELECT MAX(m2.id) FROM Message m2 
-            WHERE m2.conversationType = 'DIRECT' 
-            AND m2.isDeleted = false
-            AND (m2.sender.id = :userId OR m2.recipient.id = :userId)
-            GROUP BY CASE 
-                WHEN m2.sender.id = :userId THEN m2.recipient.id 
-                ELSE m2.sender.id 
-            END
+            SELECT c.lastMessageId FROM Conversation c 
+            WHERE c.userLowId = :userId OR c.userHighId = :userId
         )
+        AND m.isDeleted = false
         ORDER BY m.createdAt DESC
         """)
-    List<Message> findLastConversationMessages(@Param("userId") Long userId);
+    List<ChatMessageResponse> findLastConversationMessages(@Param("userId") Long userId);
     
     // Contar mensajes no leídos
     @Query("""
@@ -217,28 +219,32 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     int markConversationAsRead(@Param("currentUserId") Long currentUserId, @Param("otherUserId") Long otherUserId);
     
     // Buscar en challenge específico
-    @Query("""
-        SELECT m FROM Message m 
+    @Query(RESPONSE_SELECT + """
         WHERE m.conversationType = 'CHALLENGE' 
         AND m.challengeId = :challengeId 
         AND m.isDeleted = false
         AND LOWER(m.content) LIKE LOWER(CONCAT('%', :query, '%'))
         """)
-    Page<Message> searchInChallenge(@Param("query") String query, @Param("challengeId") Long challengeId, Pageable pageable);
+    Page<ChatMessageResponse> searchInChallenge(@Param("query") String query, @Param("challengeId") Long challengeId, Pageable pageable);
     
     // Buscar en mentoría específica
-    @Query("""
-        SELECT m FROM Message m 
+    @Query(RESPONSE_SELECT + """
         WHERE m.conversationType = 'MENTORSHIP' 
         AND m.mentorshipId = :mentorshipId 
         AND m.isDeleted = false
         AND LOWER(m.content) LIKE LOWER(CONCAT('%', :query, '%'))
         """)
-    Page<Message> searchInMentorship(@Param("query") String query, @Param("mentorshipId") Long mentorshipId, Pageable pageable);
+    Page<ChatMessageResponse> searchInMentorship(@Param("query") String query, @Param("mentorshipId") Long mentorshipId, Pageable pageable);
+    
+    // Mensajes por id (resultados del índice de búsqueda en memoria)
+    @Query(RESPONSE_SELECT + """
+        WHERE m.id IN :ids 
+        AND m.isDeleted = false
+        """)
+    List<ChatMessageResponse> findResponsesByIdIn(@Param("ids") Collection<Long> ids);
     
     // Buscar en mensajes del usuario
-    @Query("""
-        SELECT m FROM Message m 
+    @Query(RESPONSE_SELECT + """
         WHERE m.isDeleted = false
         AND LOWER(m.content) LIKE LOWER(CONCAT('%', :query, '%'))
         AND (
@@ -246,5 +252,109 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
              AND (m.sender.id = :userId OR m.recipient.id = :userId))
         )
         """)
-    Page<Message> searchUserMessages(@Param("query") String query, @Param("userId") Long userId, Pageable pageable);
+    Page<ChatMessageResponse> searchUserMessages(@Param("query") String query, @Param("userId") Long userId, Pageable pageable);
+
+    // --- Paginación por cursor (keyset): sin OFFSET ni COUNT, usando los índices (ámbito, created_at) ---
+    // La condición redundante sobre createdAt (<= o >=) da al planificador un límite de rango simple
+    // sobre el índice; el OR que desempata por id no se puede usar como límite del índice
+
+    // Mensajes de challenge anteriores al cursor (más recientes primero)
+    @Query(RESPONSE_SELECT + """
+        WHERE m.conversationType = 'CHALLENGE' 
+        AND m.challengeId = :challengeId 
+        AND m.isDeleted = false
+        AND m.createdAt <= :createdAt
+        AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+        ORDER BY m.createdAt DESC, m.id DESC
+        """)
+    Slice<ChatMessageResponse> findChallengeMessagesBefore(
+        @Param("challengeId") Long challengeId,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable
+    );
+
+    // Mensajes de challenge posteriores al cursor (más antiguos primero)
+    @Query(RESPONSE_SELECT + """
+        WHERE m.conversationType = 'CHALLENGE' 
+        AND m.challengeId = :challengeId 
+        AND m.isDeleted = false
+        AND m.createdAt >= :createdAt
+        AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id))
+        ORDER BY m.createdAt ASC, m.id ASC
+        """)
+    Slice<ChatMessageResponse> findChallengeMessagesAfter(
+        @Param("challengeId") Long challengeId,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable
+    );
+
+    // Mensajes de mentoría anteriores al cursor (más recientes primero)
+    @Query(RESPONSE_SELECT + """
+        WHERE m.conversationType = 'MENTORSHIP' 
+        AND m.mentorshipId = :mentorshipId 
+        AND m.isDeleted = false
+        AND m.createdAt <= :createdAt
+        AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+        ORDER BY m.createdAt DESC, m.id DESC
+        """)
+    Slice<ChatMessageResponse> findMentorshipMessagesBefore(
+        @Param("mentorshipId") Long mentorshipId,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable
+    );
+
+    // Mensajes de mentoría posteriores al cursor (más antiguos primero)
+    @Query(RESPONSE_SELECT + """
+        WHERE m.conversationType = 'MENTORSHIP' 
+        AND m.mentorshipId = :mentorshipId 
+        AND m.isDeleted = false
+        AND m.createdAt >= :createdAt
+        AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id))
+        ORDER BY m.createdAt ASC, m.id ASC
+        """)
+    Slice<ChatMessageResponse> findMentorshipMessagesAfter(
+        @Param("mentorshipId") Long mentorshipId,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable
+    );
+
+    // Mensajes directos anteriores al cursor (cada rama del OR usa idx_sender_created)
+    @Query(RESPONSE_SELECT + """
+        WHERE m.conversationType = 'DIRECT' 
+        AND m.isDeleted = false
+        AND ((m.sender.id = :userId1 AND m.recipient.id = :userId2) 
+             OR (m.sender.id = :userId2 AND m.recipient.id = :userId1))
+        AND m.createdAt <= :createdAt
+        AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+        ORDER BY m.createdAt DESC, m.id DESC
+        """)
+    Slice<ChatMessageResponse> findDirectMessagesBefore(
+        @Param("userId1") Long userId1,
+        @Param("userId2") Long userId2,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable
+    );
+
+    // Mensajes directos posteriores al cursor
+    @Query(RESPONSE_SELECT + """
+        WHERE m.conversationType = 'DIRECT' 
+        AND m.isDeleted = false
+        AND ((m.sender.id = :userId1 AND m.recipient.id = :userId2) 
+             OR (m.sender.id = :userId2 AND m.recipient.id = :userId1))
+        AND m.createdAt >= :createdAt
+        AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id))
+        ORDER BY m.createdAt ASC, m.id ASC
+        """)
+    Slice<ChatMessageResponse> findDirectMessagesAfter(
+        @Param("userId1") Long userId1,
+        @Param("userId2") Long userId2,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Pageable pageable
+    );
 }
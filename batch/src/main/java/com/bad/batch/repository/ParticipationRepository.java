@@ -4,8 +4,13 @@ import com.bad.batch.model.entities.Participation;
 import com.bad.batch.model.entities.Content;
 import com.bad.batch.model.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,5 +19,66 @@ public interface ParticipationRepository extends JpaRepository<Participation, Lo
     Optional<Participation> findByContentAndParticipant(Content content, User participant);
     List<Participation> findByContent(Content content);
     List<Participation> findByParticipant(User participant);
-}
 
+    @Query("""
+        SELECT COUNT(p) > 0 FROM Participation p
+        WHERE p.content.id = :contentId AND p.participant.id = :userId
+        AND p.status <> com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        """)
+    boolean existsActive(@Param("contentId") Long contentId, @Param("userId") Long userId);
+
+    @Query("""
+        SELECT p FROM Participation p
+        WHERE p.content.id = :contentId AND p.participant.id = :userId
+        AND p.status <> com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        """)
+    Optional<Participation> findActive(@Param("contentId") Long contentId, @Param("userId") Long userId);
+
+    // Marca la participación como completada; devuelve 0 si ya lo estaba o fue abandonada
+    @Modifying
+    @Query("""
+        UPDATE Participation p
+        SET p.status = com.bad.batch.model.enums.ParticipationStatus.COMPLETED, p.completedAt = :completedAt
+        WHERE p.id = :id
+        AND p.status <> com.bad.batch.model.enums.ParticipationStatus.COMPLETED
+        AND p.status <> com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        """)
+    int complete(@Param("id") Long id, @Param("completedAt") LocalDateTime completedAt);
+
+    // Reactiva una participación abandonada; devuelve 0 si no existe o ya estaba activa
+    @Modifying
+    @Query("""
+        UPDATE Participation p
+        SET p.status = com.bad.batch.model.enums.ParticipationStatus.JOINED, p.joinedAt = :joinedAt
+        WHERE p.content.id = :contentId AND p.participant.id = :userId
+        AND p.status = com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        """)
+    int rejoin(@Param("contentId") Long contentId, @Param("userId") Long userId, @Param("joinedAt") LocalDateTime joinedAt);
+
+    // Marca la participación como abandonada; devuelve 0 si no había una activa
+    @Modifying
+    @Query("""
+        UPDATE Participation p
+        SET p.status = com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        WHERE p.content.id = :contentId AND p.participant.id = :userId
+        AND p.status <> com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        """)
+    int drop(@Param("contentId") Long contentId, @Param("userId") Long userId);
+
+    @Query("""
+        SELECT p.participant.id FROM Participation p
+        WHERE p.content.id = :contentId
+        AND p.status <> com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        ORDER BY p.joinedAt, p.id
+        """)
+    List<Long> findActiveParticipantIds(@Param("contentId") Long contentId);
+
+    // Participantes activos de varios contenidos en una sola consulta: filas [contentId, userId]
+    @Query("""
+        SELECT p.content.id, p.participant.id FROM Participation p
+        WHERE p.content.id IN :contentIds
+        AND p.status <> com.bad.batch.model.enums.ParticipationStatus.DROPPED
+        ORDER BY p.joinedAt, p.id
+        """)
+    List<Object[]> findActiveParticipantIdsByContentIdIn(@Param("contentIds") Collection<Long> contentIds);
+}
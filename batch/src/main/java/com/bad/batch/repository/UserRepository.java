@@ -1,11 +1,29 @@
 package com.bad.batch.repository;
 
+import com.bad.batch.dto.security.AuthPrincipal;
 import com.bad.batch.model.entities.User;
+import com.bad.batch.websocket.dto.SenderSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository <User, Long> {
     Optional<User> findByEmail(String email);
 
+    // Proyección ligera para autenticación (una sola fila, sin perfil ni colecciones)
+    @Query("SELECT new com.bad.batch.dto.security.AuthPrincipal(u.id, u.email, u.password, u.role, u.isActive) " +
+           "FROM User u WHERE u.id = :id")
+    Optional<AuthPrincipal> findAuthPrincipalById(@Param("id") Long id);
+
+    @Query("SELECT new com.bad.batch.dto.security.AuthPrincipal(u.id, u.email, u.password, u.role, u.isActive) " +
+           "FROM User u WHERE u.email = :email")
+    Optional<AuthPrincipal> findAuthPrincipalByEmail(@Param("email") String email);
+
+    // Proyección para el nombre del remitente en mensajes de chat
+    @Query("SELECT new com.bad.batch.websocket.dto.SenderSummary(u.id, u.firstName, u.lastName, u.role, u.isActive) " +
+           "FROM User u WHERE u.id = :id")
+    Optional<SenderSummary> findSenderSummaryById(@Param("id") Long id);
+
 }
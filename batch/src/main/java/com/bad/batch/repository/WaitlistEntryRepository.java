@@ -0,0 +1,38 @@
+package com.bad.batch.repository;
+
+import com.bad.batch.model.entities.WaitlistEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface WaitlistEntryRepository extends JpaRepository<WaitlistEntry, Long> {
+
+    Optional<WaitlistEntry> findByContentIdAndUserId(Long contentId, Long userId);
+
+    // Primero en la cola (idx_waitlist_content_position)
+    Optional<WaitlistEntry> findFirstByContentIdOrderByIdAsc(Long contentId);
+
+    // Posición 1-based de una entrada en la cola de su contenido
+    @Query("SELECT COUNT(w) FROM WaitlistEntry w WHERE w.contentId = :contentId AND w.id <= :entryId")
+    long countAhead(@Param("contentId") Long contentId, @Param("entryId") Long entryId);
+
+    long countByContentId(Long contentId);
+
+    // Borrado condicional: de dos promociones concurrentes sobre la misma entrada solo una obtiene 1
+    @Modifying
+    @Query("DELETE FROM WaitlistEntry w WHERE w.id = :id")
+    int deleteEntry(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM WaitlistEntry w WHERE w.contentId = :contentId AND w.userId = :userId")
+    int deleteByContentIdAndUserId(@Param("contentId") Long contentId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query("DELETE FROM WaitlistEntry w WHERE w.contentId = :contentId")
+    int deleteByContentId(@Param("contentId") Long contentId);
+}
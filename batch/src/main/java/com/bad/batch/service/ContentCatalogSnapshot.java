@@ -0,0 +1,152 @@
+package com.bad.batch.service;
+
+import com.bad.batch.dto.response.ContentResponse;
+import com.bad.batch.model.enums.ContentStatus;
+import com.bad.batch.model.events.ContentChangedEvent;
+import com.bad.batch.model.events.UserChangedEvent;
+import com.bad.batch.repository.ContentRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Instantánea inmutable del catálogo público (contenidos publicados) para
+ * GET /api/contents sin userId. Cada página ya está serializada a JSON, de modo
+ * que servirla es escribir bytes sin JPA ni Jackson.
+ * <p>
+ * Cualquier ContentChangedEvent o UserChangedEvent (nombre del creador) marca la
+ * instantánea como obsoleta; una tarea en segundo plano la reconstruye y la
+ * sustituye de forma atómica. Mientras tanto se sigue sirviendo la anterior.
+ * Los eventos solo llegan al nodo que hizo el cambio, así que además se reconstruye
+ * cuando la instantánea supera content.catalog.max-age-ms: ese es el retraso máximo
+ * con el que un nodo ve los cambios hechos en otro.
+ */
+@Service
+@Slf4j
+public class ContentCatalogSnapshot {
+
+    private static final int TECHNOLOGY_BATCH_SIZE = 1000;
+
+    private final ContentRepository contentRepository;
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+    private final long maxAgeMs;
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+
+    public ContentCatalogSnapshot(
+            ContentRepository contentRepository,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${content.catalog.page-size:20}") int pageSize,
+            @Value("${content.catalog.max-age-ms:30000}") long maxAgeMs) {
+        this.contentRepository = contentRepository;
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize;
+        this.maxAgeMs = maxAgeMs;
+        Gauge.builder("content.catalog.snapshot.contents", current, ref -> ref.get() != null ? ref.get().totalElements() : 0)
+                .description("Contenidos publicados en la instantánea del catálogo")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devuelve la página ya serializada si existe en la instantánea actual. Solo se
+     * precalcula el tamaño de página configurado; el resto de peticiones (otro tamaño,
+     * páginas fuera de rango o instantánea aún no construida) devuelven vacío.
+     */
+    public Optional<byte[]> getPage(int page, int size) {
+        Snapshot snapshot = current.get();
+        if (snapshot == null || size != pageSize || page < 0 || page >= snapshot.pages().size()) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot.pages().get(page));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onContentChanged(ContentChangedEvent event) {
+        stale.set(true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        stale.set(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${content.catalog.refresh-delay-ms:1000}")
+    public void refreshIfStale() {
+        Snapshot snapshot = current.get();
+        boolean expired = snapshot == null || System.currentTimeMillis() - snapshot.builtAt() >= maxAgeMs;
+        if (!stale.getAndSet(false) && !expired) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // Se conserva la instantánea anterior y se reintenta en la siguiente ejecución
+            stale.set(true);
+            log.error("Error al reconstruir la instantánea del catálogo: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Carga todos los contenidos publicados (una consulta más una por lote de
+     * tecnologías), los divide en páginas, las serializa y publica la nueva instantánea.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<ContentResponse> contents = contentRepository
+                .findResponsesByStatus(ContentStatus.PUBLISHED, Pageable.unpaged())
+                .getContent();
+
+        for (int from = 0; from < contents.size(); from += TECHNOLOGY_BATCH_SIZE) {
+            List<ContentResponse> batch = contents.subList(from, Math.min(from + TECHNOLOGY_BATCH_SIZE, contents.size()));
+            Map<Long, Set<String>> technologies =
+                    contentRepository.findTechnologiesByContentId(batch.stream().map(ContentResponse::getId).toList());
+            batch.forEach(c -> c.setRequiredTechnologies(technologies.getOrDefault(c.getId(), new HashSet<>())));
+        }
+
+        List<byte[]> pages = new ArrayList<>();
+        int from = 0;
+        do {
+            List<ContentResponse> pageContent = contents.subList(from, Math.min(from + pageSize, contents.size()));
+            pages.add(serialize(new PageImpl<>(pageContent, PageRequest.of(pages.size(), pageSize), contents.size())));
+            from += pageSize;
+        } while (from < contents.size());
+
+        current.set(new Snapshot(List.copyOf(pages), contents.size(), start));
+        log.info("Instantánea del catálogo reconstruida: {} contenidos en {} páginas ({} ms)",
+                contents.size(), pages.size(), System.currentTimeMillis() - start);
+    }
+
+    private byte[] serialize(PageImpl<ContentResponse> page) {
+        try {
+            return objectMapper.writeValueAsBytes(page);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la página " + page.getNumber() + " del catálogo", e);
+        }
+    }
+
+    private record Snapshot(List<byte[]> pages, long totalElements, long builtAt) {
+    }
+}
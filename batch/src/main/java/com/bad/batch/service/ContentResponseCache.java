@@ -0,0 +1,133 @@
+package com.bad.batch.service;
+
+import com.bad.batch.dto.response.ContentResponse;
+import com.bad.batch.model.events.ContentChangedEvent;
+import com.bad.batch.model.events.UserChangedEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Caché de lectura (read-through) del detalle de contenidos, ya serializado a JSON.
+ * Cada entrada guarda su ETag (versión updatedAt más un hash del cuerpo, que incluye
+ * el nombre del creador), que permite responder 304 sin volver a consultar ni serializar.
+ * Se invalida con cada ContentChangedEvent (actualización, publicación o borrado) y,
+ * para los contenidos de un creador, con su UserChangedEvent. Los eventos solo llegan
+ * al nodo que hizo el cambio: en los demás, la entrada caduca a los
+ * {@code content.response-cache.ttl-minutes}.
+ */
+@Service
+@Slf4j
+public class ContentResponseCache {
+
+    private final ContentService contentService;
+    private final ObjectMapper objectMapper;
+    private final Cache<Long, CachedContent> cache;
+
+    public ContentResponseCache(
+            ContentService contentService,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${content.response-cache.maximum-size:2000}") long maximumSize,
+            @Value("${content.response-cache.ttl-minutes:5}") long ttlMinutes) {
+        this.contentService = contentService;
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "content.response");
+    }
+
+    /**
+     * Devuelve el detalle serializado del contenido, cargándolo solo en fallo de caché.
+     * La carga es atómica por id, de modo que una invalidación concurrente espera a que
+     * termine y no deja una versión antigua en la caché.
+     */
+    public Optional<CachedContent> get(Long contentId) {
+        return Optional.ofNullable(cache.get(contentId, this::load));
+    }
+
+    public void invalidate(Long contentId) {
+        cache.invalidate(contentId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onContentChanged(ContentChangedEvent event) {
+        invalidate(event.contentId());
+        log.debug("Respuesta de contenido invalidada para el contenido {}", event.contentId());
+    }
+
+    // El detalle incluye el nombre del creador: se invalidan todos sus contenidos en caché
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        cache.asMap().values().removeIf(cached -> event.userId().equals(cached.creatorId()));
+        log.debug("Respuestas de contenido invalidadas para el creador {}", event.userId());
+    }
+
+    private CachedContent load(Long contentId) {
+        return contentService.getContentById(contentId)
+                .map(contentService::toResponse)
+                .map(this::serialize)
+                .orElse(null);
+    }
+
+    private CachedContent serialize(ContentResponse response) {
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(response);
+            return new CachedContent(etag(response, body), body, response.getCreatorId());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el contenido " + response.getId(), e);
+        }
+    }
+
+    // ETag fuerte a partir de id + versión + hash del cuerpo: cambia también cuando cambian
+    // datos de otras entidades incluidos en la respuesta, como el nombre del creador
+    private static String etag(ContentResponse response, byte[] body) {
+        LocalDateTime version = response.getUpdatedAt() != null ? response.getUpdatedAt() : response.getCreatedAt();
+        String hash = Integer.toHexString(Arrays.hashCode(body));
+        String tag = version != null
+                ? response.getId() + "-" + version.toEpochSecond(ZoneOffset.UTC) + "." + version.getNano() + "-" + hash
+                : response.getId() + "-" + hash;
+        return "\"" + tag + "\"";
+    }
+
+    /**
+     * Detalle de un contenido ya serializado junto con su ETag y el creador que incluye.
+     */
+    public record CachedContent(String etag, byte[] body, Long creatorId) {
+
+        /**
+         * Indica si la cabecera If-None-Match del cliente incluye este ETag (o es "*").
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -2,11 +2,14 @@ package com.bad.batch.service;
 
 import com.bad.batch.dto.request.ContentRequest;
 import com.bad.batch.dto.response.ContentResponse;
+import com.bad.batch.dto.response.JoinResponse;
 import com.bad.batch.model.entities.Content;
-import com.bad.batch.dto.request.ChallengeSubmissionRequest;
 import com.bad.batch.dto.response.ChallengeSubmissionResponse;
 import com.bad.batch.model.enums.ContentType;
+import org.springframework.data.domain.Page;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface ContentService {
@@ -19,13 +22,13 @@ public interface ContentService {
     void deleteContent(Long id);
     ContentResponse toResponse(Content content);
     Content publishContent(Long id, Long userId);
-    void joinContent(Long contentId, Long userId);
+    JoinResponse joinContent(Long contentId, Long userId);
     void leaveContent(Long contentId, Long userId);
     List<Long> getParticipants(Long contentId);
-    ChallengeSubmissionResponse submitChallenge(Long contentId, Long userId, ChallengeSubmissionRequest request);
+    Map<Long, List<Long>> getParticipants(Collection<Long> contentIds);
     List<ChallengeSubmissionResponse> getChallengeSubmissions(Long contentId, Long userId);
     void startContent(Long contentId);
     void removeParticipant(Long contentId, Long userId, Long creatorId);
-    List<Content> searchContents(ContentType type, String tech, String difficulty, int page, int size, Long userId);
-    List<Content> getAllContentsForUser(Long userId);
+    Page<Content> searchContents(ContentType type, String tech, String difficulty, int page, int size, Long userId);
+    Page<ContentResponse> getAllContentsForUser(Long userId, int page, int size);
 }
@@ -1,5 +1,6 @@
 package com.bad.batch.service;
 
+import com.bad.batch.dto.security.ParsedToken;
 import com.bad.batch.dto.security.TokenResponse;
 import com.bad.batch.model.entities.User;
 import io.jsonwebtoken.Claims;
@@ -8,6 +9,11 @@ public interface JwtService {
     TokenResponse generateToken (Long userId, String role);
     TokenResponse generateTokenWithUser(User user);
     Claims getClaims(String token);
+    /**
+     * Verifica la firma una sola vez y devuelve userId, rol y expiración.
+     * @throws IllegalArgumentException si el token es inválido, ha expirado o le faltan claims
+     */
+    ParsedToken parse(String token);
     boolean isExpired(String token);
     Long extractUserId(String token);
     String extractRole(String token);
@@ -0,0 +1,245 @@
+package com.bad.batch.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Clasificación en memoria ordenada por puntos (descendente) y, a igualdad, por id
+ * de usuario. Es un treap con el tamaño de cada subárbol, lo que permite en
+ * O(log n) actualizar los puntos de un usuario, obtener su posición y localizar la
+ * entrada que ocupa una posición dada; un rango de k posiciones cuesta O(k log n).
+ * <p>
+ * Las lecturas comparten un cerrojo de lectura y las escrituras toman el de escritura.
+ */
+public class Leaderboard {
+
+    /**
+     * Entrada de la clasificación. La posición empieza en 1.
+     */
+    public record Entry(Long userId, int points, int position) {
+    }
+
+    private static final class Node {
+        final long userId;
+        final int points;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(long userId, int points) {
+            this.userId = userId;
+            this.points = points;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+    }
+
+    private final Map<Long, Integer> pointsByUser = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root;
+
+    /**
+     * Fija los puntos del usuario, insertándolo si no estaba.
+     * @return true si sus puntos han cambiado
+     */
+    public boolean update(Long userId, int points) {
+        lock.writeLock().lock();
+        try {
+            Integer previous = pointsByUser.put(userId, points);
+            if (previous != null) {
+                if (previous == points) {
+                    return false;
+                }
+                root = erase(root, userId, previous);
+            }
+            Node node = new Node(userId, points);
+            Node[] parts = split(root, node.points, node.userId);
+            root = merge(merge(parts[0], node), parts[1]);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(Long userId) {
+        lock.writeLock().lock();
+        try {
+            Integer previous = pointsByUser.remove(userId);
+            if (previous == null) {
+                return false;
+            }
+            root = erase(root, userId, previous);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve la entrada del usuario, o null si no está en la clasificación.
+     */
+    public Entry get(Long userId) {
+        lock.readLock().lock();
+        try {
+            Integer points = pointsByUser.get(userId);
+            if (points == null) {
+                return null;
+            }
+            return new Entry(userId, points, countBefore(points, userId) + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve hasta {@code limit} entradas a partir de la posición {@code fromPosition} (1 = primero).
+     */
+    public List<Entry> range(int fromPosition, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>();
+            int size = size(root);
+            int from = Math.max(1, fromPosition);
+            for (int position = from; position < from + limit && position <= size; position++) {
+                Node node = select(position - 1);
+                entries.add(new Entry(node.userId, node.points, position));
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Entry> top(int limit) {
+        return range(1, limit);
+    }
+
+    /**
+     * Devuelve el usuario junto con hasta {@code window} entradas por encima y por debajo.
+     * Vacío si el usuario no está en la clasificación.
+     */
+    public List<Entry> around(Long userId, int window) {
+        lock.readLock().lock();
+        try {
+            Integer points = pointsByUser.get(userId);
+            if (points == null) {
+                return List.of();
+            }
+            int position = countBefore(points, userId) + 1;
+            int from = Math.max(1, position - window);
+            return range(from, position + window - from + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size(root);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Orden de la clasificación: más puntos primero y, a igualdad, menor id de usuario
+    private static int compare(int pointsA, long userA, int pointsB, long userB) {
+        if (pointsA != pointsB) {
+            return pointsA > pointsB ? -1 : 1;
+        }
+        return Long.compare(userA, userB);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    // Divide el árbol en [entradas anteriores a la clave, entradas desde la clave]
+    private static Node[] split(Node node, int points, long userId) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        if (compare(node.points, node.userId, points, userId) < 0) {
+            Node[] parts = split(node.right, points, userId);
+            node.right = parts[0];
+            return new Node[]{update(node), parts[1]};
+        }
+        Node[] parts = split(node.left, points, userId);
+        node.left = parts[1];
+        return new Node[]{parts[0], update(node)};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node erase(Node node, long userId, int points) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(points, userId, node.points, node.userId);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            node.left = erase(node.left, userId, points);
+        } else {
+            node.right = erase(node.right, userId, points);
+        }
+        return update(node);
+    }
+
+    // Número de entradas que van por delante de la clave
+    private int countBefore(int points, long userId) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = compare(points, userId, node.points, node.userId);
+            if (cmp <= 0) {
+                node = node.left;
+            } else {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    // Entrada en el índice (base 0) indicado
+    private Node select(int index) {
+        Node node = root;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        throw new IndexOutOfBoundsException(index);
+    }
+}
@@ -0,0 +1,287 @@
+package com.bad.batch.service;
+
+import com.bad.batch.model.enums.RankingType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Clasificaciones en memoria, una por tipo de ranking y ámbito (global, por challenge
+ * o por tecnología). Las consultas de top-N, posición y "alrededor de mí" se resuelven
+ * sin tocar la base de datos.
+ * <p>
+ * Los cambios se guardan en la tabla rankings de forma asíncrona: cada
+ * {@code ranking.flush-interval-ms} se escriben puntos y posición de los usuarios
+ * modificados, y cada {@code ranking.position-sync-interval-ms} se reescriben las
+ * posiciones de todas las clasificaciones cuyo orden ha cambiado (un cambio de
+ * puntos desplaza también a los demás usuarios).
+ * <p>
+ * Cada nodo tiene sus propias clasificaciones. Los cambios hechos en otro nodo se
+ * recogen al recargar la tabla cada {@code ranking.reload-interval-ms}; hasta
+ * entonces, este nodo sirve sus valores anteriores. Los usuarios con cambios locales
+ * pendientes de guardar conservan su valor en memoria. Con varios nodos, si dos
+ * fijan los puntos del mismo usuario a la vez gana la última escritura. Por eso
+ * los puntos de un usuario deben cambiar en un solo nodo, el que procesa su
+ * actividad (UserStatsAggregator).
+ */
+@Service
+@Slf4j
+public class LeaderboardService {
+
+    /**
+     * Ámbito de una clasificación: GLOBAL no lleva ámbito, CHALLENGE_SPECIFIC el id del
+     * challenge y TECHNOLOGY_SPECIFIC la tecnología (columna category).
+     */
+    public record BoardKey(RankingType type, String category, Long challengeId) {
+
+        public static BoardKey of(RankingType type, String category, Long challengeId) {
+            return switch (type) {
+                case GLOBAL -> new BoardKey(type, null, null);
+                case CHALLENGE_SPECIFIC -> {
+                    if (challengeId == null) {
+                        throw new IllegalArgumentException("El ranking por challenge requiere challengeId");
+                    }
+                    yield new BoardKey(type, null, challengeId);
+                }
+                case TECHNOLOGY_SPECIFIC -> {
+                    if (category == null || category.isBlank()) {
+                        throw new IllegalArgumentException("El ranking por tecnología requiere category");
+                    }
+                    yield new BoardKey(type, category.trim().toUpperCase(), null);
+                }
+            };
+        }
+    }
+
+    private record PendingWrite(BoardKey board, Long userId) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<BoardKey, Leaderboard> boards = new ConcurrentHashMap<>();
+    // Id de la fila de rankings de cada usuario en cada clasificación
+    private final Map<BoardKey, Map<Long, Long>> rankingIds = new ConcurrentHashMap<>();
+    private final Set<PendingWrite> pendingWrites = ConcurrentHashMap.newKeySet();
+    private final Set<BoardKey> reorderedBoards = ConcurrentHashMap.newKeySet();
+
+    public LeaderboardService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        Gauge.builder("ranking.pending.writes", pendingWrites, Set::size)
+                .description("Cambios de ranking pendientes de guardar")
+                .register(meterRegistry);
+        Gauge.builder("ranking.boards", boards, Map::size)
+                .description("Clasificaciones cargadas en memoria")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fija los puntos del usuario en la clasificación indicada. O(log n); el guardado es asíncrono.
+     */
+    public void updatePoints(BoardKey key, Long userId, int points) {
+        if (board(key).update(userId, points)) {
+            pendingWrites.add(new PendingWrite(key, userId));
+            reorderedBoards.add(key);
+        }
+    }
+
+    public List<Leaderboard.Entry> top(BoardKey key, int limit) {
+        Leaderboard board = boards.get(key);
+        return board != null ? board.top(limit) : List.of();
+    }
+
+    public List<Leaderboard.Entry> around(BoardKey key, Long userId, int window) {
+        Leaderboard board = boards.get(key);
+        return board != null ? board.around(userId, window) : List.of();
+    }
+
+    public Leaderboard.Entry getEntry(BoardKey key, Long userId) {
+        Leaderboard board = boards.get(key);
+        return board != null ? board.get(userId) : null;
+    }
+
+    /**
+     * Reconstruye las clasificaciones a partir de la tabla rankings.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void load() {
+        long start = System.currentTimeMillis();
+        int rows = reconcile(false);
+        log.info("Rankings cargados en memoria: {} filas en {} clasificaciones ({} ms)",
+                rows, boards.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Recarga la tabla rankings para recoger los cambios guardados por otros nodos.
+     */
+    @Scheduled(fixedDelayString = "${ranking.reload-interval-ms:60000}",
+            initialDelayString = "${ranking.reload-interval-ms:60000}")
+    public void reload() {
+        long start = System.currentTimeMillis();
+        int rows = reconcile(true);
+        log.debug("Rankings recargados: {} filas en {} ms", rows, System.currentTimeMillis() - start);
+    }
+
+    // Aplica la tabla sobre las clasificaciones en memoria. Los usuarios con cambios pendientes
+    // conservan su valor local y los que ya no tienen fila se retiran. Excluye a flush() para no
+    // leer una fila mientras se guarda un cambio ya retirado de pendingWrites
+    private synchronized int reconcile(boolean markReordered) {
+        Map<BoardKey, Set<Long>> seen = new HashMap<>();
+        int[] rows = {0};
+        jdbcTemplate.query("SELECT id, user_id, type, category, challenge_id, points FROM rankings", rs -> {
+            String type = rs.getString("type");
+            if (type == null) {
+                return;
+            }
+            Long challengeId = rs.getObject("challenge_id") != null ? rs.getLong("challenge_id") : null;
+            BoardKey key;
+            try {
+                key = BoardKey.of(RankingType.valueOf(type), rs.getString("category"), challengeId);
+            } catch (IllegalArgumentException e) {
+                log.warn("Fila de ranking {} ignorada: {}", rs.getLong("id"), e.getMessage());
+                return;
+            }
+            long userId = rs.getLong("user_id");
+            seen.computeIfAbsent(key, k -> new HashSet<>()).add(userId);
+            ids(key).put(userId, rs.getLong("id"));
+            if (!pendingWrites.contains(new PendingWrite(key, userId))
+                    && board(key).update(userId, rs.getInt("points")) && markReordered) {
+                reorderedBoards.add(key);
+            }
+            rows[0]++;
+        });
+        rankingIds.forEach((key, ids) -> ids.keySet().removeIf(userId -> {
+            if (seen.getOrDefault(key, Set.of()).contains(userId) || pendingWrites.contains(new PendingWrite(key, userId))) {
+                return false;
+            }
+            board(key).remove(userId);
+            reorderedBoards.add(key);
+            return true;
+        }));
+        return rows[0];
+    }
+
+    /**
+     * Guarda puntos y posición actual de los usuarios modificados: actualizaciones en lote
+     * para las filas existentes e inserciones para las nuevas.
+     */
+    @Scheduled(fixedDelayString = "${ranking.flush-interval-ms:2000}")
+    public synchronized void flush() {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> updates = new ArrayList<>();
+        List<PendingWrite> batched = new ArrayList<>();
+        List<PendingWrite> retries = new ArrayList<>();
+        Iterator<PendingWrite> iterator = pendingWrites.iterator();
+        while (iterator.hasNext()) {
+            PendingWrite write = iterator.next();
+            iterator.remove();
+            Leaderboard.Entry entry = boards.get(write.board()).get(write.userId());
+            if (entry == null) {
+                continue;
+            }
+            try {
+                Long rankingId = ids(write.board()).get(write.userId());
+                if (rankingId != null) {
+                    updates.add(new Object[]{entry.points(), entry.position(), now, rankingId});
+                    batched.add(write);
+                } else {
+                    ids(write.board()).put(write.userId(), insert(write.board(), entry, now));
+                }
+            } catch (DataIntegrityViolationException e) {
+                // El usuario o el challenge ya no existen: no tiene sentido reintentar
+                log.warn("Ranking del usuario {} en {} descartado: {}", write.userId(), write.board(), e.getMessage());
+            } catch (Exception e) {
+                retries.add(write);
+                log.warn("No se pudo guardar el ranking del usuario {} en {}: {}", write.userId(), write.board(), e.getMessage());
+            }
+        }
+        if (!updates.isEmpty()) {
+            try {
+                jdbcTemplate.batchUpdate("UPDATE rankings SET points = ?, position = ?, last_updated = ? WHERE id = ?", updates);
+                log.debug("Rankings guardados: {} actualizaciones", updates.size());
+            } catch (Exception e) {
+                retries.addAll(batched);
+                log.warn("No se pudo guardar el lote de {} rankings: {}", updates.size(), e.getMessage());
+            }
+        }
+        // Los fallos transitorios se reintentan en el siguiente ciclo
+        pendingWrites.addAll(retries);
+    }
+
+    /**
+     * Reescribe en lote la posición de todos los usuarios de las clasificaciones reordenadas.
+     */
+    @Scheduled(fixedDelayString = "${ranking.position-sync-interval-ms:300000}")
+    public void syncPositions() {
+        Iterator<BoardKey> iterator = reorderedBoards.iterator();
+        while (iterator.hasNext()) {
+            BoardKey key = iterator.next();
+            iterator.remove();
+            Leaderboard board = boards.get(key);
+            Map<Long, Long> ids = ids(key);
+            List<Object[]> updates = new ArrayList<>();
+            for (Leaderboard.Entry entry : board.top(board.size())) {
+                Long rankingId = ids.get(entry.userId());
+                if (rankingId != null) {
+                    updates.add(new Object[]{entry.position(), rankingId});
+                }
+            }
+            jdbcTemplate.batchUpdate("UPDATE rankings SET position = ? WHERE id = ?", updates);
+            log.debug("Posiciones sincronizadas para {}: {} filas", key, updates.size());
+        }
+    }
+
+    private Long insert(BoardKey key, Leaderboard.Entry entry, Timestamp now) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO rankings (user_id, type, category, challenge_id, position, points, last_updated) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)", new String[]{"id"});
+            ps.setLong(1, entry.userId());
+            ps.setString(2, key.type().name());
+            ps.setString(3, key.category());
+            if (key.challengeId() != null) {
+                ps.setLong(4, key.challengeId());
+            } else {
+                ps.setNull(4, Types.BIGINT);
+            }
+            ps.setInt(5, entry.position());
+            ps.setInt(6, entry.points());
+            ps.setTimestamp(7, now);
+            return ps;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    private Leaderboard board(BoardKey key) {
+        return boards.computeIfAbsent(key, k -> new Leaderboard());
+    }
+
+    private Map<Long, Long> ids(BoardKey key) {
+        return rankingIds.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+    }
+}
@@ -0,0 +1,105 @@
+package com.bad.batch.service;
+
+import com.bad.batch.model.events.ParticipantsChangedEvent;
+import com.bad.batch.repository.ParticipationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caché acotada de id de contenido → ids de sus participantes activos (en orden de
+ * alta), guardados como long[] en lugar de entidades Participation. Se invalida con
+ * cada ParticipantsChangedEvent; el TTL solo cubre cargas que se crucen con una invalidación.
+ * <p>
+ * Dentro de una transacción de escritura no se usa la caché: la invalidación llega tras el
+ * commit, así que la transacción que cambia los participantes leería la lista anterior, y
+ * lo que cargase podría no llegar a confirmarse.
+ */
+@Service
+@Slf4j
+public class ParticipantCache {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final ParticipationRepository participationRepository;
+    private final Cache<Long, long[]> cache;
+
+    public ParticipantCache(
+            ParticipationRepository participationRepository,
+            MeterRegistry meterRegistry,
+            @Value("${content.participants-cache.maximum-size:10000}") long maximumSize,
+            @Value("${content.participants-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.participationRepository = participationRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "content.participants");
+    }
+
+    public long[] get(Long contentId) {
+        if (inWriteTransaction()) {
+            return loadOne(contentId);
+        }
+        return cache.get(contentId, this::loadOne);
+    }
+
+    /**
+     * Participantes de varios contenidos; los que no estén en caché se cargan con una sola consulta.
+     */
+    public Map<Long, long[]> getAll(Collection<Long> contentIds) {
+        if (inWriteTransaction()) {
+            return load(contentIds);
+        }
+        return cache.getAll(contentIds, this::load);
+    }
+
+    public void invalidate(Long contentId) {
+        cache.invalidate(contentId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onParticipantsChanged(ParticipantsChangedEvent event) {
+        invalidate(event.contentId());
+        log.debug("Participantes invalidados para el contenido {}", event.contentId());
+    }
+
+    private static boolean inWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private long[] loadOne(Long contentId) {
+        return participationRepository.findActiveParticipantIds(contentId).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private Map<Long, long[]> load(Collection<? extends Long> contentIds) {
+        Map<Long, List<Long>> grouped = new HashMap<>();
+        for (Object[] row : participationRepository.findActiveParticipantIdsByContentIdIn(List.copyOf(contentIds))) {
+            grouped.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((Long) row[1]);
+        }
+        // Los contenidos sin participantes también se guardan, como array vacío
+        Map<Long, long[]> result = new HashMap<>();
+        for (Long contentId : contentIds) {
+            List<Long> ids = grouped.get(contentId);
+            result.put(contentId, ids == null ? EMPTY : ids.stream().mapToLong(Long::longValue).toArray());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,446 @@
+package com.bad.batch.service;
+
+import com.bad.batch.dto.request.ChallengeSubmissionRequest;
+import com.bad.batch.dto.response.SubmissionTicketResponse;
+import com.bad.batch.model.enums.ContentType;
+import com.bad.batch.model.enums.ParticipationStatus;
+import com.bad.batch.model.enums.SubmissionStatus;
+import com.bad.batch.model.events.ContentChangedEvent;
+import com.bad.batch.model.events.SubmissionReceivedEvent;
+import com.bad.batch.repository.ContentRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recepción asíncrona de entregas de challenges. Cada entrega se valida en memoria
+ * (formato, plazo del challenge y participación, con los datos del challenge y de
+ * {@link ParticipantCache} en caché), recibe un ticket y se encola; un hilo de fondo
+ * las inserta en lotes JDBC de hasta {@code flush-size} filas y actualiza el ticket,
+ * que se consulta en su URL de estado.
+ * <p>
+ * Los reintentos con la misma cabecera Idempotency-Key (por usuario y contenido)
+ * devuelven el ticket original sin volver a encolar la entrega, mientras la clave
+ * siga en la caché acotada de deduplicación. Si la cola está llena, el hilo que
+ * recibe la entrega la inserta él mismo.
+ * <p>
+ * Los tickets, las claves de idempotencia y la cola viven en la memoria de este nodo:
+ * la URL de estado solo responde en el nodo que aceptó la entrega (detrás de un
+ * balanceador hace falta afinidad por usuario) y las entregas aceptadas que sigan en
+ * la cola se pierden si el proceso cae antes de guardarlas. El cliente solo debe dar
+ * la entrega por registrada cuando el ticket pasa a {@code STORED}; mientras tanto,
+ * reenviarla con la misma clave de idempotencia es seguro.
+ */
+@Service
+@Slf4j
+public class SubmissionIngestionService {
+
+    private static final String ACCEPTED = "ACCEPTED";
+    private static final String STORED = "STORED";
+    private static final String REJECTED = "REJECTED";
+
+    private static final int MAX_URL_LENGTH = 255;
+    private static final int MAX_DESCRIPTION_LENGTH = 1000;
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
+    private static final String INSERT_SQL = """
+        INSERT INTO challenge_submissions (participation_id, repository_url, demo_url, description, status, submitted_at)
+        VALUES (?, ?, ?, ?, ?, ?)
+        """;
+
+    private record PendingSubmission(String ticketId, Long contentId, Long userId, ChallengeSubmissionRequest request,
+                                     LocalDateTime submittedAt, LocalDateTime deadline) {
+    }
+
+    // Datos del challenge necesarios para validar una entrega
+    private record SubmissionWindow(ContentType type, LocalDateTime endDate) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final ContentRepository contentRepository;
+    private final ParticipantCache participantCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final long shutdownTimeoutMs;
+    private final BlockingQueue<PendingSubmission> queue;
+    private final Cache<String, SubmissionTicketResponse> tickets;
+    private final Cache<String, String> idempotencyKeys;
+    private final Cache<Long, Optional<SubmissionWindow>> windows;
+
+    private final Timer flushTimer;
+    private final Counter storedCounter;
+    private final Counter rejectedCounter;
+    private final Counter deduplicatedCounter;
+    private final Counter callerRunsCounter;
+
+    private Thread writerThread;
+    private volatile boolean running;
+
+    public SubmissionIngestionService(
+            JdbcTemplate jdbcTemplate,
+            ContentRepository contentRepository,
+            ParticipantCache participantCache,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${submissions.ingest.queue-capacity:20000}") int queueCapacity,
+            @Value("${submissions.ingest.flush-size:500}") int flushSize,
+            @Value("${submissions.ingest.flush-interval-ms:50}") long flushIntervalMs,
+            @Value("${submissions.ingest.shutdown-timeout-ms:10000}") long shutdownTimeoutMs,
+            @Value("${submissions.ingest.dedup-maximum-size:100000}") long dedupMaximumSize,
+            @Value("${submissions.ingest.dedup-ttl-minutes:60}") long dedupTtlMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.contentRepository = contentRepository;
+        this.participantCache = participantCache;
+        this.eventPublisher = eventPublisher;
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.tickets = Caffeine.newBuilder()
+                .maximumSize(dedupMaximumSize)
+                .expireAfterWrite(Duration.ofMinutes(dedupTtlMinutes))
+                .build();
+        this.idempotencyKeys = Caffeine.newBuilder()
+                .maximumSize(dedupMaximumSize)
+                .expireAfterWrite(Duration.ofMinutes(dedupTtlMinutes))
+                .recordStats()
+                .build();
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, idempotencyKeys, "submissions.idempotency");
+
+        Gauge.builder("submissions.ingest.queue.depth", queue, BlockingQueue::size)
+                .description("Entregas aceptadas pendientes de guardar")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("submissions.ingest.flush")
+                .description("Latencia de cada lote de entregas escrito en la base de datos")
+                .register(meterRegistry);
+        this.storedCounter = meterRegistry.counter("submissions.ingest.stored");
+        this.rejectedCounter = meterRegistry.counter("submissions.ingest.rejected");
+        this.deduplicatedCounter = meterRegistry.counter("submissions.ingest.deduplicated");
+        this.callerRunsCounter = meterRegistry.counter("submissions.ingest.caller_runs");
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        writerThread = new Thread(this::runLoop, "submission-ingest");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Recepción de entregas activa (lote={}, intervalo={}ms)", flushSize, flushIntervalMs);
+    }
+
+    /**
+     * Valida y encola la entrega. Con la misma clave de idempotencia devuelve el ticket
+     * ya emitido, aunque el plazo haya terminado desde entonces.
+     * @throws IllegalArgumentException si la entrega no es válida
+     */
+    public SubmissionTicketResponse accept(Long contentId, Long userId, String idempotencyKey, ChallengeSubmissionRequest request) {
+        String scopedKey = null;
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+                throw new IllegalArgumentException("La clave de idempotencia no puede superar " + MAX_IDEMPOTENCY_KEY_LENGTH + " caracteres.");
+            }
+            scopedKey = contentId + ":" + userId + ":" + idempotencyKey;
+            // Un reintento de una entrega ya aceptada no se vuelve a validar: el plazo pudo terminar después
+            SubmissionTicketResponse previous = findTicket(scopedKey);
+            if (previous != null) {
+                deduplicatedCounter.increment();
+                return previous;
+            }
+        }
+
+        LocalDateTime deadline = validate(contentId, userId, request);
+        String ticketId = UUID.randomUUID().toString();
+        SubmissionTicketResponse ticket = new SubmissionTicketResponse(
+                ticketId, contentId, ACCEPTED, null, statusUrl(contentId, ticketId), null);
+        // El ticket se guarda antes de publicar la clave: quien encuentre la clave siempre encuentra su ticket
+        tickets.put(ticketId, ticket);
+        if (scopedKey != null) {
+            SubmissionTicketResponse winner = claimKey(scopedKey, ticketId);
+            if (winner != null) {
+                // Un reintento concurrente con la misma clave se adelantó: se descarta este ticket
+                tickets.invalidate(ticketId);
+                deduplicatedCounter.increment();
+                return winner;
+            }
+        }
+        PendingSubmission pending = new PendingSubmission(ticketId, contentId, userId, request, LocalDateTime.now(), deadline);
+        if (!running || !queue.offer(pending)) {
+            callerRunsCounter.increment();
+            flush(List.of(pending));
+        }
+        return ticket;
+    }
+
+    /**
+     * Estado actual del ticket, si pertenece al contenido y sigue en la caché.
+     */
+    public Optional<SubmissionTicketResponse> getTicket(Long contentId, String ticketId) {
+        return Optional.ofNullable(tickets.getIfPresent(ticketId))
+                .filter(ticket -> ticket.getContentId().equals(contentId));
+    }
+
+    private SubmissionTicketResponse findTicket(String scopedKey) {
+        String ticketId = idempotencyKeys.getIfPresent(scopedKey);
+        return ticketId == null ? null : tickets.getIfPresent(ticketId);
+    }
+
+    // Publica la clave para el ticket indicado; devuelve el ticket ganador si otra entrega la publicó antes
+    private SubmissionTicketResponse claimKey(String scopedKey, String ticketId) {
+        Map<String, String> keys = idempotencyKeys.asMap();
+        while (true) {
+            String previous = keys.putIfAbsent(scopedKey, ticketId);
+            if (previous == null) {
+                return null;
+            }
+            SubmissionTicketResponse ticket = tickets.getIfPresent(previous);
+            if (ticket != null) {
+                return ticket;
+            }
+            // El ticket caducó antes que la clave: se trata como una entrega nueva
+            if (keys.replace(scopedKey, previous, ticketId)) {
+                return null;
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onContentChanged(ContentChangedEvent event) {
+        windows.invalidate(event.contentId());
+    }
+
+    public static String statusUrl(Long contentId, String ticketId) {
+        return "/api/contents/" + contentId + "/submissions/status/" + ticketId;
+    }
+
+    // Devuelve la fecha de fin del challenge
+    private LocalDateTime validate(Long contentId, Long userId, ChallengeSubmissionRequest request) {
+        validateUrl(request.getRepositoryUrl(), "repositorio", true);
+        validateUrl(request.getDemoUrl(), "demo", false);
+        if (request.getDescription() != null && request.getDescription().length() > MAX_DESCRIPTION_LENGTH) {
+            throw new IllegalArgumentException("La descripción no puede superar " + MAX_DESCRIPTION_LENGTH + " caracteres.");
+        }
+
+        SubmissionWindow window = windows.get(contentId, this::loadWindow)
+                .orElseThrow(() -> new IllegalArgumentException("Contenido no encontrado"));
+        if (window.type() != ContentType.CHALLENGE) {
+            throw new IllegalArgumentException("Solo se pueden enviar soluciones a contenidos de tipo CHALLENGE.");
+        }
+        if (window.endDate() != null && LocalDateTime.now().isAfter(window.endDate())) {
+            throw new IllegalArgumentException("El plazo de entrega del challenge ha finalizado.");
+        }
+        if (!isParticipant(contentId, userId)) {
+            throw new IllegalArgumentException("El usuario debe estar unido al challenge para enviar una solución.");
+        }
+        return window.endDate();
+    }
+
+    private static void validateUrl(String url, String name, boolean required) {
+        if (url == null || url.isBlank()) {
+            if (required) {
+                throw new IllegalArgumentException("La URL del " + name + " es obligatoria.");
+            }
+            return;
+        }
+        if (url.length() > MAX_URL_LENGTH) {
+            throw new IllegalArgumentException("La URL del " + name + " no puede superar " + MAX_URL_LENGTH + " caracteres.");
+        }
+        try {
+            URI uri = new URI(url);
+            if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+                throw new IllegalArgumentException("La URL del " + name + " debe ser http o https.");
+            }
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("La URL del " + name + " no es válida.");
+        }
+    }
+
+    private boolean isParticipant(Long contentId, Long userId) {
+        for (long participantId : participantCache.get(contentId)) {
+            if (participantId == userId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Optional<SubmissionWindow> loadWindow(Long contentId) {
+        return contentRepository.findTypeAndEndDateById(contentId).stream()
+                .findFirst()
+                .map(row -> new SubmissionWindow((ContentType) row[0], (LocalDateTime) row[1]));
+    }
+
+    private void runLoop() {
+        List<PendingSubmission> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingSubmission first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, flushSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error en el hilo de recepción de entregas: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingSubmission> batch) {
+        flushTimer.record(() -> {
+            // La participación se resuelve al guardar: pudo abandonar el challenge después de entregar
+            Map<String, Long> participationIds = findParticipationIds(batch);
+            List<PendingSubmission> valid = new ArrayList<>(batch.size());
+            List<Long> validParticipationIds = new ArrayList<>(batch.size());
+            for (PendingSubmission pending : batch) {
+                Long participationId = participationIds.get(pending.contentId() + ":" + pending.userId());
+                if (participationId == null) {
+                    reject(pending, "El usuario ya no participa en el challenge.");
+                } else {
+                    valid.add(pending);
+                    validParticipationIds.add(participationId);
+                }
+            }
+            if (!valid.isEmpty()) {
+                insert(valid, validParticipationIds);
+            }
+        });
+    }
+
+    private void insert(List<PendingSubmission> batch, List<Long> participationIds) {
+        List<Long> ids;
+        try {
+            ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, new String[]{"id"})) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        PendingSubmission pending = batch.get(i);
+                        ps.setLong(1, participationIds.get(i));
+                        ps.setString(2, pending.request().getRepositoryUrl());
+                        ps.setString(3, pending.request().getDemoUrl());
+                        ps.setString(4, pending.request().getDescription());
+                        ps.setString(5, SubmissionStatus.SUBMITTED.name());
+                        ps.setTimestamp(6, Timestamp.valueOf(pending.submittedAt()));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                    List<Long> generated = new ArrayList<>(batch.size());
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            generated.add(keys.getLong(1));
+                        }
+                    }
+                    return generated;
+                }
+            });
+        } catch (Exception e) {
+            if (batch.size() > 1) {
+                // Una entrega inválida no debe descartar el lote completo: se reintenta una a una
+                log.warn("Fallo al guardar lote de {} entregas, reintentando individualmente: {}", batch.size(), e.getMessage());
+                for (int i = 0; i < batch.size(); i++) {
+                    insert(List.of(batch.get(i)), List.of(participationIds.get(i)));
+                }
+            } else {
+                log.error("No se pudo guardar la entrega del ticket {}: {}", batch.get(0).ticketId(), e.getMessage());
+                reject(batch.get(0), "No se pudo guardar la entrega.");
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingSubmission pending = batch.get(i);
+            Long submissionId = ids.get(i);
+            tickets.put(pending.ticketId(), new SubmissionTicketResponse(pending.ticketId(), pending.contentId(), STORED,
+                    submissionId, statusUrl(pending.contentId(), pending.ticketId()), null));
+            eventPublisher.publishEvent(new SubmissionReceivedEvent(submissionId, pending.deadline(), pending.submittedAt()));
+        }
+        storedCounter.increment(batch.size());
+    }
+
+    // Participaciones activas del lote en una sola consulta, por "contentId:userId"
+    private Map<String, Long> findParticipationIds(List<PendingSubmission> batch) {
+        Set<Long> contentIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        batch.forEach(pending -> {
+            contentIds.add(pending.contentId());
+            userIds.add(pending.userId());
+        });
+        Map<String, Long> participationIds = new HashMap<>();
+        namedParameterJdbcTemplate.query(
+                "SELECT id, content_id, user_id FROM participations " +
+                "WHERE content_id IN (:contentIds) AND user_id IN (:userIds) AND status <> :dropped",
+                Map.of("contentIds", contentIds, "userIds", userIds, "dropped", ParticipationStatus.DROPPED.name()),
+                rs -> {
+                    participationIds.put(rs.getLong("content_id") + ":" + rs.getLong("user_id"), rs.getLong("id"));
+                });
+        return participationIds;
+    }
+
+    private void reject(PendingSubmission pending, String error) {
+        rejectedCounter.increment();
+        tickets.put(pending.ticketId(), new SubmissionTicketResponse(pending.ticketId(), pending.contentId(), REJECTED,
+                null, statusUrl(pending.contentId(), pending.ticketId()), error));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Recepción de entregas detenida con {} entregas sin guardar", queue.size());
+        } else {
+            log.info("Cola de entregas vaciada correctamente");
+        }
+    }
+}
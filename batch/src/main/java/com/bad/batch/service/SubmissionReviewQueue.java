@@ -0,0 +1,267 @@
+package com.bad.batch.service;
+
+import com.bad.batch.dto.request.SubmissionReviewRequest;
+import com.bad.batch.dto.response.ChallengeSubmissionResponse;
+import com.bad.batch.exceptions.UserNotFoundException;
+import com.bad.batch.model.entities.ChallengeSubmission;
+import com.bad.batch.model.entities.Participation;
+import com.bad.batch.model.enums.SubmissionStatus;
+import com.bad.batch.model.events.SubmissionReceivedEvent;
+import com.bad.batch.model.events.UserActivityEvent;
+import com.bad.batch.repository.ChallengeSubmissionRepository;
+import com.bad.batch.repository.ParticipationRepository;
+import com.bad.batch.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Cola de revisión de entregas de challenges. Las entregas pendientes (SUBMITTED) se
+ * ordenan en memoria por fecha de fin del challenge y, a igualdad, por momento de
+ * entrega, de modo que primero se revisan los challenges que antes cierran.
+ * <p>
+ * Un revisor reclama un lote: se extraen de la cola las primeras entregas y cada una
+ * pasa a UNDER_REVIEW con un UPDATE condicional sobre su estado. Las que ya reclamó otra
+ * instancia no cumplen la condición y se saltan, igual que con
+ * {@code SELECT ... FOR UPDATE SKIP LOCKED}, así que dos revisores nunca reciben la misma.
+ * Las reclamaciones no resueltas en {@code submissions.review.claim-timeout-minutes}
+ * vuelven a la cola.
+ * <p>
+ * El orden vive en la memoria de cada nodo: una entrega recibida en otro nodo no entra
+ * en esta cola hasta el siguiente arranque ({@link #load()}). Con varios nodos las
+ * reclamaciones siguen sin chocar, porque las decide el UPDATE condicional, pero cada
+ * revisor solo ve las entregas recibidas en su nodo.
+ */
+@Service
+@Slf4j
+public class SubmissionReviewQueue {
+
+    private static final int MAX_SCORE = 100;
+
+    private static final String PENDING_SQL = """
+            SELECT s.id, s.submitted_at, c.end_date FROM challenge_submissions s
+            JOIN participations p ON p.id = s.participation_id
+            JOIN contents c ON c.id = p.content_id
+            """;
+
+    private static final String CLAIM_SQL =
+            "UPDATE challenge_submissions SET status = 'UNDER_REVIEW', reviewer_id = ?, claimed_at = ? " +
+            "WHERE id = ? AND status = 'SUBMITTED'";
+
+    private static final String RELEASE_SQL =
+            "UPDATE challenge_submissions SET status = 'SUBMITTED', reviewer_id = NULL, claimed_at = NULL " +
+            "WHERE id = ? AND status = 'UNDER_REVIEW' AND claimed_at < ?";
+
+    private record QueuedSubmission(Long id, LocalDateTime deadline, LocalDateTime submittedAt) {
+    }
+
+    // Sin fecha de fin se revisan después de los que la tienen
+    private static final Comparator<QueuedSubmission> REVIEW_ORDER = Comparator
+            .comparing(QueuedSubmission::deadline, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(QueuedSubmission::submittedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(QueuedSubmission::id);
+
+    private final ChallengeSubmissionRepository challengeSubmissionRepository;
+    private final ParticipationRepository participationRepository;
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration claimTimeout;
+    private final Timer claimLatency;
+
+    // Protegidas por el monitor de la instancia
+    private final PriorityQueue<QueuedSubmission> queue = new PriorityQueue<>(REVIEW_ORDER);
+    private final Set<Long> queuedIds = new HashSet<>();
+
+    public SubmissionReviewQueue(
+            ChallengeSubmissionRepository challengeSubmissionRepository,
+            ParticipationRepository participationRepository,
+            UserRepository userRepository,
+            JdbcTemplate jdbcTemplate,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${submissions.review.claim-timeout-minutes:30}") long claimTimeoutMinutes) {
+        this.challengeSubmissionRepository = challengeSubmissionRepository;
+        this.participationRepository = participationRepository;
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.claimTimeout = Duration.ofMinutes(claimTimeoutMinutes);
+        this.claimLatency = Timer.builder("submission.review.claim.latency")
+                .description("Tiempo en reclamar un lote de entregas para revisión")
+                .register(meterRegistry);
+        Gauge.builder("submission.review.queue.depth", this, SubmissionReviewQueue::depth)
+                .description("Entregas pendientes de revisión en la cola")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onSubmissionReceived(SubmissionReceivedEvent event) {
+        enqueue(new QueuedSubmission(event.submissionId(), event.deadline(), event.submittedAt()));
+    }
+
+    /**
+     * Carga en la cola las entregas pendientes guardadas.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        int[] loaded = {0};
+        jdbcTemplate.query(PENDING_SQL + "WHERE s.status = ?", rs -> {
+            enqueue(new QueuedSubmission(rs.getLong("id"),
+                    toLocalDateTime(rs.getTimestamp("end_date")), toLocalDateTime(rs.getTimestamp("submitted_at"))));
+            loaded[0]++;
+        }, SubmissionStatus.SUBMITTED.name());
+        log.info("Cola de revisión cargada: {} entregas pendientes", loaded[0]);
+    }
+
+    /**
+     * Reclama para el revisor hasta {@code limit} entregas en orden de prioridad.
+     * Puede devolver menos si la cola se vacía.
+     */
+    public List<ChallengeSubmissionResponse> claim(Long reviewerId, int limit) {
+        if (!userRepository.existsById(reviewerId)) {
+            throw new UserNotFoundException("Revisor no encontrado");
+        }
+        long start = System.nanoTime();
+        List<Long> claimed = new ArrayList<>();
+        while (claimed.size() < limit) {
+            List<QueuedSubmission> candidates = poll(limit - claimed.size());
+            if (candidates.isEmpty()) {
+                break;
+            }
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            int[][] updated;
+            try {
+                updated = jdbcTemplate.batchUpdate(CLAIM_SQL, candidates, candidates.size(), (ps, candidate) -> {
+                    ps.setLong(1, reviewerId);
+                    ps.setTimestamp(2, now);
+                    ps.setLong(3, candidate.id());
+                });
+            } catch (RuntimeException e) {
+                candidates.forEach(this::enqueue);
+                throw e;
+            }
+            // Las que no se actualizaron ya estaban reclamadas o revisadas: se saltan
+            for (int i = 0; i < candidates.size(); i++) {
+                if (updated[0][i] == 1) {
+                    claimed.add(candidates.get(i).id());
+                }
+            }
+        }
+        claimLatency.record(Duration.ofNanos(System.nanoTime() - start));
+        if (claimed.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, ChallengeSubmission> byId = new HashMap<>();
+        challengeSubmissionRepository.findAllById(claimed).forEach(submission -> byId.put(submission.getId(), submission));
+        log.debug("Revisor {} reclama {} entregas", reviewerId, claimed.size());
+        return claimed.stream()
+                .map(byId::get)
+                .map(ChallengeSubmissionResponse::from)
+                .toList();
+    }
+
+    /**
+     * Registra la revisión de una entrega reclamada por el revisor. Si se aprueba, la
+     * participación en el challenge queda completada.
+     */
+    @Transactional
+    public ChallengeSubmissionResponse review(Long submissionId, Long reviewerId, SubmissionReviewRequest request) {
+        if (request.getScore() == null || request.getScore() < 0 || request.getScore() > MAX_SCORE) {
+            throw new IllegalArgumentException("La puntuación debe estar entre 0 y " + MAX_SCORE + ".");
+        }
+        if (request.getApproved() == null) {
+            throw new IllegalArgumentException("Hay que indicar si la entrega se aprueba.");
+        }
+        SubmissionStatus status = request.getApproved() ? SubmissionStatus.APPROVED : SubmissionStatus.REJECTED;
+        LocalDateTime now = LocalDateTime.now();
+        if (challengeSubmissionRepository.completeReview(submissionId, reviewerId, status,
+                request.getScore(), request.getFeedback(), now) == 0) {
+            throw new SecurityException("La entrega no está reclamada por este revisor.");
+        }
+
+        ChallengeSubmission submission = challengeSubmissionRepository.findById(submissionId).orElseThrow();
+        Participation participation = submission.getParticipation();
+        Long participantId = participation.getParticipant().getId();
+        eventPublisher.publishEvent(UserActivityEvent.scored(participantId, request.getScore()));
+        if (request.getApproved() && participationRepository.complete(participation.getId(), now) == 1) {
+            eventPublisher.publishEvent(UserActivityEvent.of(participantId, UserActivityEvent.Type.CHALLENGE_COMPLETED));
+        }
+        return ChallengeSubmissionResponse.from(submission);
+    }
+
+    /**
+     * Devuelve a la cola las entregas reclamadas hace más de {@code claimTimeout} sin revisar.
+     */
+    @Scheduled(fixedDelayString = "${submissions.review.expiry-check-ms:60000}")
+    public void releaseExpiredClaims() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(claimTimeout));
+        List<QueuedSubmission> expired = jdbcTemplate.query(PENDING_SQL + "WHERE s.status = ? AND s.claimed_at < ?",
+                (rs, rowNum) -> new QueuedSubmission(rs.getLong("id"),
+                        toLocalDateTime(rs.getTimestamp("end_date")), toLocalDateTime(rs.getTimestamp("submitted_at"))),
+                SubmissionStatus.UNDER_REVIEW.name(), cutoff);
+        if (expired.isEmpty()) {
+            return;
+        }
+        int[][] released = jdbcTemplate.batchUpdate(RELEASE_SQL, expired, expired.size(), (ps, submission) -> {
+            ps.setLong(1, submission.id());
+            ps.setTimestamp(2, cutoff);
+        });
+        int requeued = 0;
+        for (int i = 0; i < expired.size(); i++) {
+            // Si se revisó entre la consulta y el UPDATE no vuelve a la cola
+            if (released[0][i] == 1) {
+                enqueue(expired.get(i));
+                requeued++;
+            }
+        }
+        log.info("Reclamaciones caducadas devueltas a la cola de revisión: {}", requeued);
+    }
+
+    public synchronized int depth() {
+        return queue.size();
+    }
+
+    private synchronized void enqueue(QueuedSubmission submission) {
+        if (queuedIds.add(submission.id())) {
+            queue.add(submission);
+        }
+    }
+
+    private synchronized List<QueuedSubmission> poll(int limit) {
+        List<QueuedSubmission> polled = new ArrayList<>();
+        while (polled.size() < limit && !queue.isEmpty()) {
+            QueuedSubmission submission = queue.poll();
+            queuedIds.remove(submission.id());
+            polled.add(submission);
+        }
+        return polled;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,340 @@
+package com.bad.batch.service;
+
+import com.bad.batch.model.enums.ContentType;
+import com.bad.batch.model.enums.ParticipationStatus;
+import com.bad.batch.model.enums.RankingType;
+import com.bad.batch.model.events.UserActivityEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Mantiene la tabla user_stats a partir de la actividad de los usuarios. Los servicios
+ * publican {@link UserActivityEvent}; tras el commit cada evento entra en una cola en
+ * memoria y cada {@code user-stats.flush-interval-ms} se agrupan por usuario y se
+ * aplican con un único UPDATE (o INSERT si aún no tiene fila) por usuario.
+ * <p>
+ * La media de puntuación se actualiza como media acumulada:
+ * {@code (media * n + suma) / (n + k)}, siendo n las entregas ya puntuadas y k las nuevas.
+ * Los puntos totales son la suma de puntuaciones y alimentan la clasificación GLOBAL.
+ * <p>
+ * Los eventos pendientes se pierden si la aplicación se detiene antes de aplicarlos;
+ * {@link #replay()} reconstruye las estadísticas desde contents, participations y
+ * challenge_submissions. Mientras lee el historial, las transacciones que publican
+ * actividad esperan para confirmar, de modo que cada evento queda o bien en la lectura
+ * o bien en la cola, nunca en las dos.
+ */
+@Service
+@Slf4j
+public class UserStatsAggregator {
+
+    private static final int LEADERBOARD_BATCH_SIZE = 1000;
+
+    private static final String UPDATE_SQL = """
+            UPDATE user_stats SET
+                challenges_completed = COALESCE(challenges_completed, 0) + ?,
+                challenges_created = COALESCE(challenges_created, 0) + ?,
+                mentorships_attended = COALESCE(mentorships_attended, 0) + ?,
+                mentorships_created = COALESCE(mentorships_created, 0) + ?,
+                mentorships_completed = COALESCE(mentorships_completed, 0) + ?,
+                total_challenge_score = COALESCE(total_challenge_score, 0) + ?,
+                average_challenge_score = CASE WHEN scored_submissions + ? > 0
+                    THEN (COALESCE(average_challenge_score, 0) * scored_submissions + ?) / (scored_submissions + ?)
+                    ELSE average_challenge_score END,
+                scored_submissions = scored_submissions + ?,
+                total_points = COALESCE(total_points, 0) + ?,
+                last_updated = ?
+            WHERE user_id = ?""";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO user_stats (user_id, challenges_completed, challenges_created, mentorships_attended,
+                mentorships_created, mentorships_completed, total_challenge_score, average_challenge_score,
+                scored_submissions, total_points, last_updated)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    // Cambios acumulados de un usuario entre dos aplicaciones
+    private static final class StatsDelta {
+        final Long userId;
+        int challengesCompleted;
+        int challengesCreated;
+        int mentorshipsAttended;
+        int mentorshipsCreated;
+        int mentorshipsCompleted;
+        int scoreSum;
+        int scoredSubmissions;
+
+        StatsDelta(Long userId) {
+            this.userId = userId;
+        }
+
+        void apply(UserActivityEvent event) {
+            switch (event.type()) {
+                case CHALLENGE_CREATED -> challengesCreated++;
+                case MENTORSHIP_CREATED -> mentorshipsCreated++;
+                case MENTORSHIP_JOINED -> mentorshipsAttended++;
+                case MENTORSHIP_LEFT -> mentorshipsAttended--;
+                case CHALLENGE_COMPLETED -> challengesCompleted++;
+                case MENTORSHIP_COMPLETED -> mentorshipsCompleted++;
+                case SUBMISSION_SCORED -> {
+                    scoreSum += event.score();
+                    scoredSubmissions++;
+                }
+            }
+        }
+
+        int points() {
+            return scoreSum;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LeaderboardService leaderboardService;
+    private final boolean replayOnStartup;
+    private final Queue<UserActivityEvent> queue = new ConcurrentLinkedQueue<>();
+    // Lectura: una transacción con actividad entre su commit y el encolado de sus eventos.
+    // Escritura: replay mientras lee el historial.
+    private final ReadWriteLock replayFence = new ReentrantReadWriteLock();
+    private final Object fenceResourceKey = new Object();
+    // Cambios que no se pudieron aplicar por un fallo transitorio; se suman al siguiente ciclo
+    private Map<Long, StatsDelta> carryOver = new HashMap<>();
+
+    public UserStatsAggregator(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            LeaderboardService leaderboardService,
+            MeterRegistry meterRegistry,
+            @Value("${user-stats.replay-on-startup:false}") boolean replayOnStartup) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.leaderboardService = leaderboardService;
+        this.replayOnStartup = replayOnStartup;
+        Gauge.builder("user.stats.queue.size", queue, Queue::size)
+                .description("Eventos de actividad pendientes de aplicar a user_stats")
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserActivity(UserActivityEvent event) {
+        if (event.userId() != null) {
+            queue.add(event);
+        }
+    }
+
+    /**
+     * Retiene el commit de la transacción mientras replay lee el historial. El cerrojo se
+     * suelta al completar la transacción, después de que {@link #onUserActivity} haya
+     * encolado sus eventos.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void holdReplayFence(UserActivityEvent event) {
+        if (TransactionSynchronizationManager.hasResource(fenceResourceKey)) {
+            return;
+        }
+        replayFence.readLock().lock();
+        TransactionSynchronizationManager.bindResource(fenceResourceKey, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(fenceResourceKey);
+                replayFence.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Aplica los eventos encolados: un UPDATE por usuario en lote y un INSERT para los
+     * usuarios que aún no tienen estadísticas.
+     */
+    @Scheduled(fixedDelayString = "${user-stats.flush-interval-ms:1000}")
+    public synchronized void flush() {
+        Map<Long, StatsDelta> deltas = carryOver;
+        carryOver = new HashMap<>();
+        UserActivityEvent event;
+        while ((event = queue.poll()) != null) {
+            deltas.computeIfAbsent(event.userId(), StatsDelta::new).apply(event);
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(deltas.values()));
+        } catch (DataIntegrityViolationException e) {
+            // Algún usuario ya no existe: se aplica uno a uno para no perder el resto
+            log.warn("Lote de estadísticas rechazado, se aplica por usuario: {}", e.getMessage());
+            for (StatsDelta delta : deltas.values()) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(List.of(delta)));
+                } catch (DataIntegrityViolationException ex) {
+                    log.warn("Estadísticas del usuario {} descartadas: {}", delta.userId, ex.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("No se pudieron aplicar las estadísticas de {} usuarios: {}", deltas.size(), e.getMessage());
+            carryOver = deltas;
+            return;
+        }
+        refreshLeaderboard(deltas.values().stream().filter(delta -> delta.points() != 0).map(delta -> delta.userId).toList());
+        log.debug("Estadísticas aplicadas para {} usuarios", deltas.size());
+    }
+
+    /**
+     * Reconstruye user_stats desde el historial: contenidos creados, participaciones no
+     * abandonadas y entregas puntuadas, y recalcula la clasificación GLOBAL. Los eventos
+     * pendientes al empezar ya están en el historial y se descartan; los que llegan
+     * después de la lectura se aplican en el siguiente ciclo.
+     * @return número de usuarios con estadísticas
+     */
+    public synchronized int replay() {
+        long start = System.currentTimeMillis();
+        Map<Long, StatsDelta> deltas = new HashMap<>();
+        replayFence.writeLock().lock();
+        try {
+            // Ninguna transacción con actividad puede confirmar hasta terminar la lectura
+            queue.clear();
+            carryOver.clear();
+            readHistory(deltas);
+        } finally {
+            replayFence.writeLock().unlock();
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM user_stats");
+            write(deltas.values());
+        });
+        refreshLeaderboard(List.copyOf(deltas.keySet()));
+        log.info("Estadísticas de usuario reconstruidas: {} usuarios en {} ms",
+                deltas.size(), System.currentTimeMillis() - start);
+        return deltas.size();
+    }
+
+    private void readHistory(Map<Long, StatsDelta> deltas) {
+        jdbcTemplate.query("SELECT creator_id, type FROM contents WHERE creator_id IS NOT NULL", rs -> {
+            UserActivityEvent.Type type = ContentType.MENTORSHIP.name().equals(rs.getString("type"))
+                    ? UserActivityEvent.Type.MENTORSHIP_CREATED
+                    : UserActivityEvent.Type.CHALLENGE_CREATED;
+            deltas.computeIfAbsent(rs.getLong("creator_id"), StatsDelta::new)
+                    .apply(UserActivityEvent.of(rs.getLong("creator_id"), type));
+        });
+        jdbcTemplate.query("SELECT p.user_id, c.type, p.status FROM participations p " +
+                "JOIN contents c ON c.id = p.content_id WHERE p.status <> ?", rs -> {
+            boolean mentorship = ContentType.MENTORSHIP.name().equals(rs.getString("type"));
+            boolean completed = ParticipationStatus.COMPLETED.name().equals(rs.getString("status"));
+            StatsDelta delta = deltas.computeIfAbsent(rs.getLong("user_id"), StatsDelta::new);
+            if (mentorship) {
+                delta.apply(UserActivityEvent.of(delta.userId, UserActivityEvent.Type.MENTORSHIP_JOINED));
+            }
+            if (completed) {
+                delta.apply(UserActivityEvent.of(delta.userId, mentorship
+                        ? UserActivityEvent.Type.MENTORSHIP_COMPLETED
+                        : UserActivityEvent.Type.CHALLENGE_COMPLETED));
+            }
+        }, ParticipationStatus.DROPPED.name());
+        jdbcTemplate.query("SELECT p.user_id, s.score FROM challenge_submissions s " +
+                "JOIN participations p ON p.id = s.participation_id WHERE s.score IS NOT NULL", rs -> {
+            deltas.computeIfAbsent(rs.getLong("user_id"), StatsDelta::new)
+                    .apply(UserActivityEvent.scored(rs.getLong("user_id"), rs.getInt("score")));
+        });
+    }
+
+    // Después de LeaderboardService.load, para que la clasificación GLOBAL quede con los puntos reconstruidos
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void replayIfEnabled() {
+        if (replayOnStartup) {
+            replay();
+        }
+    }
+
+    private void write(Iterable<StatsDelta> deltas) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<StatsDelta> batch = new ArrayList<>();
+        deltas.forEach(batch::add);
+
+        int[][] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, delta) -> {
+            ps.setInt(1, delta.challengesCompleted);
+            ps.setInt(2, delta.challengesCreated);
+            ps.setInt(3, delta.mentorshipsAttended);
+            ps.setInt(4, delta.mentorshipsCreated);
+            ps.setInt(5, delta.mentorshipsCompleted);
+            ps.setInt(6, delta.scoreSum);
+            ps.setInt(7, delta.scoredSubmissions);
+            ps.setInt(8, delta.scoreSum);
+            ps.setInt(9, delta.scoredSubmissions);
+            ps.setInt(10, delta.scoredSubmissions);
+            ps.setInt(11, delta.points());
+            ps.setTimestamp(12, now);
+            ps.setLong(13, delta.userId);
+        });
+
+        // Los usuarios sin fila aún reciben un INSERT con los valores iniciales
+        List<StatsDelta> inserts = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (updated[0][i] == 0) {
+                inserts.add(batch.get(i));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts, inserts.size(), (ps, delta) -> {
+                ps.setLong(1, delta.userId);
+                ps.setInt(2, delta.challengesCompleted);
+                ps.setInt(3, delta.challengesCreated);
+                ps.setInt(4, delta.mentorshipsAttended);
+                ps.setInt(5, delta.mentorshipsCreated);
+                ps.setInt(6, delta.mentorshipsCompleted);
+                ps.setInt(7, delta.scoreSum);
+                ps.setBigDecimal(8, delta.scoredSubmissions > 0
+                        ? BigDecimal.valueOf(delta.scoreSum).divide(BigDecimal.valueOf(delta.scoredSubmissions), 2, RoundingMode.HALF_UP)
+                        : BigDecimal.ZERO);
+                ps.setInt(9, delta.scoredSubmissions);
+                ps.setInt(10, delta.points());
+                ps.setTimestamp(11, now);
+            });
+        }
+    }
+
+    // Lleva los puntos totales ya guardados a la clasificación GLOBAL
+    private void refreshLeaderboard(List<Long> userIds) {
+        LeaderboardService.BoardKey global = LeaderboardService.BoardKey.of(RankingType.GLOBAL, null, null);
+        for (int from = 0; from < userIds.size(); from += LEADERBOARD_BATCH_SIZE) {
+            List<Long> chunk = userIds.subList(from, Math.min(from + LEADERBOARD_BATCH_SIZE, userIds.size()));
+            namedParameterJdbcTemplate.query(
+                    "SELECT user_id, total_points FROM user_stats WHERE user_id IN (:ids)",
+                    Map.of("ids", chunk),
+                    rs -> {
+                        leaderboardService.updatePoints(global, rs.getLong("user_id"), rs.getInt("total_points"));
+                    });
+        }
+    }
+}
@@ -1,37 +1,65 @@
 package com.bad.batch.service.impl;
 
-import com.bad.batch.dto.request.ChallengeSubmissionRequest;
 import com.bad.batch.dto.request.ContentRequest;
 import com.bad.batch.dto.response.ChallengeSubmissionResponse;
 import com.bad.batch.dto.response.ContentResponse;
+import com.bad.batch.dto.response.JoinResponse;
 import com.bad.batch.model.entities.*;
 import com.bad.batch.model.enums.*;
+import com.bad.batch.model.events.ParticipantsChangedEvent;
+import com.bad.batch.model.events.UserActivityEvent;
+import com.bad.batch.model.events.WaitlistPromotedEvent;
 import com.bad.batch.repository.*;
 import com.bad.batch.service.ContentService;
+import com.bad.batch.service.ParticipantCache;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 public class ContentServiceImpl implements ContentService {
     private final ContentRepository contentRepository;
     private final UserRepository userRepository;
     private final ParticipationRepository participationRepository;
     private final ChallengeSubmissionRepository challengeSubmissionRepository;
+    private final WaitlistEntryRepository waitlistEntryRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ParticipantCache participantCache;
+
+    // Entradas de la lista de espera que se prueban al liberar una plaza antes de rendirse
+    private static final int MAX_PROMOTION_ATTEMPTS = 5;
 
     @Autowired
-    public ContentServiceImpl(ContentRepository contentRepository, UserRepository userRepository, ParticipationRepository participationRepository, ChallengeSubmissionRepository challengeSubmissionRepository) {
+    public ContentServiceImpl(ContentRepository contentRepository, UserRepository userRepository, ParticipationRepository participationRepository, ChallengeSubmissionRepository challengeSubmissionRepository, WaitlistEntryRepository waitlistEntryRepository, ApplicationEventPublisher eventPublisher, ParticipantCache participantCache) {
         this.contentRepository = contentRepository;
         this.userRepository = userRepository;
         this.participationRepository = participationRepository;
         this.challengeSubmissionRepository = challengeSubmissionRepository;
+        this.waitlistEntryRepository = waitlistEntryRepository;
+        this.eventPublisher = eventPublisher;
+        this.participantCache = participantCache;
     }
 
     @Override
@@ -101,7 +129,12 @@ public class ContentServiceImpl implements ContentService {
         }
         content.setType(request.getType());
         content.setStatus(ContentStatus.DRAFT); // Forzar status DRAFT al crear
-        return contentRepository.save(content);
+        Content saved = contentRepository.save(content);
+        if (saved.getCreator() != null) {
+            eventPublisher.publishEvent(UserActivityEvent.of(saved.getCreator().getId(),
+                saved.getType() == ContentType.MENTORSHIP ? UserActivityEvent.Type.MENTORSHIP_CREATED : UserActivityEvent.Type.CHALLENGE_CREATED));
+        }
+        return saved;
     }
 
     @Override
@@ -170,7 +203,9 @@ public class ContentServiceImpl implements ContentService {
     }
 
     @Override
+    @Transactional
     public void deleteContent(Long id) {
+        waitlistEntryRepository.deleteByContentId(id);
         contentRepository.deleteById(id);
     }
 
@@ -262,68 +297,85 @@ public class ContentServiceImpl implements ContentService {
     }
 
     @Override
-    public List<Content> getAllContentsForUser(Long userId) {
+    @Transactional(readOnly = true)
+    public Page<ContentResponse> getAllContentsForUser(Long userId, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(page, size);
         try {
-            List<Content> allContents = contentRepository.findAll();
-
-            // Si no se proporciona userId, devolvemos solo los publicados
-            if (userId == null) {
-                return allContents.stream()
-                    .filter(c -> c.getStatus() == ContentStatus.PUBLISHED)
-                    .collect(Collectors.toList());
+            // Publicados + creados por el usuario; sin userId (o si no existe) solo coinciden los publicados
+            Page<ContentResponse> contents = userId == null
+                ? contentRepository.findResponsesByStatus(ContentStatus.PUBLISHED, pageRequest)
+                : findVisibleResponses(userId, pageRequest);
+            if (contents.isEmpty()) {
+                return contents;
             }
 
-            // Intentamos encontrar el usuario
-            Optional<User> userOpt = userRepository.findById(userId);
-
-            // Si el usuario existe, devolvemos los publicados + los creados por el usuario
-            if (userOpt.isPresent()) {
-                return allContents.stream()
-                    .filter(c -> c.getStatus() == ContentStatus.PUBLISHED ||
-                           (c.getCreator() != null && userId.equals(c.getCreator().getId())))
-                    .collect(Collectors.toList());
-            } else {
-                // Si el usuario no existe, solo devolvemos los publicados
-                return allContents.stream()
-                    .filter(c -> c.getStatus() == ContentStatus.PUBLISHED)
-                    .collect(Collectors.toList());
-            }
+            // Tecnologías de toda la página en una sola consulta, en lugar de una por contenido
+            Map<Long, Set<String>> technologies =
+                contentRepository.findTechnologiesByContentId(contents.map(ContentResponse::getId).getContent());
+            contents.forEach(c -> c.setRequiredTechnologies(technologies.getOrDefault(c.getId(), new HashSet<>())));
+            return contents;
         } catch (Exception e) {
             System.err.println("Error al obtener contenidos para el usuario " + userId + ": " + e.getMessage());
             e.printStackTrace();
-            return new ArrayList<>();
+            return Page.empty(pageRequest);
         }
     }
 
+    /**
+     * Listado visible (publicados y contenidos propios sin publicar) paginado en la base de datos:
+     * primero los ids de la página, mezclando las dos ramas indexadas, y después sus proyecciones.
+     */
+    private Page<ContentResponse> findVisibleResponses(Long userId, PageRequest pageRequest) {
+        String published = ContentStatus.PUBLISHED.name();
+        List<Long> ids = contentRepository.findVisibleIds(userId, published, pageRequest.getPageSize(), pageRequest.getOffset());
+        long total = contentRepository.countVisible(userId, published);
+        if (ids.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageRequest, total);
+        }
+        Map<Long, ContentResponse> responses = contentRepository.findResponsesByIdIn(ids).stream()
+            .collect(Collectors.toMap(ContentResponse::getId, Function.identity()));
+        List<ContentResponse> pageContent = ids.stream()
+            .map(responses::get)
+            .filter(Objects::nonNull)
+            .toList();
+        return new PageImpl<>(pageContent, pageRequest, total);
+    }
+
     @Override
     @Transactional(readOnly = true)
-    public List<Content> searchContents(ContentType type, String tech, String difficulty, int page, int size, Long userId) {
+    public Page<Content> searchContents(ContentType type, String tech, String difficulty, int page, int size, Long userId) {
+        PageRequest pageRequest = PageRequest.of(page, size);
         try {
-            // Obtenemos los contenidos filtrados por usuario usando el método optimizado
-            List<Content> userContents = contentRepository.findAllWithTechnologiesForSearch(userId);
-
-            // Aplicamos los filtros adicionales
-            List<Content> filteredContents = userContents.stream()
-                .filter(c -> type == null || c.getType() == type)
-                .filter(c -> tech == null || (c.getRequiredTechnologies() != null &&
-                             c.getRequiredTechnologies().stream().anyMatch(t -> t.equalsIgnoreCase(tech))))
-                .filter(c -> difficulty == null || (c.getDifficulty() != null &&
-                             c.getDifficulty().name().equalsIgnoreCase(difficulty)))
-                .collect(Collectors.toList());
-
-            // Aplicamos paginación
-            int start = page * size;
-            int end = Math.min(start + size, filteredContents.size());
+            DifficultyLevel difficultyLevel = null;
+            if (difficulty != null) {
+                difficultyLevel = Arrays.stream(DifficultyLevel.values())
+                    .filter(d -> d.name().equalsIgnoreCase(difficulty))
+                    .findFirst()
+                    .orElse(null);
+                if (difficultyLevel == null) {
+                    return Page.empty(pageRequest);
+                }
+            }
 
-            if (start >= filteredContents.size()) {
-                return new ArrayList<>();
+            // Fase 1: filtros y paginación en la base de datos, solo ids
+            Page<Long> ids = contentRepository.findIds(
+                Specification.where(ContentSpecifications.createdBy(userId))
+                    .and(ContentSpecifications.hasType(type))
+                    .and(ContentSpecifications.hasDifficulty(difficultyLevel))
+                    .and(ContentSpecifications.requiresTechnology(tech)),
+                pageRequest);
+            if (ids.isEmpty()) {
+                return new PageImpl<>(List.of(), pageRequest, ids.getTotalElements());
             }
 
-            return filteredContents.subList(start, end);
+            // Fase 2: cargar esos contenidos con sus colecciones, conservando el orden de la página
+            Map<Long, Content> byId = contentRepository.findAllWithTechnologiesByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(Content::getId, Function.identity()));
+            return ids.map(byId::get);
         } catch (Exception e) {
             System.err.println("Error al buscar contenidos: " + e.getMessage());
             e.printStackTrace();
-            return new ArrayList<>();
+            return Page.empty(pageRequest);
         }
     }
 
@@ -398,28 +450,44 @@ public class ContentServiceImpl implements ContentService {
 
     @Override
     @Transactional
-    public void joinContent(Long contentId, Long userId) {
+    public JoinResponse joinContent(Long contentId, Long userId) {
         try {
-            Content content = contentRepository.findById(contentId)
-                .orElseThrow(() -> new IllegalArgumentException("Contenido no encontrado"));
-
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("Usuario no encontrado"));
-
-            // Implementación simple: simplemente registramos el mensaje
-            System.out.println("User " + userId + " joined content " + contentId);
+            if (!contentRepository.existsById(contentId)) {
+                throw new IllegalArgumentException("Contenido no encontrado");
+            }
+            if (!userRepository.existsById(userId)) {
+                throw new IllegalArgumentException("Usuario no encontrado");
+            }
+            if (participationRepository.existsActive(contentId, userId)) {
+                return new JoinResponse("JOINED", null); // Ya participa: unirse de nuevo no ocupa otra plaza
+            }
+            Optional<WaitlistEntry> waiting = waitlistEntryRepository.findByContentIdAndUserId(contentId, userId);
+            if (waiting.isPresent()) {
+                return new JoinResponse("WAITLISTED", waitlistEntryRepository.countAhead(contentId, waiting.get().getId()));
+            }
 
-            // Aquí se podría implementar la lógica real para registrar la participación
-            // Por ejemplo:
-            // Participation participation = new Participation();
-            // participation.setContent(content);
-            // participation.setUser(user);
-            // participation.setJoinDate(LocalDateTime.now());
-            // participationRepository.save(participation);
+            // UPDATE condicional sobre el contador: solo bloquea la fila del contenido y nunca sobrevende
+            if (contentRepository.reserveSeat(contentId) == 0) {
+                // Antes de ir a la cola se bloquea el contenido y se vuelve a intentar: una baja que
+                // terminó entretanto pudo liberar la plaza sin ver aún esta entrada en la cola
+                contentRepository.lockById(contentId);
+                if (contentRepository.reserveSeat(contentId) == 1) {
+                    occupySeat(contentId, userId);
+                    return new JoinResponse("JOINED", null);
+                }
+                // Sin plazas: a la cola FIFO. Un alta concurrente del mismo usuario choca con uk_waitlist_content_user
+                WaitlistEntry entry = waitlistEntryRepository.save(WaitlistEntry.builder()
+                    .contentId(contentId)
+                    .userId(userId)
+                    .enqueuedAt(LocalDateTime.now())
+                    .build());
+                return new JoinResponse("WAITLISTED", waitlistEntryRepository.countAhead(contentId, entry.getId()));
+            }
+            occupySeat(contentId, userId);
+            return new JoinResponse("JOINED", null);
         } catch (Exception e) {
-            System.err.println("Error al unirse al contenido " + contentId + ": " + e.getMessage());
-            e.printStackTrace();
-            // No relanzamos la excepción para no interrumpir el flujo
+            log.warn("Error al unirse al contenido {}: {}", contentId, e.getMessage());
+            throw e;
         }
     }
 
@@ -427,55 +495,113 @@ public class ContentServiceImpl implements ContentService {
     @Transactional
     public void leaveContent(Long contentId, Long userId) {
         try {
-            Content content = contentRepository.findById(contentId)
-                .orElseThrow(() -> new IllegalArgumentException("Contenido no encontrado"));
-
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("Usuario no encontrado"));
-
-            // Implementación simple: simplemente registramos el mensaje
-            System.out.println("User " + userId + " left content " + contentId);
-
-            // Aquí se podría implementar la lógica real para eliminar la participación
-            // Por ejemplo:
-            // participationRepository.deleteByContentIdAndUserId(contentId, userId);
+            if (!releaseParticipation(contentId, userId)) {
+                // No participaba: si estaba en lista de espera, sale de ella
+                waitlistEntryRepository.deleteByContentIdAndUserId(contentId, userId);
+            }
         } catch (Exception e) {
-            System.err.println("Error al salir del contenido " + contentId + ": " + e.getMessage());
-            e.printStackTrace();
-            // No relanzamos la excepción para no interrumpir el flujo
+            log.warn("Error al salir del contenido {}: {}", contentId, e.getMessage());
+            throw e;
         }
     }
 
     @Override
+    @Transactional(readOnly = true)
     public List<Long> getParticipants(Long contentId) {
         try {
-            // Devolver una lista vacía por ahora
-            // Aquí se podría implementar la lógica real para obtener participantes
-            // Por ejemplo:
-            // return participationRepository.findByContentId(contentId).stream()
-            //     .map(p -> p.getUser().getId())
-            //     .collect(Collectors.toList());
-
-            return Collections.emptyList();
+            return Arrays.stream(participantCache.get(contentId)).boxed().toList();
         } catch (Exception e) {
-            System.err.println("Error al obtener participantes para el contenido " + contentId + ": " + e.getMessage());
-            e.printStackTrace();
+            log.warn("Error al obtener participantes para el contenido {}: {}", contentId, e.getMessage());
             return Collections.emptyList();
         }
     }
 
-    // Implementar los métodos restantes de la interfaz con manejo de errores similar
-
     @Override
-    public ChallengeSubmissionResponse submitChallenge(Long contentId, Long userId, ChallengeSubmissionRequest request) {
-        // Implementación con manejo de errores
-        return new ChallengeSubmissionResponse(); // Implementación temporal
+    public Map<Long, List<Long>> getParticipants(Collection<Long> contentIds) {
+        try {
+            Map<Long, List<Long>> participants = new LinkedHashMap<>();
+            participantCache.getAll(contentIds)
+                .forEach((contentId, ids) -> participants.put(contentId, Arrays.stream(ids).boxed().toList()));
+            return participants;
+        } catch (Exception e) {
+            log.warn("Error al obtener participantes para los contenidos {}: {}", contentIds, e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    // Si abandonó antes se reactiva su participación; si no, se crea una nueva.
+    // Una unión concurrente del mismo usuario choca con uk_participation_user_content y revierte su plaza
+    private void occupySeat(Long contentId, Long userId) {
+        if (participationRepository.rejoin(contentId, userId, LocalDateTime.now()) == 0) {
+            Participation participation = new Participation();
+            participation.setContent(contentRepository.getReferenceById(contentId));
+            participation.setParticipant(userRepository.getReferenceById(userId));
+            participation.setStatus(ParticipationStatus.JOINED);
+            participation.setJoinedAt(LocalDateTime.now());
+            participationRepository.save(participation);
+        }
+        eventPublisher.publishEvent(new ParticipantsChangedEvent(contentId));
+        publishMentorshipActivity(contentId, userId, UserActivityEvent.Type.MENTORSHIP_JOINED);
     }
 
+    // Marca la participación como abandonada y libera su plaza; solo la primera baja concurrente libera.
+    // La plaza pasa en la misma transacción al primero de la lista de espera, si lo hay
+    private boolean releaseParticipation(Long contentId, Long userId) {
+        if (participationRepository.drop(contentId, userId) == 0) {
+            return false;
+        }
+        contentRepository.releaseSeat(contentId);
+        eventPublisher.publishEvent(new ParticipantsChangedEvent(contentId));
+        publishMentorshipActivity(contentId, userId, UserActivityEvent.Type.MENTORSHIP_LEFT);
+        promoteNextWaiter(contentId);
+        return true;
+    }
+
+    // Solo las mentorías cuentan como asistencia en las estadísticas del usuario
+    private void publishMentorshipActivity(Long contentId, Long userId, UserActivityEvent.Type type) {
+        if (contentRepository.findTypeById(contentId).orElse(null) == ContentType.MENTORSHIP) {
+            eventPublisher.publishEvent(UserActivityEvent.of(userId, type));
+        }
+    }
+
+    private void promoteNextWaiter(Long contentId) {
+        // El UPDATE de releaseSeat mantiene bloqueada la fila del contenido hasta el commit, así
+        // que ningún alta nueva puede quedarse con la plaza antes que la cola. Quien entra en la
+        // cola bloquea la misma fila, de modo que su entrada ya es visible aquí o, si llega
+        // después, encuentra la plaza libre y la ocupa directamente
+        for (int attempt = 0; attempt < MAX_PROMOTION_ATTEMPTS; attempt++) {
+            Optional<WaitlistEntry> next = waitlistEntryRepository.findFirstByContentIdOrderByIdAsc(contentId);
+            if (next.isEmpty()) {
+                return;
+            }
+            // Primero la plaza: si no la hay, la entrada se queda en la cola
+            if (contentRepository.reserveSeat(contentId) == 0) {
+                return;
+            }
+            // Otra baja concurrente puede haber promovido ya a esta entrada: se devuelve la plaza y se prueba con la siguiente
+            if (waitlistEntryRepository.deleteEntry(next.get().getId()) == 0) {
+                contentRepository.releaseSeat(contentId);
+                continue;
+            }
+            Long promotedUserId = next.get().getUserId();
+            occupySeat(contentId, promotedUserId);
+            eventPublisher.publishEvent(new WaitlistPromotedEvent(contentId, promotedUserId));
+            return;
+        }
+    }
+
+    // Implementar los métodos restantes de la interfaz con manejo de errores similar
+
     @Override
     public List<ChallengeSubmissionResponse> getChallengeSubmissions(Long contentId, Long userId) {
-        // Implementación con manejo de errores
-        return Collections.emptyList(); // Implementación temporal
+        try {
+            return challengeSubmissionRepository.findByContentIdAndUserId(contentId, userId).stream()
+                .map(ChallengeSubmissionResponse::from)
+                .collect(Collectors.toList());
+        } catch (Exception e) {
+            log.warn("Error al obtener las entregas del contenido {}: {}", contentId, e.getMessage());
+            throw e;
+        }
     }
 
     @Override
@@ -484,7 +610,21 @@ public class ContentServiceImpl implements ContentService {
     }
 
     @Override
+    @Transactional
     public void removeParticipant(Long contentId, Long userId, Long creatorId) {
-        // Implementación con manejo de errores
+        try {
+            Content content = contentRepository.findById(contentId)
+                .orElseThrow(() -> new IllegalArgumentException("Contenido no encontrado"));
+
+            if (content.getCreator() == null || !content.getCreator().getId().equals(creatorId)) {
+                throw new SecurityException("Solo el creador puede eliminar participantes.");
+            }
+            if (!releaseParticipation(contentId, userId)) {
+                waitlistEntryRepository.deleteByContentIdAndUserId(contentId, userId);
+            }
+        } catch (Exception e) {
+            log.warn("Error al eliminar participante {} del contenido {}: {}", userId, contentId, e.getMessage());
+            throw e;
+        }
     }
 }
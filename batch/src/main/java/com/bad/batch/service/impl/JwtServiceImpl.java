@@ -1,9 +1,11 @@
 package com.bad.batch.service.impl;
 
+import com.bad.batch.dto.security.ParsedToken;
 import com.bad.batch.dto.security.TokenResponse;
 import com.bad.batch.model.entities.User;
 import com.bad.batch.service.JwtService;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,6 +19,8 @@ import java.util.Date;
 @Service
 public class JwtServiceImpl implements JwtService {
     private final SecretKey secretKey;
+    // El parser es inmutable y thread-safe: se construye una sola vez
+    private final JwtParser jwtParser;
     private static final long EXPIRATION_TIME = 864_000_000;
 
     public JwtServiceImpl(@Value("${jwt.secret}") String secret) {
@@ -25,6 +29,9 @@ public class JwtServiceImpl implements JwtService {
                 32 // Longitud exacta requerida para HS256
         );
         this.secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.jwtParser = Jwts.parser()
+                .verifyWith(secretKey)
+                .build();
     }
 
     @Override
@@ -81,9 +88,7 @@ public class JwtServiceImpl implements JwtService {
     @Override
     public Claims getClaims(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(secretKey)
-                    .build()
+            return jwtParser
                     .parseSignedClaims(token)
                     .getPayload();
         } catch (Exception e) {
@@ -92,6 +97,20 @@ public class JwtServiceImpl implements JwtService {
         }
     }
 
+    @Override
+    public ParsedToken parse(String token) {
+        Claims claims = getClaims(token);
+        Object userIdClaim = claims.get("userId");
+        if (!(userIdClaim instanceof Number userId)) {
+            throw new IllegalArgumentException("No userId claim found for token");
+        }
+        String role = claims.get("role", String.class);
+        if (role == null || role.isBlank()) {
+            throw new IllegalArgumentException("No role claim found for token");
+        }
+        return new ParsedToken(userId.longValue(), role, claims.getExpiration().toInstant());
+    }
+
     @Override
     public boolean isExpired(String token) {
         try {
@@ -1,6 +1,8 @@
 package com.bad.batch.service.impl;
 
+import com.bad.batch.dto.security.AuthPrincipal;
 import com.bad.batch.repository.UserRepository;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -16,7 +18,13 @@ public class UserDetailsServiceImpl implements UserDetailsService {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return userRepository.findByEmail(username)
+        AuthPrincipal principal = userRepository.findAuthPrincipalByEmail(username)
                 .orElseThrow(()-> new UsernameNotFoundException("User with Email" + username + "not found"));
+
+        return User.withUsername(principal.email())
+                .password(principal.password())
+                .roles(principal.role() != null ? new String[]{principal.role().name()} : new String[0])
+                .disabled(!principal.isEnabled())
+                .build();
     }
 }
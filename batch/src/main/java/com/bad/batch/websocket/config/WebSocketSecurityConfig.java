@@ -1,5 +1,6 @@
 package com.bad.batch.websocket.config;
 
+import com.bad.batch.dto.security.ParsedToken;
 import com.bad.batch.service.JwtService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
@@ -39,21 +40,23 @@ public class WebSocketSecurityConfig implements ChannelInterceptor {
             if (authToken != null && authToken.startsWith("Bearer ")) {
                 String token = authToken.substring(7);
                 
+                ParsedToken parsedToken;
                 try {
-                    if (!jwtService.isExpired(token)) {
-                        Long userId = jwtService.extractUserId(token);
-                        String role = jwtService.extractRole(token);
-                        
-                        UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
-                            userId,
-                            null,
-                            Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role))
-                        );
-                        
-                        accessor.setUser(auth);
-                    }
-                } catch (Exception e) {
-                    throw new IllegalArgumentException("Token inválido");
+                    // Una sola verificación de firma por CONNECT
+                    parsedToken = jwtService.parse(token);
+                } catch (IllegalArgumentException e) {
+                    // Token expirado o inválido: la sesión queda sin autenticar
+                    parsedToken = null;
+                }
+
+                if (parsedToken != null) {
+                    UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
+                        parsedToken.userId(),
+                        null,
+                        Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + parsedToken.role()))
+                    );
+
+                    accessor.setUser(auth);
                 }
             }
         }
@@ -3,6 +3,7 @@ package com.bad.batch.websocket.dto;
 import java.time.LocalDate;
 
 import com.bad.batch.model.enums.ChatMessageType;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 
@@ -10,6 +11,7 @@ import java.time.LocalDateTime;
 
 @Data
 @Builder
+@AllArgsConstructor
 public class ChatMessageResponse {
     private Long id;
     private String content;
@@ -22,4 +24,11 @@ public class ChatMessageResponse {
     private LocalDateTime timestamp;
     private LocalDateTime readAt; // Cuándo fue leído el mensaje
     private boolean isSystem;
+
+    // Usado por las proyecciones JPQL de MessageRepository; senderName se completa después
+    public ChatMessageResponse(Long id, String content, ChatMessageType type, Long senderId, Long recipientId,
+                               Long challengeId, Long mentorshipId, LocalDateTime timestamp, LocalDateTime readAt,
+                               boolean isSystem) {
+        this(id, content, type, senderId, null, recipientId, challengeId, mentorshipId, timestamp, readAt, isSystem);
+    }
 }
@@ -0,0 +1,42 @@
+package com.bad.batch.websocket.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Posición de un mensaje dentro del historial para paginación por cursor (keyset).
+ * Se ordena por (createdAt, id): el id desempata mensajes con el mismo timestamp,
+ * por lo que el cursor es estable aunque entren mensajes nuevos entre páginas.
+ * Se expone al cliente codificado en Base64 URL-safe y debe tratarse como opaco.
+ */
+public record MessageCursor(LocalDateTime createdAt, Long id) {
+
+    private static final String SEPARATOR = "|";
+
+    // Cursor "antes de todo": se usa para la primera página cuando el cliente no envía cursor
+    public static final MessageCursor LATEST = new MessageCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    public static MessageCursor of(ChatMessageResponse message) {
+        return new MessageCursor(message.getTimestamp(), message.getId());
+    }
+
+    public String encode() {
+        String raw = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MessageCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            return new MessageCursor(
+                LocalDateTime.parse(raw.substring(0, separator)),
+                Long.parseLong(raw.substring(separator + 1))
+            );
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.bad.batch.websocket.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Página de mensajes obtenida por cursor. Los mensajes van siempre en orden
+ * cronológico; nextBefore y nextAfter son los cursores para pedir los mensajes
+ * anteriores al primero y posteriores al último, respectivamente.
+ */
+@Data
+@Builder
+public class MessageSliceResponse {
+    private List<ChatMessageResponse> content;
+    private int size;
+    private boolean hasNext; // Hay más mensajes en la dirección solicitada
+    private String nextBefore;
+    private String nextAfter;
+}
@@ -0,0 +1,13 @@
+package com.bad.batch.websocket.dto;
+
+import com.bad.batch.model.enums.UserRole;
+
+/**
+ * Datos del remitente necesarios para construir mensajes de chat.
+ */
+public record SenderSummary(Long id, String firstName, String lastName, UserRole role, Boolean isActive) {
+
+    public String displayName() {
+        return firstName + " " + lastName;
+    }
+}
@@ -0,0 +1,16 @@
+package com.bad.batch.websocket.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Total de mensajes no leídos enviado a /user/queue/unread.
+ */
+@Data
+@Builder
+public class UnreadCountUpdate {
+    private long unreadCount;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,20 @@
+package com.bad.batch.websocket.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Número de espectadores de una mentoría, enviado a /topic/mentorship/{id}.
+ * {@code type} permite distinguirlo de los mensajes de chat del mismo destino.
+ */
+@Data
+@Builder
+public class ViewerCountUpdate {
+    @Builder.Default
+    private String type = "VIEWER_COUNT";
+    private Long mentorshipId;
+    private long viewers;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,16 @@
+package com.bad.batch.websocket.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aviso enviado a /user/queue/waitlist cuando el usuario pasa de la lista de espera a participante.
+ */
+@Data
+@Builder
+public class WaitlistPromotion {
+    private Long contentId;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,96 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.entities.Message;
+import com.bad.batch.repository.ConversationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Mantiene la tabla conversations, el resumen de cada conversación directa
+ * (último mensaje). Las actualizaciones se ejecutan en la transacción del envío.
+ * Los no leídos por conversación los sirve {@link UnreadCounterRegistry}.
+ */
+@Service
+@Slf4j
+public class ConversationSummaryService {
+
+    // Crea el resumen de las parejas que aún no lo tienen a partir de la tabla de mensajes.
+    // Id y fecha salen de la misma fila: la última de cada pareja por (created_at, id)
+    private static final String BACKFILL_SQL = """
+        INSERT INTO conversations (user_low_id, user_high_id, last_message_id, last_message_at)
+        SELECT l.user_low_id, l.user_high_id, l.id, l.created_at
+        FROM (
+            SELECT LEAST(m.sender_id, m.recipient_id) AS user_low_id,
+                   GREATEST(m.sender_id, m.recipient_id) AS user_high_id,
+                   m.id, m.created_at,
+                   ROW_NUMBER() OVER (
+                       PARTITION BY LEAST(m.sender_id, m.recipient_id), GREATEST(m.sender_id, m.recipient_id)
+                       ORDER BY m.created_at DESC, m.id DESC) AS rn
+            FROM messages m
+            WHERE m.conversation_type = 'DIRECT'
+            AND m.is_deleted = false
+            AND m.recipient_id IS NOT NULL
+        ) l
+        WHERE l.rn = 1
+        AND NOT EXISTS (
+            SELECT 1 FROM conversations c
+            WHERE c.user_low_id = l.user_low_id
+            AND c.user_high_id = l.user_high_id
+        )
+        """;
+
+    private final ConversationRepository conversationRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean backfillOnStartup;
+
+    public ConversationSummaryService(
+            ConversationRepository conversationRepository,
+            JdbcTemplate jdbcTemplate,
+            @Value("${chat.conversations.backfill-on-startup:true}") boolean backfillOnStartup) {
+        this.conversationRepository = conversationRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.backfillOnStartup = backfillOnStartup;
+    }
+
+    /**
+     * Registra un mensaje directo ya guardado (o con id asignado). La primera vez
+     * que dos usuarios se escriben se crea la fila; si dos primeros mensajes
+     * concurrentes la crean a la vez, el INSERT perdedor no hace nada (esperando al
+     * commit del ganador) y el mensaje se registra con un segundo UPDATE.
+     */
+    public void recordMessage(Message message) {
+        Long senderId = message.getSender().getId();
+        Long recipientId = message.getRecipient().getId();
+        Long low = Math.min(senderId, recipientId);
+        Long high = Math.max(senderId, recipientId);
+
+        if (conversationRepository.recordMessage(low, high, message.getId(), message.getCreatedAt()) > 0) {
+            return;
+        }
+        if (conversationRepository.insertIfAbsent(low, high, message.getId(), message.getCreatedAt()) == 0) {
+            conversationRepository.recordMessage(low, high, message.getId(), message.getCreatedAt());
+        }
+    }
+
+    /**
+     * Rellena la tabla a partir de los mensajes existentes. Es idempotente: solo
+     * inserta las parejas que todavía no tienen resumen.
+     * @return Número de conversaciones creadas
+     */
+    public int backfill() {
+        int created = jdbcTemplate.update(BACKFILL_SQL);
+        log.info("Backfill de conversaciones: {} resúmenes creados", created);
+        return created;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (backfillOnStartup && conversationRepository.count() == 0) {
+            backfill();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.enums.StreamingStatus;
+import com.bad.batch.websocket.dto.ViewerCountUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Espectadores en directo de cada mentoría, contados en memoria a partir de las
+ * suscripciones STOMP a /topic/mentorship/{id}. Cada suscripción activa cuenta como
+ * un espectador; las altas y bajas solo tocan el contador en memoria de la mentoría,
+ * sin contención sobre la fila de la sesión de streaming. Las salas que se quedan
+ * sin espectadores desaparecen del mapa.
+ * <p>
+ * Cada nodo solo conoce sus propias conexiones, así que en streaming_sessions no
+ * escribe su recuento sino la diferencia con lo que ya aportó a esa sesión: los
+ * aportes de todos los nodos se suman en current_viewers (y max_viewers guarda el
+ * máximo del total). Se guarda cada {@code live-viewers.flush-interval-ms} y al
+ * parar el nodo se retira su aporte. Cada {@code live-viewers.push-interval-ms}
+ * se envía a la sala el recuento de este nodo si ha cambiado.
+ */
+@Service
+@Slf4j
+public class LiveViewerRegistry {
+
+    private static final String MENTORSHIP_TOPIC = "/topic/mentorship/";
+
+    private static final String LIVE_SESSIONS_SQL = """
+        SELECT mentorship_id, MAX(id) AS id FROM streaming_sessions
+        WHERE status = :status AND mentorship_id IN (:mentorshipIds)
+        GROUP BY mentorship_id
+        """;
+
+    private static final String FLUSH_SQL = """
+        UPDATE streaming_sessions SET current_viewers = GREATEST(COALESCE(current_viewers, 0) + ?, 0),
+            max_viewers = GREATEST(COALESCE(max_viewers, 0), COALESCE(current_viewers, 0) + ?)
+        WHERE id = ?
+        """;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    // Solo contiene salas con espectadores: el merge elimina la entrada al llegar a cero
+    private final Map<Long, Long> viewers = new ConcurrentHashMap<>();
+    // Suscripciones a salas de mentoría de cada sesión STOMP: sessionId -> (subscriptionId -> mentorshipId)
+    private final Map<String, Map<String, Long>> subscriptions = new ConcurrentHashMap<>();
+    private final Set<Long> pendingFlush = ConcurrentHashMap.newKeySet();
+    private final Set<Long> pendingPush = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Long> lastPushed = new ConcurrentHashMap<>();
+    // Lo que este nodo ya ha sumado a la sesión en directo de cada mentoría; solo lo modifica flush()
+    private final Map<Long, Contribution> contributions = new ConcurrentHashMap<>();
+    private final Counter pushedCounter;
+
+    public LiveViewerRegistry(SimpMessagingTemplate messagingTemplate, JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.pushedCounter = meterRegistry.counter("live.viewers.pushed");
+        Gauge.builder("live.viewers.sessions", subscriptions, Map::size)
+                .description("Sesiones STOMP suscritas a alguna sala de mentoría")
+                .register(meterRegistry);
+        Gauge.builder("live.viewers.rooms", viewers, Map::size)
+                .description("Salas de mentoría con algún espectador en este nodo")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Long mentorshipId = parseMentorshipId(accessor.getDestination());
+        if (mentorshipId == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Long[] previousHolder = new Long[1];
+        subscriptions.compute(accessor.getSessionId(), (id, sessionSubscriptions) -> {
+            Map<String, Long> updated = sessionSubscriptions != null ? sessionSubscriptions : new ConcurrentHashMap<>();
+            previousHolder[0] = updated.put(accessor.getSubscriptionId(), mentorshipId);
+            return updated;
+        });
+        Long previous = previousHolder[0];
+        if (previous != null) {
+            // El cliente reutilizó el id de suscripción sin darse de baja
+            change(previous, -1);
+        }
+        change(mentorshipId, 1);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        // La sesión sale del mapa con su última suscripción
+        Long[] removed = new Long[1];
+        subscriptions.computeIfPresent(accessor.getSessionId(), (id, sessionSubscriptions) -> {
+            removed[0] = sessionSubscriptions.remove(accessor.getSubscriptionId());
+            return sessionSubscriptions.isEmpty() ? null : sessionSubscriptions;
+        });
+        Long mentorshipId = removed[0];
+        if (mentorshipId != null) {
+            change(mentorshipId, -1);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Long> sessionSubscriptions = subscriptions.remove(event.getSessionId());
+        if (sessionSubscriptions != null) {
+            sessionSubscriptions.values().forEach(mentorshipId -> change(mentorshipId, -1));
+        }
+    }
+
+    public long getViewers(Long mentorshipId) {
+        Long count = viewers.get(mentorshipId);
+        return count != null ? Math.max(0, count) : 0;
+    }
+
+    /**
+     * Suma en lote a la sesión en directo de cada mentoría cambiada la diferencia entre
+     * el recuento actual de este nodo y lo que ya había aportado a esa sesión. Si la
+     * sesión ha cambiado (la anterior terminó) el aporte previo no cuenta; si aún no hay
+     * sesión en directo, la mentoría se reintenta en el siguiente ciclo mientras tenga espectadores.
+     */
+    @Scheduled(fixedDelayString = "${live-viewers.flush-interval-ms:5000}")
+    public void flush() {
+        List<Long> mentorshipIds = drain(pendingFlush);
+        if (mentorshipIds.isEmpty()) {
+            return;
+        }
+        try {
+            Map<Long, Long> liveSessions = findLiveSessions(mentorshipIds);
+            List<Object[]> updates = new ArrayList<>(mentorshipIds.size());
+            Map<Long, Contribution> written = new HashMap<>();
+            List<Long> waiting = new ArrayList<>();
+            for (Long mentorshipId : mentorshipIds) {
+                long count = getViewers(mentorshipId);
+                Long sessionId = liveSessions.get(mentorshipId);
+                if (sessionId == null) {
+                    if (count > 0) {
+                        waiting.add(mentorshipId);
+                    }
+                    written.put(mentorshipId, null);
+                    continue;
+                }
+                Contribution previous = contributions.get(mentorshipId);
+                long delta = count - (previous != null && previous.sessionId().equals(sessionId) ? previous.viewers() : 0);
+                if (delta != 0) {
+                    updates.add(new Object[]{delta, delta, sessionId});
+                }
+                written.put(mentorshipId, count > 0 ? new Contribution(sessionId, count) : null);
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(FLUSH_SQL, updates);
+            }
+            written.forEach((mentorshipId, contribution) -> {
+                if (contribution != null) {
+                    contributions.put(mentorshipId, contribution);
+                } else {
+                    contributions.remove(mentorshipId);
+                }
+            });
+            pendingFlush.addAll(waiting);
+        } catch (Exception e) {
+            // Se reintenta en el siguiente ciclo con el recuento de ese momento
+            pendingFlush.addAll(mentorshipIds);
+            log.warn("No se pudieron guardar los espectadores de {} mentorías: {}", mentorshipIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Retira de las sesiones en directo todo lo que ha aportado este nodo, para que sus
+     * espectadores no sigan contando después de pararlo.
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Object[]> updates = new ArrayList<>(contributions.size());
+        contributions.values().forEach(c -> updates.add(new Object[]{-c.viewers(), -c.viewers(), c.sessionId()}));
+        if (updates.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, updates);
+            contributions.clear();
+        } catch (Exception e) {
+            log.warn("No se pudieron retirar los espectadores de {} sesiones en directo: {}", updates.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Envía a cada sala el recuento actual si ha cambiado desde el último envío.
+     */
+    @Scheduled(fixedDelayString = "${live-viewers.push-interval-ms:1000}")
+    public void push() {
+        for (Long mentorshipId : drain(pendingPush)) {
+            long count = getViewers(mentorshipId);
+            // Una sala vacía se anuncia una vez y deja de ocupar memoria
+            Long previous = count > 0 ? lastPushed.put(mentorshipId, count) : lastPushed.remove(mentorshipId);
+            if (previous != null ? previous == count : count == 0) {
+                continue;
+            }
+            try {
+                ViewerCountUpdate update = ViewerCountUpdate.builder()
+                        .mentorshipId(mentorshipId)
+                        .viewers(count)
+                        .timestamp(LocalDateTime.now())
+                        .build();
+                messagingTemplate.convertAndSend(MENTORSHIP_TOPIC + mentorshipId, update);
+                pushedCounter.increment();
+            } catch (Exception e) {
+                log.warn("No se pudo enviar el número de espectadores de la mentoría {}: {}", mentorshipId, e.getMessage());
+            }
+        }
+    }
+
+    private void change(Long mentorshipId, long delta) {
+        viewers.merge(mentorshipId, delta, (current, added) -> current + added == 0 ? null : current + added);
+        pendingFlush.add(mentorshipId);
+        pendingPush.add(mentorshipId);
+    }
+
+    private Map<Long, Long> findLiveSessions(Collection<Long> mentorshipIds) {
+        Map<Long, Long> sessions = new HashMap<>();
+        namedJdbcTemplate.query(LIVE_SESSIONS_SQL,
+                new MapSqlParameterSource()
+                        .addValue("status", StreamingStatus.LIVE.name())
+                        .addValue("mentorshipIds", mentorshipIds),
+                rs -> {
+                    sessions.put(rs.getLong("mentorship_id"), rs.getLong("id"));
+                });
+        return sessions;
+    }
+
+    private static List<Long> drain(Set<Long> pending) {
+        List<Long> drained = new ArrayList<>();
+        Iterator<Long> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    private static Long parseMentorshipId(String destination) {
+        if (destination == null || !destination.startsWith(MENTORSHIP_TOPIC)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(destination.substring(MENTORSHIP_TOPIC.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record Contribution(Long sessionId, long viewers) {
+    }
+}
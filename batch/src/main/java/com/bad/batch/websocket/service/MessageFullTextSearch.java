@@ -0,0 +1,149 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.enums.ChatMessageType;
+import com.bad.batch.websocket.dto.ChatMessageResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Búsqueda de mensajes con el texto completo de PostgreSQL: una columna generada
+ * {@code content_tsv} indexada con GIN y resultados ordenados por {@code ts_rank}.
+ *
+ * Se activa con {@code chat.search.mode=fulltext} y solo sobre PostgreSQL; en
+ * cualquier otra base de datos (H2 en los tests) isEnabled() devuelve false y
+ * MessageHistoryService sigue usando las consultas LIKE. La columna y el índice
+ * los crea la migración db/messages-fulltext.sql, porque ddl-auto no sabe generar
+ * columnas calculadas; solo se aplica con el modo activo y si la columna falta.
+ */
+@Service
+@Slf4j
+public class MessageFullTextSearch {
+
+    // Debe coincidir con la configuración de content_tsv en db/messages-fulltext.sql para que se use el índice
+    private static final String TEXT_SEARCH_CONFIG = "simple";
+
+    private static final String MIGRATION = "db/messages-fulltext.sql";
+
+    private static final String COLUMN_EXISTS_SQL = """
+        SELECT COUNT(*) FROM information_schema.columns
+        WHERE table_schema = current_schema() AND table_name = 'messages' AND column_name = 'content_tsv'
+        """;
+
+    private static final String SELECT = """
+        SELECT m.id, m.content, m.type, m.sender_id, m.recipient_id,
+               m.challenge_id, m.mentorship_id, m.created_at, m.read_at, m.is_system
+        """;
+
+    private static final RowMapper<ChatMessageResponse> ROW_MAPPER = (rs, rowNum) -> {
+        Timestamp readAt = rs.getTimestamp("read_at");
+        return ChatMessageResponse.builder()
+            .id(rs.getLong("id"))
+            .content(rs.getString("content"))
+            .type(ChatMessageType.valueOf(rs.getString("type")))
+            .senderId(rs.getLong("sender_id"))
+            .recipientId(rs.getObject("recipient_id", Long.class))
+            .challengeId(rs.getObject("challenge_id", Long.class))
+            .mentorshipId(rs.getObject("mentorship_id", Long.class))
+            .timestamp(rs.getTimestamp("created_at").toLocalDateTime())
+            .readAt(readAt != null ? readAt.toLocalDateTime() : null)
+            .isSystem(rs.getBoolean("is_system"))
+            .build();
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final boolean requested;
+    private volatile boolean enabled;
+
+    public MessageFullTextSearch(
+            JdbcTemplate jdbcTemplate,
+            NamedParameterJdbcTemplate namedJdbcTemplate,
+            @Value("${chat.search.mode:like}") String mode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.requested = "fulltext".equalsIgnoreCase(mode);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Activa la búsqueda si la base de datos es PostgreSQL. Si la columna content_tsv aún
+     * no existe se aplica la migración; si falla, se sigue usando LIKE.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!requested) {
+            return;
+        }
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equals(database)) {
+            log.warn("Búsqueda de texto completo solicitada pero la base de datos es {}: se usa LIKE", database);
+            return;
+        }
+        Long columns = jdbcTemplate.queryForObject(COLUMN_EXISTS_SQL, Long.class);
+        if (columns == null || columns == 0) {
+            try {
+                log.info("messages.content_tsv no existe: aplicando {}", MIGRATION);
+                new ResourceDatabasePopulator(new ClassPathResource(MIGRATION)).execute(jdbcTemplate.getDataSource());
+            } catch (Exception e) {
+                log.warn("No se pudo aplicar {}, se usa LIKE: {}", MIGRATION, e.getMessage());
+                return;
+            }
+        }
+        enabled = true;
+        log.info("Búsqueda de texto completo de mensajes activa (configuración '{}')", TEXT_SEARCH_CONFIG);
+    }
+
+    /**
+     * Busca en el mismo ámbito que las consultas LIKE: el challenge o la mentoría
+     * indicados o, si no, los mensajes directos del usuario. Ordena por relevancia
+     * y, a igual relevancia, por fecha descendente.
+     */
+    public Page<ChatMessageResponse> search(String query, Long userId, Long challengeId, Long mentorshipId, Pageable pageable) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("query", query)
+            .addValue("limit", pageable.getPageSize())
+            .addValue("offset", pageable.getOffset());
+
+        String scope;
+        if (challengeId != null) {
+            scope = "m.conversation_type = 'CHALLENGE' AND m.challenge_id = :challengeId";
+            params.addValue("challengeId", challengeId);
+        } else if (mentorshipId != null) {
+            scope = "m.conversation_type = 'MENTORSHIP' AND m.mentorship_id = :mentorshipId";
+            params.addValue("mentorshipId", mentorshipId);
+        } else {
+            scope = "m.conversation_type = 'DIRECT' AND (m.sender_id = :userId OR m.recipient_id = :userId)";
+            params.addValue("userId", userId);
+        }
+
+        String tsQuery = "websearch_to_tsquery('" + TEXT_SEARCH_CONFIG + "', :query) q";
+        String where = " WHERE m.content_tsv @@ q AND m.is_deleted = false AND " + scope;
+
+        List<ChatMessageResponse> content = namedJdbcTemplate.query(
+            SELECT + " FROM messages m, " + tsQuery + where
+                + " ORDER BY ts_rank(m.content_tsv, q) DESC, m.created_at DESC LIMIT :limit OFFSET :offset",
+            params, ROW_MAPPER);
+        Long total = namedJdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM messages m, " + tsQuery + where, params, Long.class);
+        return new PageImpl<>(content, pageable, total != null ? total : 0);
+    }
+}
@@ -3,6 +3,7 @@ package com.bad.batch.websocket.service;
 import com.bad.batch.websocket.dto.ChatMessageResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 
@@ -36,6 +37,37 @@ public interface MessageHistoryService {
      */
     Page<ChatMessageResponse> getMentorshipMessages(Long mentorshipId, Pageable pageable);
     
+    /**
+     * Obtiene mensajes directos entre dos usuarios paginando por cursor (sin COUNT)
+     * @param userId1 ID del primer usuario
+     * @param userId2 ID del segundo usuario
+     * @param before Cursor opaco: mensajes anteriores a esta posición (opcional)
+     * @param after Cursor opaco: mensajes posteriores a esta posición (opcional)
+     * @param size Número máximo de mensajes
+     * @return Porción de mensajes en orden cronológico
+     */
+    Slice<ChatMessageResponse> getDirectMessages(Long userId1, Long userId2, String before, String after, int size);
+
+    /**
+     * Obtiene mensajes de un challenge paginando por cursor (sin COUNT)
+     * @param challengeId ID del challenge
+     * @param before Cursor opaco: mensajes anteriores a esta posición (opcional)
+     * @param after Cursor opaco: mensajes posteriores a esta posición (opcional)
+     * @param size Número máximo de mensajes
+     * @return Porción de mensajes en orden cronológico
+     */
+    Slice<ChatMessageResponse> getChallengeMessages(Long challengeId, String before, String after, int size);
+
+    /**
+     * Obtiene mensajes de una mentoría paginando por cursor (sin COUNT)
+     * @param mentorshipId ID de la mentoría
+     * @param before Cursor opaco: mensajes anteriores a esta posición (opcional)
+     * @param after Cursor opaco: mensajes posteriores a esta posición (opcional)
+     * @param size Número máximo de mensajes
+     * @return Porción de mensajes en orden cronológico
+     */
+    Slice<ChatMessageResponse> getMentorshipMessages(Long mentorshipId, String before, String after, int size);
+    
     /**
      * Obtiene las últimas conversaciones del usuario
      * @param userId ID del usuario
@@ -49,6 +81,14 @@ public interface MessageHistoryService {
      * @return Número de mensajes no leídos
      */
     Long getUnreadCount(Long userId);
+
+    /**
+     * Cuenta los mensajes directos no leídos que otro usuario ha enviado al usuario
+     * @param userId ID del usuario destinatario
+     * @param otherUserId ID del remitente
+     * @return Número de mensajes no leídos en la conversación
+     */
+    Long getUnreadCount(Long userId, Long otherUserId);
     
     /**
      * Marca un mensaje como leído
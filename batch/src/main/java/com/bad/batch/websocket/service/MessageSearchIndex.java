@@ -0,0 +1,564 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.entities.Message;
+import com.bad.batch.model.events.MessageStoredEvent;
+import com.bad.batch.repository.MessageRepository;
+import com.bad.batch.websocket.dto.ChatMessageResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria para buscar mensajes sin extensiones de la base de
+ * datos ({@code chat.search.mode=index}). Cada token apunta a una lista ordenada
+ * de ids de mensaje (long[] primitivo), separada por ámbito: challenge, mentoría
+ * o participante de mensajes directos, que es el ámbito de búsqueda de
+ * searchUserMessages.
+ *
+ * Un término de búsqueda coincide con los tokens que empiezan por él y varios
+ * términos se combinan con AND. El índice se actualiza con cada MessageStoredEvent
+ * y se guarda periódicamente en {@code chat.search.index.snapshot-path}; al arrancar
+ * se carga esa instantánea y se vuelven a indexar los mensajes creados desde
+ * {@code catch-up-window-ms} antes de guardarla. Los ids no llegan en orden de commit
+ * (secuencia por bloques, write-behind), así que un "id mayor que el último" perdería
+ * los mensajes confirmados tarde; repetir la ventana es inocuo porque añadir un id ya
+ * indexado no hace nada.
+ *
+ * Los mensajes borrados se descartan al cargar y, si siguen en la instantánea, se
+ * quitan del índice la primera vez que aparecen en una página de resultados.
+ * Mientras no está listo, isReady() devuelve false y se usan las consultas LIKE.
+ */
+@Service
+@Slf4j
+public class MessageSearchIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x4D534958;
+    // 3: longitud de las cadenas en int (antes short, que se desbordaba a partir de 64 KB)
+    private static final int SNAPSHOT_VERSION = 3;
+    // Cota de una cadena al leer: una longitud mayor indica una instantánea corrupta
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private static final LocalDateTime FULL_REBUILD = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final String COLUMNS = "id, content, conversation_type, sender_id, recipient_id, challenge_id, mentorship_id";
+
+    private static final String CATCH_UP_SQL =
+        "SELECT " + COLUMNS + " FROM messages WHERE created_at >= ? AND is_deleted = false ORDER BY id";
+
+    private static final String DELETED_SQL =
+        "SELECT " + COLUMNS + " FROM messages WHERE id IN (:ids) AND is_deleted = true";
+
+    private final MessageRepository messageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final boolean enabled;
+    private final Path snapshotPath;
+    private final Duration catchUpWindow;
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong tokenCount = new AtomicLong();
+    private final AtomicLong postingCount = new AtomicLong();
+    private final Timer queryTimer;
+
+    private volatile boolean ready;
+    private Thread buildThread;
+
+    public MessageSearchIndex(
+            MessageRepository messageRepository,
+            JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${chat.search.mode:like}") String mode,
+            @Value("${chat.search.index.snapshot-path:}") String snapshotPath,
+            @Value("${chat.search.index.catch-up-window-ms:300000}") long catchUpWindowMs) {
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.enabled = "index".equalsIgnoreCase(mode);
+        // El directorio temporal se vacía en muchos despliegues: la ruta debe elegirse explícitamente
+        if (enabled && snapshotPath.isBlank()) {
+            throw new IllegalArgumentException("chat.search.index.snapshot-path es obligatorio con chat.search.mode=index");
+        }
+        this.snapshotPath = snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.catchUpWindow = Duration.ofMillis(catchUpWindowMs);
+
+        Gauge.builder("chat.search.index.tokens", tokenCount, AtomicLong::get)
+                .description("Tokens distintos en el índice, sumando todos los ámbitos")
+                .register(meterRegistry);
+        Gauge.builder("chat.search.index.postings", postingCount, AtomicLong::get)
+                .description("Entradas (token, mensaje) en el índice")
+                .register(meterRegistry);
+        Gauge.builder("chat.search.index.memory", this, MessageSearchIndex::estimatedMemoryBytes)
+                .description("Memoria estimada del índice")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.queryTimer = Timer.builder("chat.search.index.query")
+                .description("Latencia de las búsquedas en el índice")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // La carga inicial puede tardar: se hace en segundo plano y entretanto se busca con LIKE
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        buildThread = new Thread(this::build, "chat-search-index");
+        buildThread.setDaemon(true);
+        buildThread.start();
+    }
+
+    private void build() {
+        try {
+            long started = System.currentTimeMillis();
+            LocalDateTime from = loadSnapshot();
+            jdbcTemplate.query(CATCH_UP_SQL, rs -> {
+                add(rs.getLong("id"), rs.getString("content"), scopesOf(rs));
+            }, Timestamp.valueOf(from));
+            ready = true;
+            log.info("Índice de búsqueda listo en {} ms ({} tokens, {} entradas, mensajes desde {})",
+                    System.currentTimeMillis() - started, tokenCount.get(), postingCount.get(), from);
+        } catch (Exception e) {
+            log.error("No se pudo construir el índice de búsqueda, se seguirá usando LIKE: {}", e.getMessage(), e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageStored(MessageStoredEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Message m = event.message();
+        add(m.getId(), m.getContent(), scopesOf(m.getConversationType(),
+            m.getSender().getId(),
+            m.getRecipient() != null ? m.getRecipient().getId() : null,
+            m.getChallengeId(), m.getMentorshipId()));
+    }
+
+    /**
+     * Busca en el mismo ámbito que las consultas LIKE. Los resultados van del más
+     * reciente al más antiguo (por id) y se cargan con una única consulta por página.
+     */
+    public Page<ChatMessageResponse> search(String query, Long userId, Long challengeId, Long mentorshipId, Pageable pageable) {
+        return queryTimer.record(() -> {
+            String scope = challengeId != null ? challengeScope(challengeId)
+                    : mentorshipId != null ? mentorshipScope(mentorshipId)
+                    : userScope(userId);
+            List<String> terms = tokenize(query);
+            while (true) {
+                long[] matches = match(scope, terms);
+                List<Long> pageIds = new ArrayList<>(pageable.getPageSize());
+                for (long i = matches.length - 1 - pageable.getOffset(); i >= 0 && pageIds.size() < pageable.getPageSize(); i--) {
+                    pageIds.add(matches[(int) i]);
+                }
+                if (pageIds.isEmpty()) {
+                    return new PageImpl<>(List.of(), pageable, matches.length);
+                }
+
+                Map<Long, ChatMessageResponse> byId = new HashMap<>();
+                messageRepository.findResponsesByIdIn(pageIds).forEach(r -> byId.put(r.getId(), r));
+                List<Long> missing = pageIds.stream().filter(id -> !byId.containsKey(id)).toList();
+                // Si faltaban mensajes borrados se quitan del índice y se repite la página
+                if (!missing.isEmpty() && removeDeleted(missing) > 0) {
+                    continue;
+                }
+                // Los mensajes aún pendientes de write-behind no tienen fila todavía y se omiten
+                List<ChatMessageResponse> content = pageIds.stream().map(byId::get).filter(r -> r != null).toList();
+                return new PageImpl<>(content, pageable, matches.length);
+            }
+        });
+    }
+
+    /**
+     * Guarda el índice en la ruta de la instantánea. Se escribe en secuencia en un
+     * fichero temporal, sin copiar el índice a otro buffer, y se renombra para que un
+     * fallo a mitad no deje una instantánea corrupta.
+     */
+    @Scheduled(fixedDelayString = "${chat.search.index.snapshot-interval-ms:600000}",
+               initialDelayString = "${chat.search.index.snapshot-interval-ms:600000}")
+    public void snapshot() {
+        if (!ready) {
+            return;
+        }
+        // Todo lo creado antes de este instante menos la ventana ya está confirmado e indexado
+        LocalDateTime catchUpFrom = LocalDateTime.now().minus(catchUpWindow);
+        List<Map.Entry<String, Partition>> entries = new ArrayList<>(partitions.entrySet());
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(Timestamp.valueOf(catchUpFrom).getTime());
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Partition> entry : entries) {
+                entry.getValue().writeTo(out, entry.getKey());
+            }
+            out.flush();
+            channel.force(true);
+            long size = channel.size();
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Instantánea del índice de búsqueda guardada ({} bytes, mensajes hasta {})", size, catchUpFrom);
+        } catch (IOException e) {
+            log.warn("No se pudo guardar la instantánea del índice de búsqueda: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (buildThread != null) {
+            snapshot();
+        }
+    }
+
+    // Devuelve desde qué fecha de creación hay que volver a indexar mensajes
+    private LocalDateTime loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return FULL_REBUILD;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Instantánea del índice de búsqueda no reconocida, se reconstruye completo");
+                return FULL_REBUILD;
+            }
+            LocalDateTime catchUpFrom = new Timestamp(in.readLong()).toLocalDateTime();
+            int partitionTotal = in.readInt();
+            for (int p = 0; p < partitionTotal; p++) {
+                String scope = readString(in);
+                Partition partition = partitions.computeIfAbsent(scope, k -> new Partition());
+                int tokens = in.readInt();
+                for (int t = 0; t < tokens; t++) {
+                    String token = readString(in);
+                    int size = in.readInt();
+                    long[] ids = new long[Math.max(size, 4)];
+                    for (int i = 0; i < size; i++) {
+                        ids[i] = in.readLong();
+                    }
+                    partition.tokens.put(token, new PostingList(ids, size));
+                    tokenCount.incrementAndGet();
+                    postingCount.addAndGet(size);
+                }
+            }
+            log.info("Instantánea del índice de búsqueda cargada, mensajes hasta {}", catchUpFrom);
+            return catchUpFrom;
+        } catch (Exception e) {
+            log.warn("No se pudo leer la instantánea del índice de búsqueda, se reconstruye completo: {}", e.getMessage());
+            partitions.clear();
+            tokenCount.set(0);
+            postingCount.set(0);
+            return FULL_REBUILD;
+        }
+    }
+
+    // Ámbitos en los que se indexa un mensaje: el directo, en los de ambos participantes
+    private static List<String> scopesOf(Message.ConversationType type, Long senderId, Long recipientId,
+                                         Long challengeId, Long mentorshipId) {
+        return switch (type) {
+            case CHALLENGE -> List.of(challengeScope(challengeId));
+            case MENTORSHIP -> List.of(mentorshipScope(mentorshipId));
+            case DIRECT -> recipientId != null && !recipientId.equals(senderId)
+                    ? List.of(userScope(senderId), userScope(recipientId))
+                    : List.of(userScope(senderId));
+        };
+    }
+
+    private static List<String> scopesOf(ResultSet rs) throws SQLException {
+        return scopesOf(Message.ConversationType.valueOf(rs.getString("conversation_type")),
+                rs.getLong("sender_id"),
+                rs.getObject("recipient_id", Long.class),
+                rs.getObject("challenge_id", Long.class),
+                rs.getObject("mentorship_id", Long.class));
+    }
+
+    private void add(long id, String content, List<String> scopes) {
+        List<String> tokens = tokenize(content);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        scopes.forEach(scope -> addToScope(scope, tokens, id));
+    }
+
+    // Quita del índice los ids que estén borrados en la base de datos; devuelve cuántos había
+    private int removeDeleted(Collection<Long> ids) {
+        int[] removed = {0};
+        namedJdbcTemplate.query(DELETED_SQL, Map.of("ids", ids), rs -> {
+            List<String> tokens = tokenize(rs.getString("content"));
+            long id = rs.getLong("id");
+            scopesOf(rs).forEach(scope -> removeFromScope(scope, tokens, id));
+            removed[0]++;
+        });
+        if (removed[0] > 0) {
+            log.debug("Quitados del índice de búsqueda {} mensajes borrados", removed[0]);
+        }
+        return removed[0];
+    }
+
+    private void addToScope(String scope, List<String> tokens, long id) {
+        Partition partition = partitions.computeIfAbsent(scope, k -> new Partition());
+        partition.lock.writeLock().lock();
+        try {
+            for (String token : tokens) {
+                PostingList list = partition.tokens.get(token);
+                if (list == null) {
+                    list = new PostingList(new long[4], 0);
+                    partition.tokens.put(token, list);
+                    tokenCount.incrementAndGet();
+                }
+                if (list.add(id)) {
+                    postingCount.incrementAndGet();
+                }
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    private void removeFromScope(String scope, List<String> tokens, long id) {
+        Partition partition = partitions.get(scope);
+        if (partition == null) {
+            return;
+        }
+        partition.lock.writeLock().lock();
+        try {
+            for (String token : tokens) {
+                PostingList list = partition.tokens.get(token);
+                if (list != null && list.remove(id)) {
+                    postingCount.decrementAndGet();
+                    if (list.size == 0) {
+                        partition.tokens.remove(token);
+                        tokenCount.decrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Intersección de los términos; cada término es la unión de los tokens con ese prefijo
+    private long[] match(String scope, List<String> terms) {
+        Partition partition = partitions.get(scope);
+        if (partition == null || terms.isEmpty()) {
+            return new long[0];
+        }
+        partition.lock.readLock().lock();
+        try {
+            long[] result = null;
+            for (String term : terms) {
+                long[] termIds = new long[0];
+                for (PostingList list : partition.tokens.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                    termIds = union(termIds, list.ids, list.size);
+                }
+                result = result == null ? termIds : intersect(result, termIds);
+                if (result.length == 0) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    private static long[] union(long[] a, long[] b, int bSize) {
+        long[] out = new long[a.length + bSize];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < bSize) {
+            long next;
+            if (j >= bSize || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i >= a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                next = a[i++];
+                j++;
+            }
+            out[n++] = next;
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (b[j] < a[i]) {
+                j++;
+            } else {
+                out[n++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean letter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String token = lower.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private long estimatedMemoryBytes() {
+        // Aproximación: 8 bytes por entrada y unos 64 bytes por token (cadena, nodo del mapa y cabecera del array)
+        return postingCount.get() * Long.BYTES + tokenCount.get() * 64;
+    }
+
+    private static String challengeScope(Long challengeId) {
+        return "C:" + challengeId;
+    }
+
+    private static String mentorshipScope(Long mentorshipId) {
+        return "M:" + mentorshipId;
+    }
+
+    private static String userScope(Long userId) {
+        return "U:" + userId;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Longitud de cadena no válida: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Tokens de un ámbito. Se protege con un cerrojo de lectura/escritura propio
+     * para que las escrituras en un challenge no bloqueen búsquedas en otro.
+     */
+    private static final class Partition {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final NavigableMap<String, PostingList> tokens = new TreeMap<>();
+
+        void writeTo(DataOutputStream out, String scope) throws IOException {
+            lock.readLock().lock();
+            try {
+                writeString(out, scope);
+                out.writeInt(tokens.size());
+                for (Map.Entry<String, PostingList> entry : tokens.entrySet()) {
+                    writeString(out, entry.getKey());
+                    PostingList list = entry.getValue();
+                    out.writeInt(list.size);
+                    for (int i = 0; i < list.size; i++) {
+                        out.writeLong(list.ids[i]);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Lista de ids ordenada y sin duplicados. Los ids llegan casi siempre en orden
+     * creciente, así que el caso normal es añadir al final.
+     */
+    private static final class PostingList {
+        private long[] ids;
+        private int size;
+
+        PostingList(long[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        boolean add(long id) {
+            int position = size > 0 && ids[size - 1] < id ? size : Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0 && position < size) {
+                return false;
+            }
+            int insertAt = position >= 0 ? position : -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+            return true;
+        }
+
+        boolean remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.entities.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistencia diferida (write-behind) de mensajes de chat. Es opcional
+ * ({@code chat.write-behind.enabled}): cuando está activa, ChatServiceImpl asigna
+ * el id y, al confirmarse el envío, difunde el mensaje y lo encola; un hilo de fondo vacía la cola en lotes
+ * JDBC de hasta {@code flush-size} filas o cada {@code flush-interval-ms}.
+ *
+ * Si la cola está llena, el hilo que envía inserta el mensaje él mismo, lo que
+ * frena al productor sin perder mensajes. Al apagar la aplicación se vacía la cola.
+ */
+@Service
+@Slf4j
+public class MessageWriteBehindWriter {
+
+    private static final String INSERT_SQL = """
+        INSERT INTO messages (id, content, type, sender_id, recipient_id, challenge_id, mentorship_id,
+                              is_system, is_deleted, is_read, created_at, conversation_type)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager entityManager;
+    private final boolean enabled;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final long shutdownTimeoutMs;
+    private final BlockingQueue<Message> queue;
+
+    private final Timer flushTimer;
+    private final Counter persistedCounter;
+    private final Counter failedCounter;
+    private final Counter callerRunsCounter;
+
+    private SessionFactoryImplementor sessionFactory;
+    private BeforeExecutionGenerator idGenerator;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    public MessageWriteBehindWriter(
+            JdbcTemplate jdbcTemplate,
+            EntityManagerFactory entityManagerFactory,
+            EntityManager entityManager,
+            MeterRegistry meterRegistry,
+            @Value("${chat.write-behind.enabled:false}") boolean enabled,
+            @Value("${chat.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${chat.write-behind.flush-size:200}") int flushSize,
+            @Value("${chat.write-behind.flush-interval-ms:100}") long flushIntervalMs,
+            @Value("${chat.write-behind.shutdown-timeout-ms:10000}") long shutdownTimeoutMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityManager = entityManager;
+        this.enabled = enabled;
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("chat.write_behind.queue.depth", queue, BlockingQueue::size)
+                .description("Mensajes pendientes de persistir")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("chat.write_behind.flush")
+                .description("Latencia de cada lote escrito en la base de datos")
+                .register(meterRegistry);
+        this.persistedCounter = meterRegistry.counter("chat.write_behind.persisted");
+        this.failedCounter = meterRegistry.counter("chat.write_behind.failed");
+        this.callerRunsCounter = meterRegistry.counter("chat.write_behind.caller_runs");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        idGenerator = (BeforeExecutionGenerator) sessionFactory.getMappingMetamodel()
+                .getEntityDescriptor(Message.class)
+                .getGenerator();
+
+        running = true;
+        writerThread = new Thread(this::runLoop, "chat-write-behind");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Write-behind de mensajes activo (lote={}, intervalo={}ms)", flushSize, flushIntervalMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reserva un id del mismo generador de secuencia que usa Hibernate, de modo que
+     * los ids asignados aquí y por messageRepository.save nunca colisionan. El
+     * generador reparte en memoria bloques de allocationSize ids y solo consulta la
+     * secuencia al agotar uno; dentro de una transacción lo hace con la sesión y la
+     * conexión de esa transacción, sin pedir otra al pool.
+     */
+    public Long nextId() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+            return (Long) idGenerator.generate(session, null, null, EventType.INSERT);
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            return (Long) idGenerator.generate((SharedSessionContractImplementor) session, null, null, EventType.INSERT);
+        }
+    }
+
+    /**
+     * Encola un mensaje con id y createdAt ya asignados. Si la cola está llena,
+     * se persiste en el hilo llamante.
+     */
+    public void enqueue(Message message) {
+        if (!running || !queue.offer(message)) {
+            callerRunsCounter.increment();
+            flush(List.of(message));
+        }
+    }
+
+    private void runLoop() {
+        List<Message> batch = new ArrayList<>(flushSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, flushSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error en el hilo de write-behind: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Message> batch) {
+        flushTimer.record(() -> {
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, m) -> {
+                    ps.setLong(1, m.getId());
+                    ps.setString(2, m.getContent());
+                    ps.setString(3, m.getType().name());
+                    ps.setLong(4, m.getSender().getId());
+                    if (m.getRecipient() != null) {
+                        ps.setLong(5, m.getRecipient().getId());
+                    } else {
+                        ps.setNull(5, Types.BIGINT);
+                    }
+                    ps.setObject(6, m.getChallengeId(), Types.BIGINT);
+                    ps.setObject(7, m.getMentorshipId(), Types.BIGINT);
+                    ps.setBoolean(8, m.getIsSystem());
+                    ps.setBoolean(9, m.getIsDeleted());
+                    ps.setBoolean(10, m.getIsRead());
+                    ps.setTimestamp(11, Timestamp.valueOf(m.getCreatedAt()));
+                    ps.setString(12, m.getConversationType().name());
+                });
+                persistedCounter.increment(batch.size());
+            } catch (Exception e) {
+                if (batch.size() > 1) {
+                    // Un mensaje inválido no debe descartar el lote completo: se reintenta uno a uno
+                    log.warn("Fallo al persistir lote de {} mensajes, reintentando individualmente: {}", batch.size(), e.getMessage());
+                    batch.forEach(m -> flush(List.of(m)));
+                } else {
+                    failedCounter.increment();
+                    log.error("No se pudo persistir el mensaje {}: {}", batch.get(0).getId(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Write-behind detenido con {} mensajes sin persistir", queue.size());
+        } else {
+            log.info("Cola de write-behind vaciada correctamente");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.bad.batch.websocket.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Presencia en las salas de chat de challenges y mentorías, construida a partir de las
+ * suscripciones STOMP a /topic/challenge/{id} y /topic/mentorship/{id}. Un usuario está
+ * en una sala mientras alguna de sus sesiones siga suscrita a ella, así que varias
+ * pestañas cuentan una sola vez y cerrar una no lo saca de la sala.
+ * <p>
+ * Todo vive en memoria: las salas se indexan por una clave numérica (id y tipo de sala)
+ * y las consultas de presencia son O(1) sin tocar la base de datos.
+ */
+@Service
+@Slf4j
+public class PresenceRegistry {
+
+    public enum RoomType {
+        CHALLENGE("/topic/challenge/"),
+        MENTORSHIP("/topic/mentorship/");
+
+        private final String prefix;
+
+        RoomType(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    private static final RoomType[] ROOM_TYPES = RoomType.values();
+
+    // Suscripciones a salas de una sesión STOMP: subscriptionId -> clave de sala
+    private record SessionPresence(Long userId, Map<String, Long> rooms) {
+    }
+
+    private final Map<String, SessionPresence> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> userSessions = new ConcurrentHashMap<>();
+    // Clave de sala -> usuario -> suscripciones activas del usuario en la sala
+    private final Map<Long, Map<Long, Integer>> roomUsers = new ConcurrentHashMap<>();
+
+    public PresenceRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("websocket.presence.sessions", sessions, Map::size)
+                .description("Sesiones STOMP con alguna suscripción registrada")
+                .register(meterRegistry);
+        Gauge.builder("websocket.presence.users", userSessions, Map::size)
+                .description("Usuarios conectados por WebSocket")
+                .register(meterRegistry);
+        Gauge.builder("websocket.presence.rooms", roomUsers, Map::size)
+                .description("Salas de chat con algún usuario presente")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Long userId = parseUserId(event.getUser());
+        String sessionId = accessor.getSessionId();
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        SessionPresence session = sessions.computeIfAbsent(sessionId,
+                id -> new SessionPresence(userId, new ConcurrentHashMap<>()));
+        // Alta y baja bajo el mismo compute para no añadir a un conjunto que se está retirando
+        userSessions.compute(userId, (id, ids) -> {
+            Set<String> updated = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            updated.add(sessionId);
+            return updated;
+        });
+
+        Long room = parseRoom(accessor.getDestination());
+        if (room == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Long previous = session.rooms().put(accessor.getSubscriptionId(), room);
+        if (previous != null) {
+            // El cliente reutilizó el id de suscripción sin darse de baja
+            leave(previous, session.userId());
+        }
+        roomUsers.compute(room, (key, users) -> {
+            Map<Long, Integer> updated = users != null ? users : new ConcurrentHashMap<>();
+            updated.merge(session.userId(), 1, Integer::sum);
+            return updated;
+        });
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        SessionPresence session = accessor.getSessionId() != null ? sessions.get(accessor.getSessionId()) : null;
+        if (session == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Long room = session.rooms().remove(accessor.getSubscriptionId());
+        if (room != null) {
+            leave(room, session.userId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        SessionPresence session = sessions.remove(event.getSessionId());
+        if (session == null) {
+            return;
+        }
+        session.rooms().values().forEach(room -> leave(room, session.userId()));
+        userSessions.computeIfPresent(session.userId(), (userId, ids) -> {
+            ids.remove(event.getSessionId());
+            return ids.isEmpty() ? null : ids;
+        });
+        log.debug("Sesión {} del usuario {} desconectada", event.getSessionId(), session.userId());
+    }
+
+    public boolean isOnline(Long userId) {
+        return userSessions.containsKey(userId);
+    }
+
+    public int getSessionCount(Long userId) {
+        Set<String> ids = userSessions.get(userId);
+        return ids != null ? ids.size() : 0;
+    }
+
+    public boolean isPresent(RoomType type, Long roomId, Long userId) {
+        Map<Long, Integer> users = roomUsers.get(roomKey(type, roomId));
+        return users != null && users.containsKey(userId);
+    }
+
+    public int countUsers(RoomType type, Long roomId) {
+        Map<Long, Integer> users = roomUsers.get(roomKey(type, roomId));
+        return users != null ? users.size() : 0;
+    }
+
+    public Set<Long> getUsers(RoomType type, Long roomId) {
+        Map<Long, Integer> users = roomUsers.get(roomKey(type, roomId));
+        return users != null ? Set.copyOf(users.keySet()) : Set.of();
+    }
+
+    private void leave(Long room, Long userId) {
+        roomUsers.computeIfPresent(room, (key, users) -> {
+            users.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+            return users.isEmpty() ? null : users;
+        });
+    }
+
+    // El tipo de sala ocupa el bit bajo de la clave y el id el resto
+    private static long roomKey(RoomType type, long roomId) {
+        return (roomId << 1) | type.ordinal();
+    }
+
+    private static Long parseRoom(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        for (RoomType type : ROOM_TYPES) {
+            if (destination.startsWith(type.prefix)) {
+                try {
+                    return roomKey(type, Long.parseLong(destination.substring(type.prefix.length())));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Long parseUserId(Principal principal) {
+        if (principal == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(principal.getName());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.events.UserChangedEvent;
+import com.bad.batch.repository.UserRepository;
+import com.bad.batch.websocket.dto.SenderSummary;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Caché acotada (LRU + TTL) de id de usuario → nombre, rol y estado. Evita cargar
+ * la entidad User completa en cada mensaje enviado, y el JOIN a users en el
+ * historial, solo para obtener senderName.
+ * Se invalida con cada UserChangedEvent.
+ */
+@Service
+@Slf4j
+public class SenderSummaryCache {
+
+    private final UserRepository userRepository;
+    private final Cache<Long, SenderSummary> cache;
+
+    public SenderSummaryCache(
+            UserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${chat.sender-cache.maximum-size:10000}") long maximumSize,
+            @Value("${chat.sender-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "chat.sender");
+    }
+
+    /**
+     * Devuelve el resumen del usuario, consultando la base de datos solo en fallo de caché.
+     * @throws IllegalArgumentException si el usuario no existe
+     */
+    public SenderSummary get(Long userId) {
+        SenderSummary summary = cache.get(userId, id -> userRepository.findSenderSummaryById(id).orElse(null));
+        if (summary == null) {
+            throw new IllegalArgumentException("Usuario no encontrado: " + userId);
+        }
+        return summary;
+    }
+
+    public void invalidate(Long userId) {
+        cache.invalidate(userId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidate(event.userId());
+        log.debug("Resumen de remitente invalidado para el usuario {}", event.userId());
+    }
+}
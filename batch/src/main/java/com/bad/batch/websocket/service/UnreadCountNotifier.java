@@ -0,0 +1,66 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.events.UnreadCountChangedEvent;
+import com.bad.batch.websocket.dto.UnreadCountUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Envía el total de no leídos a /user/queue/unread cuando cambia, para que los
+ * clientes no tengan que consultar /api/messages/unread/count periódicamente.
+ *
+ * Los cambios se agrupan por usuario durante una ventana corta
+ * ({@code chat.unread.push-window-ms}): una ráfaga de mensajes produce un único
+ * envío con el total final.
+ */
+@Service
+@Slf4j
+public class UnreadCountNotifier {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final UnreadCounterRegistry unreadCounterRegistry;
+    private final Set<Long> pendingUsers = ConcurrentHashMap.newKeySet();
+    private final Counter pushedCounter;
+
+    public UnreadCountNotifier(SimpMessagingTemplate messagingTemplate,
+                               UnreadCounterRegistry unreadCounterRegistry,
+                               MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.unreadCounterRegistry = unreadCounterRegistry;
+        this.pushedCounter = meterRegistry.counter("chat.unread.pushed");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUnreadCountChanged(UnreadCountChangedEvent event) {
+        pendingUsers.add(event.userId());
+    }
+
+    @Scheduled(fixedDelayString = "${chat.unread.push-window-ms:250}")
+    public void flush() {
+        Iterator<Long> iterator = pendingUsers.iterator();
+        while (iterator.hasNext()) {
+            Long userId = iterator.next();
+            iterator.remove();
+            try {
+                UnreadCountUpdate update = UnreadCountUpdate.builder()
+                        .unreadCount(unreadCounterRegistry.getUnreadCount(userId))
+                        .timestamp(LocalDateTime.now())
+                        .build();
+                messagingTemplate.convertAndSendToUser(userId.toString(), "/queue/unread", update);
+                pushedCounter.increment();
+            } catch (Exception e) {
+                log.warn("No se pudo enviar el total de no leídos al usuario {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+}
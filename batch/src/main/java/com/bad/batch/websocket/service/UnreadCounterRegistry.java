@@ -0,0 +1,193 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.events.UnreadCountChangedEvent;
+import com.bad.batch.repository.MessageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contadores materializados de mensajes no leídos por destinatario y por
+ * (destinatario, remitente), para que las consultas de no leídos no ejecuten un
+ * COUNT en cada petición.
+ *
+ * Los contadores de un destinatario se cargan de la base de datos en la primera
+ * lectura y después se mantienen con los envíos y lecturas, aplicados tras el
+ * commit; cada cambio publica un UnreadCountChangedEvent. Una tarea periódica
+ * los reconcilia con la tabla de mensajes para corregir cualquier desviación
+ * (transacciones concurrentes, mensajes diferidos).
+ */
+@Service
+@Slf4j
+public class UnreadCounterRegistry {
+
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    private final MessageRepository messageRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Cache<Long, UnreadCounters> counters;
+
+    public UnreadCounterRegistry(
+            MessageRepository messageRepository,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${chat.unread.maximum-users:50000}") long maximumUsers,
+            @Value("${chat.unread.expire-after-access-minutes:60}") long expireAfterAccessMinutes) {
+        this.messageRepository = messageRepository;
+        this.eventPublisher = eventPublisher;
+        this.counters = Caffeine.newBuilder()
+                .maximumSize(maximumUsers)
+                .expireAfterAccess(Duration.ofMinutes(expireAfterAccessMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, counters, "chat.unread");
+    }
+
+    public long getUnreadCount(Long recipientId) {
+        return load(recipientId).total.get();
+    }
+
+    public long getUnreadCount(Long recipientId, Long senderId) {
+        AtomicLong count = load(recipientId).bySender.get(senderId);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Registra un mensaje directo nuevo. Solo se actualizan contadores ya cargados:
+     * si el destinatario no está en memoria, la próxima lectura lo obtendrá de la base de datos.
+     */
+    public void onMessageSent(Long recipientId, Long senderId) {
+        afterCommit(() -> {
+            UnreadCounters current = counters.getIfPresent(recipientId);
+            if (current != null) {
+                current.add(senderId, 1);
+            }
+        });
+        eventPublisher.publishEvent(new UnreadCountChangedEvent(recipientId));
+    }
+
+    public void onMessageRead(Long recipientId, Long senderId) {
+        onMessagesRead(recipientId, senderId, 1);
+    }
+
+    public void onMessagesRead(Long recipientId, Long senderId, long count) {
+        if (count <= 0) {
+            return;
+        }
+        afterCommit(() -> {
+            UnreadCounters current = counters.getIfPresent(recipientId);
+            if (current != null) {
+                current.add(senderId, -count);
+            }
+        });
+        eventPublisher.publishEvent(new UnreadCountChangedEvent(recipientId));
+    }
+
+    /**
+     * Recalcula los contadores en memoria contra la tabla de mensajes, por lotes de
+     * destinatarios y con una única consulta agrupada por lote. Las correcciones se
+     * aplican sobre los contadores existentes, remitente a remitente, para no pisar
+     * los cambios que lleguen mientras tanto.
+     */
+    @Scheduled(fixedDelayString = "${chat.unread.reconcile-interval-ms:300000}",
+               initialDelayString = "${chat.unread.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        List<Long> recipientIds = new ArrayList<>(counters.asMap().keySet());
+        int corrected = 0;
+        for (int from = 0; from < recipientIds.size(); from += RECONCILE_BATCH_SIZE) {
+            List<Long> batch = recipientIds.subList(from, Math.min(from + RECONCILE_BATCH_SIZE, recipientIds.size()));
+            Map<Long, UnreadCounters> fresh = query(batch);
+            for (Long recipientId : batch) {
+                UnreadCounters current = counters.getIfPresent(recipientId);
+                if (current != null && current.correctTo(fresh.getOrDefault(recipientId, new UnreadCounters()))) {
+                    corrected++;
+                }
+            }
+        }
+        if (corrected > 0) {
+            log.info("Reconciliación de no leídos: {} de {} usuarios corregidos", corrected, recipientIds.size());
+        }
+    }
+
+    private UnreadCounters load(Long recipientId) {
+        return counters.get(recipientId, id -> query(List.of(id)).getOrDefault(id, new UnreadCounters()));
+    }
+
+    private Map<Long, UnreadCounters> query(Collection<Long> recipientIds) {
+        Map<Long, UnreadCounters> result = new HashMap<>();
+        for (Object[] row : messageRepository.countUnreadBySender(recipientIds)) {
+            result.computeIfAbsent((Long) row[0], id -> new UnreadCounters())
+                    .add((Long) row[1], (Long) row[2]);
+        }
+        return result;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Total y desglose por remitente de un destinatario. Los valores nunca bajan de cero.
+     */
+    private static final class UnreadCounters {
+        private final AtomicLong total = new AtomicLong();
+        private final Map<Long, AtomicLong> bySender = new ConcurrentHashMap<>();
+
+        void add(Long senderId, long delta) {
+            AtomicLong perSender = bySender.computeIfAbsent(senderId, id -> new AtomicLong());
+            long before = perSender.getAndUpdate(v -> Math.max(0, v + delta));
+            long applied = Math.max(0, before + delta) - before;
+            total.updateAndGet(v -> Math.max(0, v + applied));
+        }
+
+        /**
+         * Lleva cada remitente al valor esperado con compareAndSet: si un envío o una
+         * lectura cambia el contador a la vez, se conserva su cambio y ese remitente
+         * queda para la siguiente reconciliación. Devuelve si se corrigió alguno.
+         */
+        boolean correctTo(UnreadCounters expected) {
+            Set<Long> senderIds = new HashSet<>(bySender.keySet());
+            senderIds.addAll(expected.bySender.keySet());
+            boolean corrected = false;
+            for (Long senderId : senderIds) {
+                AtomicLong expectedCount = expected.bySender.get(senderId);
+                long target = expectedCount != null ? expectedCount.get() : 0;
+                AtomicLong perSender = bySender.computeIfAbsent(senderId, id -> new AtomicLong());
+                long seen = perSender.get();
+                if (seen != target && perSender.compareAndSet(seen, target)) {
+                    total.addAndGet(target - seen);
+                    corrected = true;
+                }
+            }
+            return corrected;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.bad.batch.websocket.service;
+
+import com.bad.batch.model.events.WaitlistPromotedEvent;
+import com.bad.batch.websocket.dto.WaitlistPromotion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+
+/**
+ * Avisa por /user/queue/waitlist al usuario promovido desde la lista de espera,
+ * una vez confirmada la transacción que le asignó la plaza.
+ */
+@Service
+@Slf4j
+public class WaitlistNotifier {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Counter promotedCounter;
+
+    public WaitlistNotifier(SimpMessagingTemplate messagingTemplate, MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.promotedCounter = meterRegistry.counter("content.waitlist.promoted");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onWaitlistPromoted(WaitlistPromotedEvent event) {
+        promotedCounter.increment();
+        try {
+            WaitlistPromotion promotion = WaitlistPromotion.builder()
+                    .contentId(event.contentId())
+                    .timestamp(LocalDateTime.now())
+                    .build();
+            messagingTemplate.convertAndSendToUser(event.userId().toString(), "/queue/waitlist", promotion);
+        } catch (Exception e) {
+            log.warn("No se pudo avisar al usuario {} de su plaza en el contenido {}: {}",
+                    event.userId(), event.contentId(), e.getMessage());
+        }
+    }
+}
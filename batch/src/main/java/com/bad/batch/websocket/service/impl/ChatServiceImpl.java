@@ -2,18 +2,28 @@ package com.bad.batch.websocket.service.impl;
 
 import com.bad.batch.model.entities.Message;
 import com.bad.batch.model.entities.User;
+import com.bad.batch.model.events.MessageStoredEvent;
 import com.bad.batch.repository.MessageRepository;
 import com.bad.batch.repository.UserRepository;
 import com.bad.batch.websocket.dto.ChatMessageRequest;
 import com.bad.batch.websocket.dto.ChatMessageResponse;
+import com.bad.batch.websocket.dto.SenderSummary;
 import com.bad.batch.websocket.service.ChatService;
+import com.bad.batch.websocket.service.ConversationSummaryService;
+import com.bad.batch.websocket.service.MessageWriteBehindWriter;
+import com.bad.batch.websocket.service.SenderSummaryCache;
+import com.bad.batch.websocket.service.UnreadCounterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 @Service
 @RequiredArgsConstructor
@@ -23,42 +33,56 @@ public class ChatServiceImpl implements ChatService {
     private final SimpMessagingTemplate messagingTemplate;
     private final UserRepository userRepository;
     private final MessageRepository messageRepository;
+    private final MessageWriteBehindWriter writeBehindWriter;
+    private final SenderSummaryCache senderSummaryCache;
+    private final UnreadCounterRegistry unreadCounterRegistry;
+    private final ConversationSummaryService conversationSummaryService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     @Transactional
     public ChatMessageResponse sendDirectMessage(Long senderId, ChatMessageRequest request) {
-        User sender = getUserById(senderId);
-        User recipient = request.getRecipientId() != null ? getUserById(request.getRecipientId()) : null;
+        SenderSummary sender = senderSummaryCache.get(senderId);
+        User recipient = request.getRecipientId() != null ? getUserReference(request.getRecipientId()) : null;
         
         // 1. Guardar mensaje en base de datos
         Message message = Message.builder()
                 .content(request.getContent())
                 .type(request.getType())
-                .sender(sender)
+                .sender(userRepository.getReferenceById(senderId))
                 .recipient(recipient)
                 .conversationType(Message.ConversationType.DIRECT)
                 .build();
         
-        Message savedMessage = messageRepository.save(message);
+        Message savedMessage = store(message);
+        eventPublisher.publishEvent(new MessageStoredEvent(savedMessage));
+        if (recipient != null) {
+            conversationSummaryService.recordMessage(savedMessage);
+        }
         
         // 2. Construir respuesta
-        ChatMessageResponse response = buildChatMessageFromEntity(savedMessage);
-        
-        // 3. Enviar por WebSocket a ambos usuarios
-        messagingTemplate.convertAndSendToUser(
-            senderId.toString(), 
-            "/queue/messages", 
-            response
-        );
+        ChatMessageResponse response = buildChatMessageFromEntity(savedMessage, sender);
         
         if (request.getRecipientId() != null) {
+            unreadCounterRegistry.onMessageSent(request.getRecipientId(), senderId);
+        }
+        
+        // 3. Enviar por WebSocket a ambos usuarios, solo si el envío llega a confirmarse
+        afterCommit(() -> {
             messagingTemplate.convertAndSendToUser(
-                request.getRecipientId().toString(), 
+                senderId.toString(), 
                 "/queue/messages", 
                 response
             );
-        }
-        
+            if (request.getRecipientId() != null) {
+                messagingTemplate.convertAndSendToUser(
+                    request.getRecipientId().toString(), 
+                    "/queue/messages", 
+                    response
+                );
+            }
+            enqueueIfDeferred(savedMessage);
+        });
         log.info("Mensaje directo guardado y enviado de {} a {}", senderId, request.getRecipientId());
         return response;
     }
@@ -66,28 +90,31 @@ public class ChatServiceImpl implements ChatService {
     @Override
     @Transactional
     public ChatMessageResponse sendChallengeMessage(Long senderId, ChatMessageRequest request) {
-        User sender = getUserById(senderId);
+        SenderSummary sender = senderSummaryCache.get(senderId);
         
         // 1. Guardar mensaje en base de datos
         Message message = Message.builder()
                 .content(request.getContent())
                 .type(request.getType())
-                .sender(sender)
+                .sender(userRepository.getReferenceById(senderId))
                 .challengeId(request.getChallengeId())
                 .conversationType(Message.ConversationType.CHALLENGE)
                 .build();
         
-        Message savedMessage = messageRepository.save(message);
+        Message savedMessage = store(message);
+        eventPublisher.publishEvent(new MessageStoredEvent(savedMessage));
         
         // 2. Construir respuesta
-        ChatMessageResponse response = buildChatMessageFromEntity(savedMessage);
-        
-        // 3. Enviar por WebSocket a todos los participantes del challenge
-        messagingTemplate.convertAndSend(
-            "/topic/challenge/" + request.getChallengeId(), 
-            response
-        );
+        ChatMessageResponse response = buildChatMessageFromEntity(savedMessage, sender);
         
+        // 3. Enviar por WebSocket a todos los participantes del challenge tras el commit
+        afterCommit(() -> {
+            messagingTemplate.convertAndSend(
+                "/topic/challenge/" + request.getChallengeId(), 
+                response
+            );
+            enqueueIfDeferred(savedMessage);
+        });
         log.info("Mensaje de challenge guardado y enviado por {} en challenge {}", senderId, request.getChallengeId());
         return response;
     }
@@ -95,40 +122,43 @@ public class ChatServiceImpl implements ChatService {
     @Override
     @Transactional
     public ChatMessageResponse sendMentorshipMessage(Long senderId, ChatMessageRequest request) {
-        User sender = getUserById(senderId);
+        SenderSummary sender = senderSummaryCache.get(senderId);
         
         // 1. Guardar mensaje en base de datos
         Message message = Message.builder()
                 .content(request.getContent())
                 .type(request.getType())
-                .sender(sender)
+                .sender(userRepository.getReferenceById(senderId))
                 .mentorshipId(request.getMentorshipId())
                 .conversationType(Message.ConversationType.MENTORSHIP)
                 .build();
         
-        Message savedMessage = messageRepository.save(message);
+        Message savedMessage = store(message);
+        eventPublisher.publishEvent(new MessageStoredEvent(savedMessage));
         
         // 2. Construir respuesta
-        ChatMessageResponse response = buildChatMessageFromEntity(savedMessage);
-        
-        // 3. Enviar por WebSocket a todos los participantes de la mentoría
-        messagingTemplate.convertAndSend(
-            "/topic/mentorship/" + request.getMentorshipId(), 
-            response
-        );
+        ChatMessageResponse response = buildChatMessageFromEntity(savedMessage, sender);
         
+        // 3. Enviar por WebSocket a todos los participantes de la mentoría tras el commit
+        afterCommit(() -> {
+            messagingTemplate.convertAndSend(
+                "/topic/mentorship/" + request.getMentorshipId(), 
+                response
+            );
+            enqueueIfDeferred(savedMessage);
+        });
         log.info("Mensaje de mentoría guardado y enviado por {} en mentoría {}", senderId, request.getMentorshipId());
         return response;
     }
 
     @Override
     public void notifyUserJoined(Long userId, String destination) {
-        User user = getUserById(userId);
+        SenderSummary user = senderSummaryCache.get(userId);
         
         ChatMessageResponse notification = ChatMessageResponse.builder()
-            .content(user.getFirstName() + " se ha unido al chat")
+            .content(user.firstName() + " se ha unido al chat")
             .senderId(userId)
-            .senderName(user.getFirstName() + " " + user.getLastName())
+            .senderName(user.displayName())
             .timestamp(LocalDateTime.now())
             .isSystem(true)
             .build();
@@ -139,12 +169,12 @@ public class ChatServiceImpl implements ChatService {
 
     @Override
     public void notifyUserLeft(Long userId, String destination) {
-        User user = getUserById(userId);
+        SenderSummary user = senderSummaryCache.get(userId);
         
         ChatMessageResponse notification = ChatMessageResponse.builder()
-            .content(user.getFirstName() + " ha salido del chat")
+            .content(user.firstName() + " ha salido del chat")
             .senderId(userId)
-            .senderName(user.getFirstName() + " " + user.getLastName())
+            .senderName(user.displayName())
             .timestamp(LocalDateTime.now())
             .isSystem(true)
             .build();
@@ -153,25 +183,59 @@ public class ChatServiceImpl implements ChatService {
         log.info("Usuario {} salió de {}", userId, destination);
     }
 
-    private ChatMessageResponse buildChatMessage(ChatMessageRequest request, User sender) {
+    private ChatMessageResponse buildChatMessage(ChatMessageRequest request, SenderSummary sender) {
         return ChatMessageResponse.builder()
             .content(request.getContent())
             .type(request.getType())
-            .senderId(sender.getId())
-            .senderName(sender.getFirstName() + " " + sender.getLastName())
+            .senderId(sender.id())
+            .senderName(sender.displayName())
             .timestamp(LocalDateTime.now())
             .isSystem(false)
             .build();
     }
 
+    /**
+     * Guarda el mensaje de forma síncrona o, con write-behind activo, solo le asigna
+     * id y fecha; el mensaje se encola al confirmarse la transacción del envío.
+     */
+    private Message store(Message message) {
+        if (writeBehindWriter.isEnabled()) {
+            message.setId(writeBehindWriter.nextId());
+            message.setCreatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+            return message;
+        }
+        return messageRepository.save(message);
+    }
+
+    // Con write-behind activo, el mensaje ya difundido se encola para escribirse en lote
+    private void enqueueIfDeferred(Message message) {
+        if (writeBehindWriter.isEnabled()) {
+            writeBehindWriter.enqueue(message);
+        }
+    }
+
+    // Difusión y encolado tras el commit: un envío revertido no llega a los clientes ni a la cola
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     // Helper method para convertir Message entity a ChatMessageResponse
-    private ChatMessageResponse buildChatMessageFromEntity(Message message) {
+    private ChatMessageResponse buildChatMessageFromEntity(Message message, SenderSummary sender) {
         return ChatMessageResponse.builder()
             .id(message.getId())
             .content(message.getContent())
             .type(message.getType())
-            .senderId(message.getSender().getId())
-            .senderName(message.getSender().getFirstName() + " " + message.getSender().getLastName())
+            .senderId(sender.id())
+            .senderName(sender.displayName())
             .recipientId(message.getRecipient() != null ? message.getRecipient().getId() : null)
             .challengeId(message.getChallengeId())
             .mentorshipId(message.getMentorshipId())
@@ -180,8 +244,9 @@ public class ChatServiceImpl implements ChatService {
             .build();
     }
 
-    private User getUserById(Long userId) {
-        return userRepository.findById(userId)
-            .orElseThrow(() -> new IllegalArgumentException("Usuario no encontrado: " + userId));
+    // Valida la existencia con la caché y devuelve una referencia sin consultar la fila completa
+    private User getUserReference(Long userId) {
+        senderSummaryCache.get(userId);
+        return userRepository.getReferenceById(userId);
     }
 }
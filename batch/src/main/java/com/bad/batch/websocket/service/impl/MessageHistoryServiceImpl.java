@@ -3,18 +3,27 @@ package com.bad.batch.websocket.service.impl;
 import com.bad.batch.model.entities.Message;
 import com.bad.batch.repository.MessageRepository;
 import com.bad.batch.websocket.dto.ChatMessageResponse;
+import com.bad.batch.websocket.dto.MessageCursor;
+import com.bad.batch.websocket.service.MessageFullTextSearch;
 import com.bad.batch.websocket.service.MessageHistoryService;
+import com.bad.batch.websocket.service.MessageSearchIndex;
+import com.bad.batch.websocket.service.SenderSummaryCache;
+import com.bad.batch.websocket.service.UnreadCounterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.BiFunction;
 
 @Service
 @RequiredArgsConstructor
@@ -22,7 +31,13 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class MessageHistoryServiceImpl implements MessageHistoryService {
     
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
     private final MessageRepository messageRepository;
+    private final UnreadCounterRegistry unreadCounterRegistry;
+    private final MessageFullTextSearch messageFullTextSearch;
+    private final MessageSearchIndex messageSearchIndex;
+    private final SenderSummaryCache senderSummaryCache;
 
     @Override
     public Page<ChatMessageResponse> getDirectMessages(Long userId1, Long userId2, Pageable pageable) {
@@ -36,11 +51,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
             sort
         );
         
-        Page<Message> messages = messageRepository.findDirectMessagesBetweenUsers(
-            userId1, userId2, pageRequest
-        );
-        
-        return messages.map(this::convertToResponse);
+        return messageRepository.findDirectMessagesBetweenUsers(userId1, userId2, pageRequest).map(this::convertToResponse);
     }
 
     @Override
@@ -54,11 +65,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
             sort
         );
         
-        Page<Message> messages = messageRepository.findByChallengeIdOrderByCreatedAtAsc(
-            challengeId, pageRequest
-        );
-        
-        return messages.map(this::convertToResponse);
+        return messageRepository.findChallengeMessages(challengeId, pageRequest).map(this::convertToResponse);
     }
 
     @Override
@@ -72,11 +79,31 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
             sort
         );
         
-        Page<Message> messages = messageRepository.findByMentorshipIdOrderByCreatedAtAsc(
-            mentorshipId, pageRequest
-        );
-        
-        return messages.map(this::convertToResponse);
+        return messageRepository.findMentorshipMessages(mentorshipId, pageRequest).map(this::convertToResponse);
+    }
+
+    @Override
+    public Slice<ChatMessageResponse> getDirectMessages(Long userId1, Long userId2, String before, String after, int size) {
+        log.debug("Obteniendo mensajes directos por cursor entre {} y {}", userId1, userId2);
+        return seek(before, after, size,
+            (cursor, page) -> messageRepository.findDirectMessagesBefore(userId1, userId2, cursor.createdAt(), cursor.id(), page),
+            (cursor, page) -> messageRepository.findDirectMessagesAfter(userId1, userId2, cursor.createdAt(), cursor.id(), page));
+    }
+
+    @Override
+    public Slice<ChatMessageResponse> getChallengeMessages(Long challengeId, String before, String after, int size) {
+        log.debug("Obteniendo mensajes por cursor del challenge {}", challengeId);
+        return seek(before, after, size,
+            (cursor, page) -> messageRepository.findChallengeMessagesBefore(challengeId, cursor.createdAt(), cursor.id(), page),
+            (cursor, page) -> messageRepository.findChallengeMessagesAfter(challengeId, cursor.createdAt(), cursor.id(), page));
+    }
+
+    @Override
+    public Slice<ChatMessageResponse> getMentorshipMessages(Long mentorshipId, String before, String after, int size) {
+        log.debug("Obteniendo mensajes por cursor de la mentoría {}", mentorshipId);
+        return seek(before, after, size,
+            (cursor, page) -> messageRepository.findMentorshipMessagesBefore(mentorshipId, cursor.createdAt(), cursor.id(), page),
+            (cursor, page) -> messageRepository.findMentorshipMessagesAfter(mentorshipId, cursor.createdAt(), cursor.id(), page));
     }
 
     @Override
@@ -84,17 +111,19 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
         log.debug("Obteniendo últimas conversaciones para el usuario {}", userId);
         
         // Obtener los últimos mensajes únicos por conversación
-        List<Message> lastMessages = messageRepository.findLastConversationMessages(userId);
-        
-        return lastMessages.stream()
-            .map(this::convertToResponse)
-            .collect(Collectors.toList());
+        return messageRepository.findLastConversationMessages(userId).stream().map(this::convertToResponse).toList();
     }
 
     @Override
     public Long getUnreadCount(Long userId) {
         log.debug("Contando mensajes no leídos para el usuario {}", userId);
-        return messageRepository.countUnreadMessages(userId);
+        return unreadCounterRegistry.getUnreadCount(userId);
+    }
+
+    @Override
+    public Long getUnreadCount(Long userId, Long otherUserId) {
+        log.debug("Contando mensajes no leídos de {} para el usuario {}", otherUserId, userId);
+        return unreadCounterRegistry.getUnreadCount(userId, otherUserId);
     }
 
     @Override
@@ -107,6 +136,10 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
         
         // Solo el destinatario puede marcar como leído
         if (message.getRecipient() != null && message.getRecipient().getId().equals(userId)) {
+            if (!Boolean.TRUE.equals(message.getIsRead())) {
+                unreadCounterRegistry.onMessageRead(userId, message.getSender().getId());
+            }
+            message.setIsRead(true);
             message.setReadAt(java.time.LocalDateTime.now());
             messageRepository.save(message);
             log.info("Mensaje {} marcado como leído", messageId);
@@ -121,12 +154,20 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
         log.debug("Marcando conversación entre {} y {} como leída", userId, otherUserId);
         
         int updatedMessages = messageRepository.markConversationAsRead(userId, otherUserId);
+        unreadCounterRegistry.onMessagesRead(userId, otherUserId, updatedMessages);
         log.info("Marcados {} mensajes como leídos en la conversación", updatedMessages);
     }
 
     @Override
     public Page<ChatMessageResponse> searchMessages(String query, Long userId, Long challengeId, Long mentorshipId, Pageable pageable) {
         log.debug("Buscando mensajes con query '{}' para usuario {}", query, userId);
+
+        if (messageFullTextSearch.isEnabled()) {
+            return messageFullTextSearch.search(query, userId, challengeId, mentorshipId, pageable).map(this::convertToResponse);
+        }
+        if (messageSearchIndex.isReady()) {
+            return messageSearchIndex.search(query, userId, challengeId, mentorshipId, pageable).map(this::convertToResponse);
+        }
         
         Sort sort = Sort.by(Sort.Direction.DESC, "createdAt");
         PageRequest pageRequest = PageRequest.of(
@@ -135,7 +176,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
             sort
         );
         
-        Page<Message> messages;
+        Page<ChatMessageResponse> messages;
         
         if (challengeId != null) {
             // Buscar solo en el challenge específico
@@ -152,33 +193,36 @@ public class MessageHistoryServiceImpl implements MessageHistoryService {
     }
 
     /**
-     * Convierte una entidad Message a ChatMessageResponse
+     * Ejecuta la consulta keyset correspondiente a la dirección pedida.
+     * Sin cursores se devuelve la página más reciente. El resultado siempre se
+     * entrega en orden cronológico, por lo que la consulta "before" (descendente)
+     * se invierte.
      */
-    private ChatMessageResponse convertToResponse(Message message) {
-        ChatMessageResponse.ChatMessageResponseBuilder builder = ChatMessageResponse.builder()
-            .id(message.getId())
-            .content(message.getContent())
-            .type(message.getType())
-            .senderId(message.getSender().getId())
-            .senderName(message.getSender().getFirstName() + " " + message.getSender().getLastName())
-            .timestamp(message.getCreatedAt())
-            .isSystem(message.getIsSystem())
-            .readAt(message.getReadAt());
-
-        // Agregar destinatario si existe
-        if (message.getRecipient() != null) {
-            builder.recipientId(message.getRecipient().getId());
+    private Slice<ChatMessageResponse> seek(String before, String after, int size,
+                                            BiFunction<MessageCursor, Pageable, Slice<ChatMessageResponse>> beforeQuery,
+                                            BiFunction<MessageCursor, Pageable, Slice<ChatMessageResponse>> afterQuery) {
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Solo se puede indicar uno de los cursores 'before' o 'after'");
         }
+        Pageable page = PageRequest.of(0, Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE)));
 
-        // Agregar IDs de challenge o mentoría si existen
-        if (message.getChallengeId() != null) {
-            builder.challengeId(message.getChallengeId());
+        if (after != null) {
+            return afterQuery.apply(MessageCursor.decode(after), page).map(this::convertToResponse);
         }
 
-        if (message.getMentorshipId() != null) {
-            builder.mentorshipId(message.getMentorshipId());
-        }
+        MessageCursor cursor = before != null ? MessageCursor.decode(before) : MessageCursor.LATEST;
+        Slice<ChatMessageResponse> messages = beforeQuery.apply(cursor, page);
+        List<ChatMessageResponse> chronological = new ArrayList<>(messages.map(this::convertToResponse).getContent());
+        Collections.reverse(chronological);
+        return new SliceImpl<>(chronological, page, messages.hasNext());
+    }
 
-        return builder.build();
+    /**
+     * Completa el nombre del remitente desde SenderSummaryCache, igual que al enviar
+     * en ChatServiceImpl: las consultas del historial no cargan ni unen users.
+     */
+    private ChatMessageResponse convertToResponse(ChatMessageResponse message) {
+        message.setSenderName(senderSummaryCache.get(message.getSenderId()).displayName());
+        return message;
     }
 }
@@ -0,0 +1,8 @@
+-- Búsqueda de texto completo de mensajes (chat.search.mode=fulltext, solo PostgreSQL):
+-- columna generada y su índice GIN, que ddl-auto no sabe crear. MessageFullTextSearch la
+-- aplica al arrancar solo si el modo está activo y la columna no existe todavía.
+-- Añadir la columna reescribe la tabla: sobre una tabla grande conviene ejecutar este
+-- script a mano en una ventana de mantenimiento antes de activar el modo.
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS content_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', coalesce(content, ''))) STORED;
+CREATE INDEX IF NOT EXISTS idx_messages_content_tsv ON messages USING GIN (content_tsv);
\ No newline at end of file
@@ -0,0 +1,10 @@
+-- Se ejecuta en cada arranque antes de que Hibernate valide y actualice el esquema;
+-- todas las sentencias deben ser idempotentes.
+
+-- messages.id pasó de IDENTITY a la secuencia messages_id_seq con bloques de 50 ids
+-- (allocationSize de Message). En bases creadas antes, la secuencia incrementa de 1 en 1.
+ALTER SEQUENCE IF EXISTS messages_id_seq INCREMENT BY 50;
+
+-- idx_contents_creator (creator_id) se sustituyó por idx_contents_creator_created
+-- (creator_id, created_at), que Hibernate crea a continuación.
+DROP INDEX IF EXISTS idx_contents_creator;
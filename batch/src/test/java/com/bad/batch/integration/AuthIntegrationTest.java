@@ -1,21 +1,46 @@
 package com.bad.batch.integration;
 
 import com.bad.batch.dto.security.LoginRequest;
+import com.bad.batch.dto.security.ParsedToken;
 import com.bad.batch.dto.security.TokenResponse;
 import com.bad.batch.dto.security.UserRegistrationRequest;
+import com.bad.batch.config.security.TokenAuthenticationCache;
+import com.bad.batch.model.entities.User;
 import com.bad.batch.model.enums.UserRole;
+import com.bad.batch.repository.UserRepository;
+import com.bad.batch.service.JwtService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -31,6 +56,24 @@ public class AuthIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TokenAuthenticationCache tokenAuthenticationCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Value("${jwt.secret}")
+    private String jwtSecret;
+
     @BeforeEach
     void setUp() {
         // Setup inicial si es necesario
@@ -203,4 +246,103 @@ public class AuthIntegrationTest {
                 .header("Authorization", "Bearer invalid-token"))
                 .andExpect(status().isForbidden()); // Token inválido debería ser 403
     }
+
+    @Test
+    void testActuator_OnlyHealthIsPublic() throws Exception {
+        mockMvc.perform(get("/actuator/health"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/actuator/metrics"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/info"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testGetUser_CachedTokenSkipsDatabaseUntilUserChanges() throws Exception {
+        UserRegistrationRequest registrationRequest = new UserRegistrationRequest();
+        registrationRequest.setFirstName("Cache");
+        registrationRequest.setLastName("Token");
+        registrationRequest.setEmail("cached.token@example.com");
+        registrationRequest.setPassword("Password123!");
+        registrationRequest.setRole(UserRole.DEVELOPER);
+
+        MvcResult registrationResult = mockMvc.perform(post("/api/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(registrationRequest)))
+                .andExpect(status().isCreated())
+                .andReturn();
+        TokenResponse tokenResponse = objectMapper.readValue(
+                registrationResult.getResponse().getContentAsString(), TokenResponse.class);
+        String token = tokenResponse.getAccessToken();
+        Long userId = tokenResponse.getUser().getId();
+
+        try {
+            // La primera petición verifica el token en BD y lo deja en caché
+            mockMvc.perform(get("/api/auth")
+                    .header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk());
+            assertNotNull(tokenAuthenticationCache.get(token));
+
+            // Desactivado por SQL directo no se publica UserChangedEvent: el filtro sigue
+            // usando la entrada en caché y no vuelve a comprobar el usuario en BD
+            jdbcTemplate.update("UPDATE users SET is_active = false WHERE id = ?", userId);
+            mockMvc.perform(get("/api/auth")
+                    .header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk());
+
+            // Un cambio por JPA publica UserChangedEvent y, al confirmar, invalida sus tokens
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                User user = userRepository.findById(userId).orElseThrow();
+                user.setFirstName("Cambiado");
+            });
+            assertNull(tokenAuthenticationCache.get(token));
+
+            // Sin entrada en caché se vuelve a consultar la BD y el usuario inactivo es rechazado
+            mockMvc.perform(get("/api/auth")
+                    .header("Authorization", "Bearer " + token))
+                    .andExpect(status().isForbidden());
+        } finally {
+            userRepository.deleteAll();
+        }
+    }
+
+    @Test
+    void testJwtParse_ReturnsClaimsOfValidToken() {
+        String token = jwtService.generateToken(42L, "ROLE_MENTOR").getAccessToken();
+
+        ParsedToken parsed = jwtService.parse(token);
+
+        assertEquals(42L, parsed.userId());
+        assertEquals("MENTOR", parsed.role());
+        assertFalse(parsed.isExpired());
+        assertTrue(parsed.expiresAt().isAfter(Instant.now().plus(Duration.ofDays(9))));
+    }
+
+    @Test
+    void testJwtParse_RejectsInvalidTokens() {
+        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        Date future = Date.from(Instant.now().plus(Duration.ofHours(1)));
+
+        String expired = Jwts.builder()
+                .claim("userId", 1L).claim("role", "DEVELOPER")
+                .expiration(Date.from(Instant.now().minus(Duration.ofMinutes(1))))
+                .signWith(key, Jwts.SIG.HS256).compact();
+        String otherKey = Jwts.builder()
+                .claim("userId", 1L).claim("role", "DEVELOPER").expiration(future)
+                .signWith(Keys.hmacShaKeyFor("otra-clave-distinta-de-la-configurada-en-tests".getBytes(StandardCharsets.UTF_8)), Jwts.SIG.HS256)
+                .compact();
+        String withoutUserId = Jwts.builder()
+                .claim("role", "DEVELOPER").expiration(future)
+                .signWith(key, Jwts.SIG.HS256).compact();
+        String withoutRole = Jwts.builder()
+                .claim("userId", 1L).expiration(future)
+                .signWith(key, Jwts.SIG.HS256).compact();
+
+        for (String token : List.of(expired, otherKey, withoutUserId, withoutRole, "no-es-un-jwt")) {
+            assertThrows(IllegalArgumentException.class, () -> jwtService.parse(token), token);
+        }
+        assertTrue(new ParsedToken(1L, "DEVELOPER", Instant.now().minusSeconds(1)).isExpired());
+    }
 }
@@ -1,32 +1,69 @@
 package com.bad.batch.integration;
 
+import com.bad.batch.dto.request.ChallengeSubmissionRequest;
 import com.bad.batch.dto.request.ContentRequest;
+import com.bad.batch.dto.request.SubmissionReviewRequest;
+import com.bad.batch.dto.response.ChallengeSubmissionResponse;
+import com.bad.batch.dto.response.ContentResponse;
+import com.bad.batch.dto.response.JoinResponse;
 import com.bad.batch.dto.security.TokenResponse;
 import com.bad.batch.dto.security.UserRegistrationRequest;
+import com.bad.batch.model.entities.Challenge;
+import com.bad.batch.model.entities.ChallengeSubmission;
+import com.bad.batch.model.entities.Mentorship;
+import com.bad.batch.model.entities.User;
+import com.bad.batch.model.enums.ContentStatus;
 import com.bad.batch.model.enums.ContentType;
+import com.bad.batch.model.enums.DifficultyLevel;
 import com.bad.batch.model.enums.MentorshipType;
 import com.bad.batch.model.enums.ChallengeType;
+import com.bad.batch.model.enums.ParticipationStatus;
+import com.bad.batch.model.enums.SubmissionStatus;
 import com.bad.batch.model.enums.UserRole;
+import com.bad.batch.model.events.ContentChangedEvent;
+import com.bad.batch.repository.ChallengeSubmissionRepository;
 import com.bad.batch.repository.ContentRepository;
+import com.bad.batch.repository.ParticipationRepository;
 import com.bad.batch.repository.UserRepository;
+import com.bad.batch.repository.WaitlistEntryRepository;
+import com.bad.batch.service.ContentCatalogSnapshot;
+import com.bad.batch.service.ContentService;
+import com.bad.batch.service.SubmissionIngestionService;
+import com.bad.batch.service.SubmissionReviewQueue;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
-import org.springframework.context.annotation.Import;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,7 +72,6 @@ import static org.junit.jupiter.api.Assertions.*;
 @AutoConfigureWebMvc
 @ActiveProfiles("test")
 @Transactional
-@Import(TestConfig.class)
 public class ContentIntegrationTest {
 
     @Autowired
@@ -47,6 +83,27 @@ public class ContentIntegrationTest {
     @Autowired
     private ContentRepository contentRepository;
 
+    @Autowired
+    private ParticipationRepository participationRepository;
+
+    @Autowired
+    private WaitlistEntryRepository waitlistEntryRepository;
+
+    @Autowired
+    private ChallengeSubmissionRepository challengeSubmissionRepository;
+
+    @Autowired
+    private ContentService contentService;
+
+    @Autowired
+    private SubmissionIngestionService submissionIngestionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -56,7 +113,7 @@ public class ContentIntegrationTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).apply(springSecurity()).build();
         userRepository.deleteAll();
         contentRepository.deleteAll();
         
@@ -87,31 +144,16 @@ public class ContentIntegrationTest {
         mentorshipRequest.setDescription("Aprende los fundamentos de Spring Boot con un mentor experimentado");
         mentorshipRequest.setCreatorId(userId);
         mentorshipRequest.setDifficulty("INTERMEDIATE");
-        mentorshipRequest.setRequiredTechnologies(Set.of("JAVA", "SPRING_BOOT"));
+        mentorshipRequest.setRequiredTechnologies(new HashSet<>(Set.of("JAVA", "SPRING_BOOT")));
         mentorshipRequest.setMaxParticipants(5);
         // Asegurar que startDate está claramente en el futuro
         mentorshipRequest.setStartDate(LocalDateTime.now().plusDays(2));
         mentorshipRequest.setEndDate(LocalDateTime.now().plusDays(2).plusHours(2));
         mentorshipRequest.setType(ContentType.MENTORSHIP);
         mentorshipRequest.setDurationMinutes(120);
-        mentorshipRequest.setMentorshipType(MentorshipType.ONE_ON_ONE); // Campo requerido para mentorías
+        mentorshipRequest.setMentorshipType(MentorshipType.GROUP); // Campo requerido para mentorías
         mentorshipRequest.setIsLive(true);
 
-        // Primera llamada para capturar el error específico
-        MvcResult result = mockMvc.perform(post("/api/contents")
-                .header("Authorization", "Bearer " + authToken)
-                .contentType(MediaType.APPLICATION_JSON)
-                .content(objectMapper.writeValueAsString(mentorshipRequest)))
-                .andReturn();
-
-        // Log the response details for debugging
-        String responseBody = result.getResponse().getContentAsString();
-        System.err.println("=== DEBUG INFO ===");
-        System.err.println("Status: " + result.getResponse().getStatus());
-        System.err.println("Response: " + responseBody);
-        System.err.println("Request JSON: " + objectMapper.writeValueAsString(mentorshipRequest));
-        System.err.println("=== END DEBUG ===");
-
         // Verificar que el status sea 200 y que se cree correctamente
         mockMvc.perform(post("/api/contents")
                 .header("Authorization", "Bearer " + authToken)
@@ -140,6 +182,7 @@ public class ContentIntegrationTest {
         challengeRequest.setProblemStatement("Crear una API REST que gestione usuarios y sus perfiles");
         challengeRequest.setAcceptanceCriteria("La API debe incluir CRUD completo y validaciones");
         challengeRequest.setAllowsTeams(true);
+        challengeRequest.setChallengeType(ChallengeType.CODING);
 
         mockMvc.perform(post("/api/contents")
                 .header("Authorization", "Bearer " + authToken)
@@ -193,7 +236,86 @@ public class ContentIntegrationTest {
         mockMvc.perform(get("/api/contents")
                 .header("Authorization", "Bearer " + authToken))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$").isArray());
+                .andExpect(jsonPath("$.content").isArray());
+    }
+
+    @Test
+    void testGetAllContents_IncludesOwnDraftsWithTechnologies() throws Exception {
+        // El contenido recién creado queda en DRAFT: solo lo ve su creador
+        createTestMentorship();
+
+        mockMvc.perform(get("/api/contents")
+                .param("userId", userId.toString())
+                .header("Authorization", "Bearer " + authToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(1))
+                .andExpect(jsonPath("$.content[0].title").value("Test Mentorship"))
+                .andExpect(jsonPath("$.content[0].creatorName").value("Test Creator"))
+                .andExpect(jsonPath("$.content[0].durationMinutes").value(120))
+                .andExpect(jsonPath("$.content[0].requiredTechnologies.length()").value(2));
+
+        mockMvc.perform(get("/api/contents")
+                .header("Authorization", "Bearer " + authToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(0));
+    }
+
+    @Test
+    void testGetAllContents_MergesPublishedAndOwnDraftsAcrossPages() throws Exception {
+        createParticipantUser();
+        User creator = userRepository.findById(userId).orElseThrow();
+        User other = userRepository.findByEmail("participant@example.com").orElseThrow();
+        Long ownPublished = saveChallenge(creator, LocalDateTime.now().plusDays(1));
+        Long ownDraft = saveContent(creator, ContentStatus.DRAFT);
+        saveContent(other, ContentStatus.DRAFT); // Borrador ajeno: nunca visible
+        Long otherPublished = saveChallenge(other, LocalDateTime.now().plusDays(1));
+        Long ownClosed = saveContent(creator, ContentStatus.CLOSED);
+
+        // Orden combinado de las dos ramas: más recientes primero
+        Page<ContentResponse> first = contentService.getAllContentsForUser(userId, 0, 2);
+        Page<ContentResponse> second = contentService.getAllContentsForUser(userId, 1, 2);
+        assertEquals(4, first.getTotalElements());
+        assertEquals(List.of(ownClosed, otherPublished), first.map(ContentResponse::getId).getContent());
+        assertEquals(List.of(ownDraft, ownPublished), second.map(ContentResponse::getId).getContent());
+
+        // Otro usuario ve los publicados y sus propios borradores, no los del creador
+        Page<ContentResponse> forOther = contentService.getAllContentsForUser(other.getId(), 0, 10);
+        assertEquals(3, forOther.getTotalElements());
+        assertFalse(forOther.map(ContentResponse::getId).getContent().contains(ownDraft));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testCatalogSnapshot_RebuildsAfterChangeEventAndWhenExpired() throws Exception {
+        User creator = userRepository.findById(userId).orElseThrow();
+        // Instancias propias: solo reciben los eventos que se les pasan a mano
+        ContentCatalogSnapshot eventDriven = new ContentCatalogSnapshot(
+                contentRepository, objectMapper, new SimpleMeterRegistry(), 20, 3_600_000);
+        ContentCatalogSnapshot expiring = new ContentCatalogSnapshot(
+                contentRepository, objectMapper, new SimpleMeterRegistry(), 20, 0);
+        List<Long> contentIds = new ArrayList<>();
+        try {
+            contentIds.add(saveChallenge(creator, LocalDateTime.now().plusDays(1)));
+            eventDriven.refreshIfStale();
+            expiring.refreshIfStale();
+            assertEquals(1, catalogTotal(eventDriven));
+            assertEquals(1, catalogTotal(expiring));
+
+            // Cambio hecho en otro nodo: llega a la BD pero no a los eventos de este
+            contentIds.add(saveChallenge(creator, LocalDateTime.now().plusDays(1)));
+            eventDriven.refreshIfStale();
+            expiring.refreshIfStale();
+            assertEquals(1, catalogTotal(eventDriven));
+            assertEquals(2, catalogTotal(expiring));
+
+            // El evento marca la instantánea como obsoleta y la siguiente ejecución la reconstruye
+            eventDriven.onContentChanged(new ContentChangedEvent(contentIds.get(1)));
+            eventDriven.refreshIfStale();
+            assertEquals(2, catalogTotal(eventDriven));
+        } finally {
+            contentRepository.deleteAllById(contentIds);
+            userRepository.deleteById(userId);
+        }
     }
 
     @Test
@@ -207,6 +329,55 @@ public class ContentIntegrationTest {
                 .andExpect(jsonPath("$.title").value("Test Mentorship"));
     }
 
+    @Test
+    void testGetContentById_NotModifiedWithETag() throws Exception {
+        createTestMentorship();
+        Long contentId = contentRepository.findAll().get(0).getId();
+
+        MvcResult first = mockMvc.perform(get("/api/contents/" + contentId)
+                .header("Authorization", "Bearer " + authToken))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn();
+        String etag = first.getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/api/contents/" + contentId)
+                .header("Authorization", "Bearer " + authToken)
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testGetContentById_CreatorRenameInvalidatesCachedResponse() throws Exception {
+        Long contentId = createTestMentorship();
+        try {
+            MvcResult first = mockMvc.perform(get("/api/contents/" + contentId)
+                    .header("Authorization", "Bearer " + authToken))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.creatorName").value("Test Creator"))
+                    .andReturn();
+            String etag = first.getResponse().getHeader("ETag");
+
+            // El contenido no cambia, pero su detalle incluye el nombre del creador
+            User creator = userRepository.findById(userId).orElseThrow();
+            creator.setLastName("Renombrado");
+            userRepository.save(creator);
+
+            MvcResult second = mockMvc.perform(get("/api/contents/" + contentId)
+                    .header("Authorization", "Bearer " + authToken)
+                    .header("If-None-Match", etag))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.creatorName").value("Test Renombrado"))
+                    .andReturn();
+            assertNotEquals(etag, second.getResponse().getHeader("ETag"));
+        } finally {
+            contentRepository.deleteById(contentId);
+            userRepository.deleteById(userId);
+        }
+    }
+
     @Test
     void testGetContentById_NotFound() throws Exception {
         mockMvc.perform(get("/api/contents/999")
@@ -250,13 +421,41 @@ public class ContentIntegrationTest {
         assertEquals(0, contentRepository.count());
     }
 
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testDeleteContent_RemovesParticipationsAndSubmissions() throws Exception {
+        User creator = userRepository.findById(userId).orElseThrow();
+        Long challengeId = saveChallenge(creator, LocalDateTime.now().plusDays(7));
+        Long participantId = saveUsers("Participant", 1).get(0);
+        try {
+            // La entrega deja al contenido con participaciones y entregas en cascada
+            Long submissionId = saveSubmission(challengeId, participantId);
+
+            mockMvc.perform(delete("/api/contents/" + challengeId)
+                    .header("Authorization", "Bearer " + authToken))
+                    .andExpect(status().isNoContent());
+
+            assertFalse(contentRepository.existsById(challengeId));
+            assertFalse(challengeSubmissionRepository.existsById(submissionId));
+            assertTrue(participationRepository.findActive(challengeId, participantId).isEmpty());
+            assertTrue(userRepository.existsById(participantId));
+        } finally {
+            jdbcTemplate.update("DELETE FROM challenge_submissions WHERE participation_id IN " +
+                    "(SELECT id FROM participations WHERE content_id = ?)", challengeId);
+            participationRepository.deleteAll();
+            contentRepository.deleteById(challengeId);
+            userRepository.deleteById(participantId);
+            userRepository.deleteById(userId);
+        }
+    }
+
     @Test
     void testJoinContent_Success() throws Exception {
         Long contentId = createTestMentorship();
         
         // Crear otro usuario para que se una al contenido
         String participantToken = createParticipantUser();
-        Long participantId = 2L; // ID simulado
+        Long participantId = userRepository.findByEmail("participant@example.com").orElseThrow().getId();
 
         mockMvc.perform(post("/api/contents/" + contentId + "/join")
                 .header("Authorization", "Bearer " + participantToken)
@@ -268,7 +467,7 @@ public class ContentIntegrationTest {
     void testLeaveContent_Success() throws Exception {
         Long contentId = createTestMentorship();
         String participantToken = createParticipantUser();
-        Long participantId = 2L;
+        Long participantId = userRepository.findByEmail("participant@example.com").orElseThrow().getId();
 
         // Primero unirse
         mockMvc.perform(post("/api/contents/" + contentId + "/join")
@@ -306,32 +505,546 @@ public class ContentIntegrationTest {
                 .param("page", "0")
                 .param("size", "10"))
                 .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content").isArray());
+    }
+
+    @Test
+    void testSearchContents_FiltersAndPaginatesInDatabase() throws Exception {
+        User creator = userRepository.findById(userId).orElseThrow();
+        for (int i = 0; i < 3; i++) {
+            Mentorship mentorship = new Mentorship();
+            mentorship.setTitle("Mentoría Java " + i);
+            mentorship.setCreator(creator);
+            mentorship.setStatus(ContentStatus.PUBLISHED);
+            mentorship.setType(ContentType.MENTORSHIP);
+            mentorship.setDifficulty(DifficultyLevel.INTERMEDIATE);
+            mentorship.setRequiredTechnologies(new HashSet<>(Set.of("JAVA", "SPRING_BOOT")));
+            mentorship.setDurationMinutes(60);
+            mentorship.setMentorshipType(MentorshipType.GROUP);
+            contentRepository.save(mentorship);
+        }
+        Long challengeId = saveChallenge(creator, LocalDateTime.now().plusDays(3));
+        Challenge challenge = (Challenge) contentRepository.findById(challengeId).orElseThrow();
+        challenge.setDifficulty(DifficultyLevel.ADVANCED);
+        challenge.setRequiredTechnologies(new HashSet<>(Set.of("PYTHON")));
+        contentRepository.saveAndFlush(challenge);
+
+        mockMvc.perform(get("/api/contents/search")
+                .header("Authorization", "Bearer " + authToken)
+                .param("type", "MENTORSHIP")
+                .param("tech", "java")
+                .param("page", "0")
+                .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(3))
+                .andExpect(jsonPath("$.content.length()").value(2))
+                .andExpect(jsonPath("$.content[0].requiredTechnologies.length()").value(2));
+
+        mockMvc.perform(get("/api/contents/search")
+                .header("Authorization", "Bearer " + authToken)
+                .param("type", "MENTORSHIP")
+                .param("tech", "JAVA")
+                .param("page", "1")
+                .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1));
+
+        mockMvc.perform(get("/api/contents/search")
+                .header("Authorization", "Bearer " + authToken)
+                .param("difficulty", "advanced")
+                .param("tech", "PYTHON"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(1))
+                .andExpect(jsonPath("$.content[0].id").value(challengeId));
+
+        // Paginación inválida: 400 en lugar de un error al construir la página de respaldo
+        mockMvc.perform(get("/api/contents/search")
+                .header("Authorization", "Bearer " + authToken)
+                .param("size", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/contents")
+                .header("Authorization", "Bearer " + authToken)
+                .param("page", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Tag("perf")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testJoinContent_ConcurrentJoinersNeverOversell() throws Exception {
+        int seats = 25;
+        int joiners = 1000;
+        User creator = userRepository.findById(userId).orElseThrow();
+
+        List<Long> userIds = saveUsers("Joiner", joiners);
+
+        Mentorship mentorship = new Mentorship();
+        mentorship.setTitle("Mentoría muy solicitada");
+        mentorship.setCreator(creator);
+        mentorship.setStatus(ContentStatus.PUBLISHED);
+        mentorship.setType(ContentType.MENTORSHIP);
+        mentorship.setMaxParticipants(seats);
+        mentorship.setDurationMinutes(60);
+        mentorship.setMentorshipType(MentorshipType.GROUP);
+        Long contentId = contentRepository.save(mentorship).getId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger joined = new AtomicInteger();
+        AtomicInteger waitlisted = new AtomicInteger();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Long joinerId : userIds) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        JoinResponse response = contentService.joinContent(contentId, joinerId);
+                        (response.getStatus().equals("JOINED") ? joined : waitlisted).incrementAndGet();
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+
+            assertTrue(errors.isEmpty(), () -> "Errores inesperados: " + errors);
+            assertEquals(seats, joined.get());
+            assertEquals(joiners - seats, waitlisted.get());
+            assertEquals(joiners - seats, waitlistEntryRepository.countByContentId(contentId));
+            assertEquals(seats, contentService.getParticipants(contentId).size());
+            assertEquals(seats, contentRepository.findById(contentId).orElseThrow().getParticipantCount());
+        } finally {
+            executor.shutdownNow();
+            participationRepository.deleteAll();
+            waitlistEntryRepository.deleteAll();
+            contentRepository.deleteById(contentId);
+            userRepository.deleteAllById(userIds);
+            userRepository.deleteById(userId);
+        }
+    }
+
+    @Test
+    void testLeaveContent_PromotesFirstWaiter() {
+        User creator = userRepository.findById(userId).orElseThrow();
+        List<Long> ids = saveUsers("Waiter", 3);
+        Mentorship mentorship = new Mentorship();
+        mentorship.setTitle("Mentoría individual");
+        mentorship.setCreator(creator);
+        mentorship.setStatus(ContentStatus.PUBLISHED);
+        mentorship.setType(ContentType.MENTORSHIP);
+        mentorship.setMaxParticipants(1);
+        mentorship.setDurationMinutes(60);
+        mentorship.setMentorshipType(MentorshipType.ONE_ON_ONE);
+        Long contentId = contentRepository.save(mentorship).getId();
+
+        assertEquals("JOINED", contentService.joinContent(contentId, ids.get(0)).getStatus());
+        assertEquals(1L, contentService.joinContent(contentId, ids.get(1)).getWaitlistPosition());
+        assertEquals(2L, contentService.joinContent(contentId, ids.get(2)).getWaitlistPosition());
+
+        contentService.leaveContent(contentId, ids.get(0));
+        assertEquals(List.of(ids.get(1)), contentService.getParticipants(contentId));
+        assertEquals(1L, contentService.joinContent(contentId, ids.get(2)).getWaitlistPosition());
+
+        contentService.removeParticipant(contentId, ids.get(1), userId);
+        assertEquals(List.of(ids.get(2)), contentService.getParticipants(contentId));
+        assertEquals(0, waitlistEntryRepository.countByContentId(contentId));
+    }
+
+    @Test
+    void testLeaveContent_KeepsWaiterWhenNoSeatIsFree() {
+        User creator = userRepository.findById(userId).orElseThrow();
+        List<Long> ids = saveUsers("Kept", 2);
+        Mentorship mentorship = new Mentorship();
+        mentorship.setTitle("Mentoría individual");
+        mentorship.setCreator(creator);
+        mentorship.setStatus(ContentStatus.PUBLISHED);
+        mentorship.setType(ContentType.MENTORSHIP);
+        mentorship.setMaxParticipants(1);
+        mentorship.setDurationMinutes(60);
+        mentorship.setMentorshipType(MentorshipType.ONE_ON_ONE);
+        Long contentId = contentRepository.save(mentorship).getId();
+        contentService.joinContent(contentId, ids.get(0));
+        assertEquals("WAITLISTED", contentService.joinContent(contentId, ids.get(1)).getStatus());
+
+        // El creador cierra las plazas: la baja libera una plaza que ya no se puede ocupar
+        jdbcTemplate.update("UPDATE contents SET max_participants = 0 WHERE id = ?", contentId);
+        contentService.leaveContent(contentId, ids.get(0));
+
+        assertEquals(List.of(), contentService.getParticipants(contentId));
+        assertEquals(1, waitlistEntryRepository.countByContentId(contentId));
+    }
+
+    @Test
+    @Tag("perf")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testJoinAndLeave_ConcurrentChurnNeverLeavesSeatFreeWhileWaiting() throws Exception {
+        int seats = 10;
+        int joiners = 200;
+        User creator = userRepository.findById(userId).orElseThrow();
+        List<Long> userIds = saveUsers("Churn", seats + joiners);
+        Mentorship mentorship = new Mentorship();
+        mentorship.setTitle("Mentoría con rotación");
+        mentorship.setCreator(creator);
+        mentorship.setStatus(ContentStatus.PUBLISHED);
+        mentorship.setType(ContentType.MENTORSHIP);
+        mentorship.setMaxParticipants(seats);
+        mentorship.setDurationMinutes(60);
+        mentorship.setMentorshipType(MentorshipType.GROUP);
+        Long contentId = contentRepository.save(mentorship).getId();
+        List<Long> holders = userIds.subList(0, seats);
+        holders.forEach(holderId -> contentService.joinContent(contentId, holderId));
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Long joinerId : userIds.subList(seats, userIds.size())) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        contentService.joinContent(contentId, joinerId);
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                    return null;
+                }));
+            }
+            for (Long holderId : holders) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    contentService.leaveContent(contentId, holderId);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+
+            assertTrue(errors.isEmpty(), () -> "Errores inesperados: " + errors);
+            int occupied = contentRepository.findById(contentId).orElseThrow().getParticipantCount();
+            long waiting = waitlistEntryRepository.countByContentId(contentId);
+            // Mientras quede alguien esperando, todas las plazas están ocupadas
+            assertEquals(seats, occupied);
+            assertEquals(joiners - seats, waiting);
+            assertEquals(seats, contentService.getParticipants(contentId).size());
+        } finally {
+            executor.shutdownNow();
+            participationRepository.deleteAll();
+            waitlistEntryRepository.deleteAll();
+            contentRepository.deleteById(contentId);
+            userRepository.deleteAllById(userIds);
+            userRepository.deleteById(userId);
+        }
+    }
+
+    @Test
+    void testGetParticipantsBatch_ResolvesManyContents() throws Exception {
+        User creator = userRepository.findById(userId).orElseThrow();
+        List<Long> contentIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Mentorship mentorship = new Mentorship();
+            mentorship.setTitle("Mentoría " + i);
+            mentorship.setCreator(creator);
+            mentorship.setStatus(ContentStatus.PUBLISHED);
+            mentorship.setType(ContentType.MENTORSHIP);
+            mentorship.setMaxParticipants(10);
+            mentorship.setDurationMinutes(60);
+            mentorship.setMentorshipType(MentorshipType.GROUP);
+            contentIds.add(contentRepository.save(mentorship).getId());
+        }
+        Long participantId = saveUsers("Participant", 1).get(0);
+        contentService.joinContent(contentIds.get(0), participantId);
+
+        mockMvc.perform(get("/api/contents/participants")
+                .param("ids", contentIds.get(0) + "," + contentIds.get(1))
+                .header("Authorization", "Bearer " + authToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['" + contentIds.get(0) + "'][0]").value(participantId))
+                .andExpect(jsonPath("$['" + contentIds.get(1) + "']").isEmpty());
+    }
+
+    @Test
+    void testSubmissionReviewQueue_ClaimsByDeadlineWithoutCollisions() {
+        User creator = userRepository.findById(userId).orElseThrow();
+        Long lateChallenge = saveChallenge(creator, LocalDateTime.now().plusDays(7));
+        Long earlyChallenge = saveChallenge(creator, LocalDateTime.now().plusDays(1));
+        List<Long> ids = saveUsers("Submitter", 4);
+        ChallengeSubmissionRequest request = new ChallengeSubmissionRequest();
+        request.setRepositoryUrl("https://github.com/example/solution");
+
+        Long lateSubmission = saveSubmission(lateChallenge, ids.get(0));
+        Long earlySubmission = saveSubmission(earlyChallenge, ids.get(1));
+        Long takenSubmission = saveSubmission(earlyChallenge, ids.get(2));
+        assertEquals(List.of(earlySubmission), contentService.getChallengeSubmissions(earlyChallenge, ids.get(1)).stream()
+                .map(ChallengeSubmissionResponse::getId).toList());
+        assertThrows(IllegalArgumentException.class,
+                () -> submissionIngestionService.accept(earlyChallenge, ids.get(3), null, request));
+
+        // Instancia propia: los eventos de la prueba no llegan a la cola compartida hasta el commit
+        SubmissionReviewQueue queue = new SubmissionReviewQueue(challengeSubmissionRepository, participationRepository,
+                userRepository, jdbcTemplate, eventPublisher, new SimpleMeterRegistry(), 30);
+        queue.load();
+        // Otra instancia ya reclamó esta entrega: se salta como con SKIP LOCKED
+        jdbcTemplate.update("UPDATE challenge_submissions SET status = 'UNDER_REVIEW', reviewer_id = ? WHERE id = ?",
+                userId, takenSubmission);
+
+        List<ChallengeSubmissionResponse> claimed = queue.claim(ids.get(3), 2);
+        assertEquals(List.of(earlySubmission, lateSubmission), claimed.stream().map(ChallengeSubmissionResponse::getId).toList());
+        assertTrue(queue.claim(userId, 10).isEmpty());
+        assertEquals(0, queue.depth());
+
+        SubmissionReviewRequest review = new SubmissionReviewRequest();
+        review.setScore(90);
+        review.setApproved(true);
+        assertThrows(SecurityException.class, () -> queue.review(earlySubmission, userId, review));
+        assertEquals("APPROVED", queue.review(earlySubmission, ids.get(3), review).getStatus());
+        assertEquals(ParticipationStatus.COMPLETED.name(), jdbcTemplate.queryForObject(
+                "SELECT status FROM participations WHERE content_id = ? AND user_id = ?", String.class, earlyChallenge, ids.get(1)));
+    }
+
+    @Test
+    void testClaimSubmissions_RequiresReviewerRoleAndUsesAuthenticatedUser() throws Exception {
+        String developerToken = createParticipantUser();
+        mockMvc.perform(post("/api/submissions/claim")
+                .header("Authorization", "Bearer " + developerToken))
+                .andExpect(status().isForbidden());
+
+        // El revisor es siempre el usuario del token: un reviewerId en la petición se ignora
+        mockMvc.perform(post("/api/submissions/claim")
+                .header("Authorization", "Bearer " + authToken)
+                .param("reviewerId", "999999"))
+                .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray());
     }
 
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testSubmitChallenge_AcceptsWithTicketAndDeduplicatesRetries() throws Exception {
+        User creator = userRepository.findById(userId).orElseThrow();
+        Long challengeId = saveChallenge(creator, LocalDateTime.now().plusDays(1));
+        Long submitterId = saveUsers("Submitter", 1).get(0);
+        try {
+            contentService.joinContent(challengeId, submitterId);
+            List<String> locations = new ArrayList<>();
+            // El reintento con la misma clave devuelve el ticket original sin volver a encolar
+            for (int attempt = 0; attempt < 2; attempt++) {
+                MvcResult accepted = mockMvc.perform(post("/api/contents/" + challengeId + "/submissions")
+                        .header("Authorization", "Bearer " + authToken)
+                        .header("Idempotency-Key", "solution")
+                        .param("userId", submitterId.toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"repositoryUrl\":\"https://github.com/example/solution\"}"))
+                        .andExpect(status().isAccepted())
+                        .andExpect(header().exists("Location"))
+                        .andReturn();
+                locations.add(accepted.getResponse().getHeader("Location"));
+            }
+            assertEquals(locations.get(0), locations.get(1));
+
+            String status = null;
+            for (int i = 0; i < 100 && !"STORED".equals(status); i++) {
+                Thread.sleep(50);
+                MvcResult ticket = mockMvc.perform(get(locations.get(0))
+                        .header("Authorization", "Bearer " + authToken))
+                        .andExpect(status().isOk())
+                        .andReturn();
+                status = objectMapper.readTree(ticket.getResponse().getContentAsString()).get("status").asText();
+            }
+            assertEquals("STORED", status);
+            mockMvc.perform(get(locations.get(0))
+                    .header("Authorization", "Bearer " + authToken))
+                    .andExpect(jsonPath("$.submissionId").isNumber());
+            assertEquals(1, contentService.getChallengeSubmissions(challengeId, submitterId).size());
+
+            // Quien no participa en el challenge no puede entregar
+            mockMvc.perform(post("/api/contents/" + challengeId + "/submissions")
+                    .header("Authorization", "Bearer " + authToken)
+                    .param("userId", userId.toString())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"repositoryUrl\":\"https://github.com/example/solution\"}"))
+                    .andExpect(status().isBadRequest());
+        } finally {
+            jdbcTemplate.update("DELETE FROM challenge_submissions WHERE participation_id IN " +
+                    "(SELECT id FROM participations WHERE content_id = ?)", challengeId);
+            participationRepository.deleteAll();
+            contentRepository.deleteById(challengeId);
+            userRepository.deleteById(submitterId);
+            userRepository.deleteById(userId);
+        }
+    }
+
+    @Test
+    @Tag("perf")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testSubmitChallenge_IngestsTenThousandSubmissionsUnderAMinute() throws Exception {
+        int submitters = 100;
+        int submissionsPerUser = 100;
+        User creator = userRepository.findById(userId).orElseThrow();
+        Long challengeId = saveChallenge(creator, LocalDateTime.now().plusDays(1));
+        List<Long> userIds = saveUsers("Hacker", submitters);
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        try {
+            userIds.forEach(submitterId -> contentService.joinContent(challengeId, submitterId));
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (Long submitterId : userIds) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < submissionsPerUser; i++) {
+                        String body = "{\"repositoryUrl\":\"https://github.com/example/solution-" + i + "\"}";
+                        // Una de cada diez se reintenta con la misma clave, como un cliente que no recibió respuesta
+                        int attempts = i % 10 == 0 ? 2 : 1;
+                        for (int attempt = 0; attempt < attempts; attempt++) {
+                            try {
+                                mockMvc.perform(post("/api/contents/" + challengeId + "/submissions")
+                                        .header("Authorization", "Bearer " + authToken)
+                                        .header("Idempotency-Key", "solution-" + i)
+                                        .param("userId", submitterId.toString())
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .content(body))
+                                        .andExpect(status().isAccepted())
+                                        .andExpect(header().exists("Location"));
+                            } catch (Throwable t) {
+                                errors.add(t);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+
+            String countSql = "SELECT COUNT(*) FROM challenge_submissions s JOIN participations p ON p.id = s.participation_id WHERE p.content_id = ?";
+            int expected = submitters * submissionsPerUser;
+            while (jdbcTemplate.queryForObject(countSql, Integer.class, challengeId) < expected
+                    && System.nanoTime() - start < TimeUnit.MINUTES.toNanos(1)) {
+                Thread.sleep(50);
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue(errors.isEmpty(), () -> "Errores inesperados: " + errors.subList(0, Math.min(5, errors.size())));
+            assertEquals(expected, jdbcTemplate.queryForObject(countSql, Integer.class, challengeId));
+            assertTrue(elapsedMs < 60_000, "10k entregas guardadas en " + elapsedMs + " ms");
+
+            MvcResult retry = mockMvc.perform(post("/api/contents/" + challengeId + "/submissions")
+                    .header("Authorization", "Bearer " + authToken)
+                    .header("Idempotency-Key", "solution-0")
+                    .param("userId", userIds.get(0).toString())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"repositoryUrl\":\"https://github.com/example/solution-0\"}"))
+                    .andExpect(status().isAccepted())
+                    .andReturn();
+            mockMvc.perform(get(retry.getResponse().getHeader("Location"))
+                    .header("Authorization", "Bearer " + authToken))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.status").value("STORED"))
+                    .andExpect(jsonPath("$.submissionId").isNumber());
+
+            mockMvc.perform(post("/api/contents/" + challengeId + "/submissions")
+                    .header("Authorization", "Bearer " + authToken)
+                    .param("userId", userId.toString())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"repositoryUrl\":\"https://github.com/example/solution\"}"))
+                    .andExpect(status().isBadRequest());
+        } finally {
+            executor.shutdownNow();
+            jdbcTemplate.update("DELETE FROM challenge_submissions WHERE participation_id IN " +
+                    "(SELECT id FROM participations WHERE content_id = ?)", challengeId);
+            participationRepository.deleteAll();
+            contentRepository.deleteById(challengeId);
+            userRepository.deleteAllById(userIds);
+            userRepository.deleteById(userId);
+        }
+    }
+
+    // Usuarios DEVELOPER de prueba guardados de una vez: <name>0@example.com, <name>1@example.com...
+    private List<Long> saveUsers(String name, int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setFirstName(name);
+            user.setLastName("Number");
+            user.setEmail(name.toLowerCase() + i + "@example.com");
+            user.setPassword("Password123!");
+            user.setRole(UserRole.DEVELOPER);
+            users.add(user);
+        }
+        return userRepository.saveAll(users).stream().map(User::getId).toList();
+    }
+
+    private Long saveChallenge(User creator, LocalDateTime endDate) {
+        Challenge challenge = new Challenge();
+        challenge.setTitle("Challenge con entregas");
+        challenge.setCreator(creator);
+        challenge.setStatus(ContentStatus.PUBLISHED);
+        challenge.setType(ContentType.CHALLENGE);
+        challenge.setProblemStatement("Resolver el problema");
+        challenge.setAcceptanceCriteria("Pasa las pruebas");
+        challenge.setChallengeType(ChallengeType.CODING);
+        challenge.setEndDate(endDate);
+        return contentRepository.save(challenge).getId();
+    }
+
+    private Long saveContent(User creator, ContentStatus status) {
+        Challenge challenge = new Challenge();
+        challenge.setTitle("Challenge en estado " + status);
+        challenge.setCreator(creator);
+        challenge.setStatus(status);
+        challenge.setType(ContentType.CHALLENGE);
+        challenge.setProblemStatement("Resolver el problema");
+        challenge.setAcceptanceCriteria("Pasa las pruebas");
+        challenge.setChallengeType(ChallengeType.CODING);
+        return contentRepository.save(challenge).getId();
+    }
+
+    // Entrega ya guardada, como la deja la recepción asíncrona
+    private Long saveSubmission(Long challengeId, Long submitterId) {
+        contentService.joinContent(challengeId, submitterId);
+        ChallengeSubmission submission = new ChallengeSubmission();
+        submission.setParticipation(participationRepository.findActive(challengeId, submitterId).orElseThrow());
+        submission.setRepositoryUrl("https://github.com/example/solution");
+        submission.setStatus(SubmissionStatus.SUBMITTED);
+        submission.setSubmittedAt(LocalDateTime.now());
+        return challengeSubmissionRepository.save(submission).getId();
+    }
+
+    private long catalogTotal(ContentCatalogSnapshot snapshot) throws Exception {
+        return objectMapper.readTree(snapshot.getPage(0, 20).orElseThrow()).get("totalElements").asLong();
+    }
+
     private Long createTestMentorship() throws Exception {
         ContentRequest mentorshipRequest = new ContentRequest();
         mentorshipRequest.setTitle("Test Mentorship");
         mentorshipRequest.setDescription("Test mentorship description");
         mentorshipRequest.setCreatorId(userId);
         mentorshipRequest.setDifficulty("INTERMEDIATE");
-        mentorshipRequest.setRequiredTechnologies(Set.of("JAVA", "SPRING_BOOT"));
+        mentorshipRequest.setRequiredTechnologies(new HashSet<>(Set.of("JAVA", "SPRING_BOOT")));
         mentorshipRequest.setMaxParticipants(5);
         mentorshipRequest.setStartDate(LocalDateTime.now().plusDays(1));
         mentorshipRequest.setEndDate(LocalDateTime.now().plusDays(1).plusHours(2));
         mentorshipRequest.setType(ContentType.MENTORSHIP);
         mentorshipRequest.setDurationMinutes(120);
-        mentorshipRequest.setMentorshipType(MentorshipType.ONE_ON_ONE); // Campo requerido
+        mentorshipRequest.setMentorshipType(MentorshipType.GROUP); // Campo requerido
         mentorshipRequest.setIsLive(true);
 
-        mockMvc.perform(post("/api/contents")
+        MvcResult result = mockMvc.perform(post("/api/contents")
                 .header("Authorization", "Bearer " + authToken)
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(mentorshipRequest)))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andReturn();
 
-        // En una implementación real, extraerías el ID del response
-        return 1L; // ID simulado
+        return objectMapper.readTree(result.getResponse().getContentAsString()).get("id").asLong();
     }
 
     private String createParticipantUser() throws Exception {
@@ -2,23 +2,85 @@ package com.bad.batch.integration;
 
 import com.bad.batch.dto.security.TokenResponse;
 import com.bad.batch.dto.security.UserRegistrationRequest;
+import com.bad.batch.model.entities.Conversation;
+import com.bad.batch.model.entities.Mentorship;
+import com.bad.batch.model.entities.Message;
+import com.bad.batch.model.entities.User;
+import com.bad.batch.model.enums.ChatMessageType;
+import com.bad.batch.model.enums.ContentStatus;
+import com.bad.batch.model.enums.ContentType;
+import com.bad.batch.model.enums.MentorshipType;
 import com.bad.batch.model.enums.UserRole;
+import com.bad.batch.model.events.MessageStoredEvent;
+import com.bad.batch.repository.ContentRepository;
+import com.bad.batch.repository.ConversationRepository;
 import com.bad.batch.repository.MessageRepository;
 import com.bad.batch.repository.UserRepository;
+import com.bad.batch.websocket.dto.ChatMessageRequest;
+import com.bad.batch.websocket.dto.ChatMessageResponse;
+import com.bad.batch.websocket.service.ChatService;
+import com.bad.batch.websocket.service.ConversationSummaryService;
+import com.bad.batch.websocket.service.MessageFullTextSearch;
+import com.bad.batch.websocket.service.LiveViewerRegistry;
+import com.bad.batch.websocket.service.MessageHistoryService;
+import com.bad.batch.websocket.service.MessageSearchIndex;
+import com.bad.batch.websocket.service.MessageWriteBehindWriter;
+import com.bad.batch.websocket.service.PresenceRegistry;
+import com.bad.batch.websocket.service.SenderSummaryCache;
+import com.bad.batch.websocket.service.UnreadCountNotifier;
+import com.bad.batch.websocket.service.UnreadCounterRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
+import java.nio.file.Path;
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -40,6 +102,45 @@ public class MessageIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MessageHistoryService messageHistoryService;
+
+    @Autowired
+    private UnreadCounterRegistry unreadCounterRegistry;
+
+    @Autowired
+    private UnreadCountNotifier unreadCountNotifier;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ContentRepository contentRepository;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private SenderSummaryCache senderSummaryCache;
+
     private MockMvc mockMvc;
     private String authToken;
     private Long otherUserId;
@@ -49,6 +150,7 @@ public class MessageIntegrationTest {
         mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
         userRepository.deleteAll();
         messageRepository.deleteAll();
+        conversationRepository.deleteAll();
         
         // Crear primer usuario
         UserRegistrationRequest userRequest = new UserRegistrationRequest();
@@ -212,4 +314,769 @@ public class MessageIntegrationTest {
                 .param("query", "test"))
                 .andExpect(status().isUnauthorized());
     }
+
+    @Test
+    void testGetChallengeMessagesByCursor_Paginates() throws Exception {
+        Long challengeId = 1L; // ID simulado
+
+        User sender = userRepository.findByEmail("user1@example.com").orElseThrow();
+        for (int i = 1; i <= 3; i++) {
+            messageRepository.save(Message.builder()
+                    .content("mensaje " + i)
+                    .type(ChatMessageType.TEXT)
+                    .sender(sender)
+                    .challengeId(challengeId)
+                    .conversationType(Message.ConversationType.CHALLENGE)
+                    .build());
+        }
+
+        MvcResult firstPage = mockMvc.perform(get("/api/messages/challenge/" + challengeId + "/cursor")
+                .header("Authorization", "Bearer " + authToken)
+                .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(2))
+                .andExpect(jsonPath("$.content[0].content").value("mensaje 2"))
+                .andExpect(jsonPath("$.content[1].content").value("mensaje 3"))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andReturn();
+
+        String nextBefore = objectMapper.readTree(firstPage.getResponse().getContentAsString())
+                .get("nextBefore").asText();
+
+        mockMvc.perform(get("/api/messages/challenge/" + challengeId + "/cursor")
+                .header("Authorization", "Bearer " + authToken)
+                .param("before", nextBefore)
+                .param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.content[0].content").value("mensaje 1"))
+                .andExpect(jsonPath("$.hasNext").value(false));
+    }
+
+    @Test
+    void testGetChallengeMessagesByCursor_InvalidCursor() throws Exception {
+        mockMvc.perform(get("/api/messages/challenge/1/cursor")
+                .header("Authorization", "Bearer " + authToken)
+                .param("before", "no-es-un-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetChallengeMessages_SingleStatementPerPage() {
+        Long challengeId = 2L; // ID simulado
+
+        User userOne = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User userTwo = userRepository.findByEmail("user2@example.com").orElseThrow();
+        for (int i = 1; i <= 20; i++) {
+            messageRepository.save(Message.builder()
+                    .content("mensaje " + i)
+                    .type(ChatMessageType.TEXT)
+                    .sender(i % 2 == 0 ? userOne : userTwo)
+                    .challengeId(challengeId)
+                    .conversationType(Message.ConversationType.CHALLENGE)
+                    .build());
+        }
+        // Vaciar el contexto de persistencia para que ningún User esté ya cargado
+        entityManager.flush();
+        entityManager.clear();
+        // Los remitentes ya están en SenderSummaryCache, como tras enviar por el chat
+        senderSummaryCache.get(userOne.getId());
+        senderSummaryCache.get(userTwo.getId());
+
+        Statistics statistics = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        Page<ChatMessageResponse> page = messageHistoryService.getChallengeMessages(challengeId, PageRequest.of(0, 10));
+
+        assertEquals(10, page.getNumberOfElements());
+        assertEquals("User Two", page.getContent().get(0).getSenderName());
+        assertEquals("User One", page.getContent().get(1).getSenderName());
+        // Una consulta para la página y otra para el total, sin cargas ni JOIN de remitentes
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        Slice<ChatMessageResponse> slice = messageHistoryService.getChallengeMessages(challengeId, null, null, 10);
+
+        assertEquals(10, slice.getNumberOfElements());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    void testUnreadCounters_LoadAndReconcile() {
+        User recipient = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User sender = userRepository.findByEmail("user2@example.com").orElseThrow();
+        for (int i = 1; i <= 3; i++) {
+            messageRepository.save(Message.builder()
+                    .content("directo " + i)
+                    .type(ChatMessageType.TEXT)
+                    .sender(sender)
+                    .recipient(recipient)
+                    .conversationType(Message.ConversationType.DIRECT)
+                    .build());
+        }
+        entityManager.flush();
+
+        assertEquals(3, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+        assertEquals(3, unreadCounterRegistry.getUnreadCount(recipient.getId(), sender.getId()));
+        assertEquals(0, unreadCounterRegistry.getUnreadCount(sender.getId()));
+
+        // El decremento se aplica tras el commit; la reconciliación lo corrige contra la tabla
+        messageHistoryService.markConversationAsRead(recipient.getId(), sender.getId());
+        unreadCounterRegistry.reconcile();
+
+        assertEquals(0, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+        assertEquals(0, unreadCounterRegistry.getUnreadCount(recipient.getId(), sender.getId()));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testUnreadCounters_AppliesDeltasOnlyAfterCommit() {
+        User recipient = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User sender = userRepository.findByEmail("user2@example.com").orElseThrow();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            // Carga los contadores del destinatario para que reciban los deltas
+            assertEquals(0, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+
+            transactionTemplate.executeWithoutResult(status -> {
+                ChatMessageRequest request = new ChatMessageRequest();
+                request.setContent("pendiente");
+                request.setRecipientId(recipient.getId());
+                chatService.sendDirectMessage(sender.getId(), request);
+                // Antes del commit el contador no cambia
+                assertEquals(0, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+            });
+            assertEquals(1, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+            assertEquals(1, unreadCounterRegistry.getUnreadCount(recipient.getId(), sender.getId()));
+
+            // Un envío que se deshace no deja rastro en el contador
+            transactionTemplate.executeWithoutResult(status -> {
+                ChatMessageRequest request = new ChatMessageRequest();
+                request.setContent("descartado");
+                request.setRecipientId(recipient.getId());
+                chatService.sendDirectMessage(sender.getId(), request);
+                status.setRollbackOnly();
+            });
+            assertEquals(1, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+
+            transactionTemplate.executeWithoutResult(status ->
+                    messageHistoryService.markConversationAsRead(recipient.getId(), sender.getId()));
+            assertEquals(0, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+
+            // Un delta sin mensaje detrás (desviación) se corrige sobre el contador existente
+            unreadCounterRegistry.onMessageSent(recipient.getId(), sender.getId());
+            assertEquals(1, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+            unreadCounterRegistry.reconcile();
+            assertEquals(0, unreadCounterRegistry.getUnreadCount(recipient.getId()));
+            assertEquals(0, unreadCounterRegistry.getUnreadCount(recipient.getId(), sender.getId()));
+        } finally {
+            messageRepository.deleteAll();
+            conversationRepository.deleteAll();
+            userRepository.deleteAll();
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testUnreadCountNotifier_PushesTotalAfterSendAndRead() throws Exception {
+        User recipient = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User sender = userRepository.findByEmail("user2@example.com").orElseThrow();
+        String destination = "/user/" + recipient.getId() + "/queue/unread";
+        List<Long> pushed = new CopyOnWriteArrayList<>();
+        ChannelInterceptor capture = new ChannelInterceptor() {
+            @Override
+            public org.springframework.messaging.Message<?> preSend(org.springframework.messaging.Message<?> message, MessageChannel channel) {
+                if (destination.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+                    try {
+                        pushed.add(objectMapper.readTree((byte[]) message.getPayload()).get("unreadCount").asLong());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return message;
+            }
+        };
+        AbstractMessageChannel brokerChannel = (AbstractMessageChannel) messagingTemplate.getMessageChannel();
+        brokerChannel.addInterceptor(capture);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            // Una ráfaga de tres mensajes en la misma transacción
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 1; i <= 3; i++) {
+                    ChatMessageRequest request = new ChatMessageRequest();
+                    request.setContent("ráfaga " + i);
+                    request.setRecipientId(recipient.getId());
+                    chatService.sendDirectMessage(sender.getId(), request);
+                }
+            });
+            unreadCountNotifier.flush();
+            awaitLastPushed(pushed, 3);
+            // Los cambios de la ráfaga se agrupan: nunca un envío por mensaje
+            assertTrue(pushed.size() < 3, () -> "Envíos: " + pushed);
+
+            transactionTemplate.executeWithoutResult(status ->
+                    messageHistoryService.markConversationAsRead(recipient.getId(), sender.getId()));
+            unreadCountNotifier.flush();
+            awaitLastPushed(pushed, 0);
+        } finally {
+            brokerChannel.removeInterceptor(capture);
+            messageRepository.deleteAll();
+            conversationRepository.deleteAll();
+            userRepository.deleteAll();
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testSendDirectMessage_BroadcastsOnlyAfterCommit() {
+        User recipient = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User sender = userRepository.findByEmail("user2@example.com").orElseThrow();
+        String destination = "/user/" + recipient.getId() + "/queue/messages";
+        List<String> broadcast = new CopyOnWriteArrayList<>();
+        ChannelInterceptor capture = new ChannelInterceptor() {
+            @Override
+            public org.springframework.messaging.Message<?> preSend(org.springframework.messaging.Message<?> message, MessageChannel channel) {
+                if (destination.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+                    try {
+                        broadcast.add(objectMapper.readTree((byte[]) message.getPayload()).get("content").asText());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return message;
+            }
+        };
+        AbstractMessageChannel brokerChannel = (AbstractMessageChannel) messagingTemplate.getMessageChannel();
+        brokerChannel.addInterceptor(capture);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                ChatMessageRequest request = new ChatMessageRequest();
+                request.setContent("revertido");
+                request.setRecipientId(recipient.getId());
+                chatService.sendDirectMessage(sender.getId(), request);
+                assertTrue(broadcast.isEmpty());
+                status.setRollbackOnly();
+            });
+            assertTrue(broadcast.isEmpty(), () -> "Difundido sin commit: " + broadcast);
+            assertEquals(0, messageRepository.count());
+
+            transactionTemplate.executeWithoutResult(status -> {
+                ChatMessageRequest request = new ChatMessageRequest();
+                request.setContent("confirmado");
+                request.setRecipientId(recipient.getId());
+                chatService.sendDirectMessage(sender.getId(), request);
+                assertTrue(broadcast.isEmpty());
+            });
+            assertEquals(List.of("confirmado"), broadcast);
+        } finally {
+            brokerChannel.removeInterceptor(capture);
+            messageRepository.deleteAll();
+            conversationRepository.deleteAll();
+            userRepository.deleteAll();
+        }
+    }
+
+    // El flush programado puede adelantarse al del test: se espera al último total enviado
+    private static void awaitLastPushed(List<Long> pushed, long expected) throws InterruptedException {
+        for (int i = 0; i < 40 && (pushed.isEmpty() || pushed.get(pushed.size() - 1) != expected); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(pushed.isEmpty());
+        assertEquals(expected, pushed.get(pushed.size() - 1));
+    }
+
+    @Test
+    void testGetLastConversations_FromSummary() {
+        User userOne = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User userTwo = userRepository.findByEmail("user2@example.com").orElseThrow();
+
+        ChatMessageRequest first = new ChatMessageRequest();
+        first.setContent("hola");
+        first.setRecipientId(userTwo.getId());
+        chatService.sendDirectMessage(userOne.getId(), first);
+
+        ChatMessageRequest reply = new ChatMessageRequest();
+        reply.setContent("respuesta");
+        reply.setRecipientId(userOne.getId());
+        chatService.sendDirectMessage(userTwo.getId(), reply);
+
+        List<ChatMessageResponse> conversations = messageHistoryService.getLastConversations(userOne.getId());
+
+        assertEquals(1, conversations.size());
+        assertEquals("respuesta", conversations.get(0).getContent());
+        assertEquals("User Two", conversations.get(0).getSenderName());
+    }
+
+    @Test
+    void testConversationSummary_ConcurrentFirstMessageKeepsTransactionUsable() {
+        User userOne = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User userTwo = userRepository.findByEmail("user2@example.com").orElseThrow();
+        Long low = Math.min(userOne.getId(), userTwo.getId());
+        Long high = Math.max(userOne.getId(), userTwo.getId());
+
+        // Otro primer mensaje creó la fila antes: el INSERT no falla ni aborta la transacción
+        assertEquals(1, conversationRepository.insertIfAbsent(low, high, 0L, LocalDateTime.now().minusMinutes(1)));
+        assertEquals(0, conversationRepository.insertIfAbsent(low, high, 0L, LocalDateTime.now().minusMinutes(1)));
+
+        ChatMessageRequest first = new ChatMessageRequest();
+        first.setContent("primero");
+        first.setRecipientId(userTwo.getId());
+        chatService.sendDirectMessage(userOne.getId(), first);
+
+        assertEquals(1, conversationRepository.count());
+        assertEquals("primero", messageHistoryService.getLastConversations(userTwo.getId()).get(0).getContent());
+
+        // Un último mensaje borrado no se devuelve
+        jdbcTemplate.update("UPDATE messages SET is_deleted = true WHERE content = 'primero'");
+        entityManager.clear();
+        assertTrue(messageHistoryService.getLastConversations(userTwo.getId()).isEmpty());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testMessageWriteBehind_AssignsIdsInTransactionAndFlushesOnShutdown() {
+        User sender = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User recipient = userRepository.findByEmail("user2@example.com").orElseThrow();
+        MessageWriteBehindWriter writer = new MessageWriteBehindWriter(jdbcTemplate, entityManager.getEntityManagerFactory(),
+                entityManager, new SimpleMeterRegistry(), true, 1000, 20, 10, 10000);
+        writer.start();
+        try {
+            // Más ids que allocationSize: el generador vuelve a la secuencia dentro de la transacción
+            List<Message> deferred = new TransactionTemplate(transactionManager).execute(status -> {
+                List<Message> messages = new ArrayList<>();
+                for (int i = 0; i < 120; i++) {
+                    Message message = Message.builder()
+                            .content("diferido " + i)
+                            .type(ChatMessageType.TEXT)
+                            .sender(sender)
+                            .recipient(recipient)
+                            .conversationType(Message.ConversationType.DIRECT)
+                            .build();
+                    message.setId(writer.nextId());
+                    message.setCreatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MICROS));
+                    messages.add(message);
+                }
+                return messages;
+            });
+            Long savedId = messageRepository.save(Message.builder()
+                    .content("guardado")
+                    .type(ChatMessageType.TEXT)
+                    .sender(sender)
+                    .recipient(recipient)
+                    .conversationType(Message.ConversationType.DIRECT)
+                    .build()).getId();
+            deferred.forEach(writer::enqueue);
+            writer.shutdown();
+
+            // Los ids del write-behind y los de messageRepository.save salen del mismo generador
+            List<Long> ids = new ArrayList<>(deferred.stream().map(Message::getId).toList());
+            ids.add(savedId);
+            assertEquals(ids.size(), ids.stream().distinct().count());
+            assertEquals(121, messageRepository.count());
+            assertEquals("diferido 119", messageRepository.findById(deferred.get(119).getId()).orElseThrow().getContent());
+        } finally {
+            writer.shutdown();
+            messageRepository.deleteAll();
+            conversationRepository.deleteAll();
+            userRepository.deleteAll();
+        }
+    }
+
+    @Test
+    void testConversationBackfill_CreatesMissingSummaries() {
+        User userOne = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User userTwo = userRepository.findByEmail("user2@example.com").orElseThrow();
+        for (int i = 1; i <= 2; i++) {
+            messageRepository.save(Message.builder()
+                    .content("antiguo " + i)
+                    .type(ChatMessageType.TEXT)
+                    .sender(userTwo)
+                    .recipient(userOne)
+                    .conversationType(Message.ConversationType.DIRECT)
+                    .build());
+        }
+        entityManager.flush();
+
+        assertEquals(1, conversationSummaryService.backfill());
+        assertEquals(0, conversationSummaryService.backfill());
+
+        List<ChatMessageResponse> conversations = messageHistoryService.getLastConversations(userTwo.getId());
+        assertEquals(1, conversations.size());
+        assertEquals("antiguo 2", conversations.get(0).getContent());
+    }
+
+    @Test
+    void testConversationSummary_OrdersByTimestampThenId() {
+        User userOne = userRepository.findByEmail("user1@example.com").orElseThrow();
+        User userTwo = userRepository.findByEmail("user2@example.com").orElseThrow();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            ids.add(messageRepository.save(Message.builder()
+                    .content("desordenado " + i)
+                    .type(ChatMessageType.TEXT)
+                    .sender(userTwo)
+                    .recipient(userOne)
+                    .conversationType(Message.ConversationType.DIRECT)
+                    .build()).getId());
+        }
+        entityManager.flush();
+        // Otro nodo tomó un bloque de ids anterior: el mensaje más reciente tiene el id menor
+        LocalDateTime latest = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MICROS);
+        jdbcTemplate.update("UPDATE messages SET created_at = ? WHERE id = ?", latest, ids.get(0));
+
+        assertEquals(1, conversationSummaryService.backfill());
+        entityManager.clear();
+        Long low = Math.min(userOne.getId(), userTwo.getId());
+        Long high = Math.max(userOne.getId(), userTwo.getId());
+        Conversation conversation = conversationRepository.findByUserLowIdAndUserHighId(low, high).orElseThrow();
+        assertEquals(ids.get(0), conversation.getLastMessageId());
+        assertEquals(latest, conversation.getLastMessageAt());
+
+        // Un id mayor con fecha anterior no desplaza al último mensaje; uno posterior sí
+        conversationRepository.recordMessage(low, high, ids.get(1) + 100, latest.minusMinutes(1));
+        entityManager.clear();
+        assertEquals(ids.get(0), conversationRepository.findByUserLowIdAndUserHighId(low, high).orElseThrow().getLastMessageId());
+        conversationRepository.recordMessage(low, high, ids.get(0) - 1, latest.plusMinutes(1));
+        entityManager.clear();
+        assertEquals(ids.get(0) - 1, conversationRepository.findByUserLowIdAndUserHighId(low, high).orElseThrow().getLastMessageId());
+    }
+
+    @Test
+    void testMessageFullTextSearch_FallsBackToLikeOutsidePostgreSQL() {
+        MessageFullTextSearch fullText = new MessageFullTextSearch(
+                jdbcTemplate, new NamedParameterJdbcTemplate(jdbcTemplate), "fulltext");
+        fullText.initialize();
+        // H2 no es PostgreSQL: no se activa y la búsqueda sigue por LIKE
+        assertFalse(fullText.isEnabled());
+
+        Long challengeId = 4L; // ID simulado
+        User sender = userRepository.findByEmail("user1@example.com").orElseThrow();
+        for (String content : new String[]{"Subid la rama de despliegue", "Otra cosa"}) {
+            messageRepository.save(Message.builder()
+                    .content(content)
+                    .type(ChatMessageType.TEXT)
+                    .sender(sender)
+                    .challengeId(challengeId)
+                    .conversationType(Message.ConversationType.CHALLENGE)
+                    .build());
+        }
+        entityManager.flush();
+
+        Page<ChatMessageResponse> results = messageHistoryService.searchMessages(
+                "despliegue", sender.getId(), challengeId, null, PageRequest.of(0, 10));
+        assertEquals(1, results.getTotalElements());
+        assertEquals("Subid la rama de despliegue", results.getContent().get(0).getContent());
+    }
+
+    @Test
+    void testMessageFullTextSearch_BuildsRankedQueryPerScope() {
+        // Captura las consultas en lugar de ejecutarlas: websearch_to_tsquery no existe en H2
+        List<String> sql = new ArrayList<>();
+        List<SqlParameterSource> params = new ArrayList<>();
+        NamedParameterJdbcTemplate capturing = new NamedParameterJdbcTemplate(jdbcTemplate) {
+            @Override
+            public <T> List<T> query(String query, SqlParameterSource paramSource, RowMapper<T> rowMapper) {
+                sql.add(query);
+                params.add(paramSource);
+                return List.of();
+            }
+
+            @Override
+            public <T> T queryForObject(String query, SqlParameterSource paramSource, Class<T> requiredType) {
+                sql.add(query);
+                params.add(paramSource);
+                return requiredType.cast(25L);
+            }
+        };
+        MessageFullTextSearch fullText = new MessageFullTextSearch(jdbcTemplate, capturing, "fulltext");
+
+        Page<ChatMessageResponse> direct = fullText.search("rama despliegue", 7L, null, null, PageRequest.of(1, 10));
+        assertEquals(25, direct.getTotalElements());
+        String select = sql.get(0);
+        assertTrue(select.contains("websearch_to_tsquery('simple', :query) q"));
+        assertTrue(select.contains("m.content_tsv @@ q AND m.is_deleted = false"));
+        assertTrue(select.contains("m.conversation_type = 'DIRECT' AND (m.sender_id = :userId OR m.recipient_id = :userId)"));
+        assertTrue(select.contains("ORDER BY ts_rank(m.content_tsv, q) DESC, m.created_at DESC LIMIT :limit OFFSET :offset"));
+        assertTrue(sql.get(1).startsWith("SELECT COUNT(*) FROM messages m, websearch_to_tsquery('simple', :query) q"));
+        assertEquals("rama despliegue", params.get(0).getValue("query"));
+        assertEquals(7L, params.get(0).getValue("userId"));
+        assertEquals(10, params.get(0).getValue("limit"));
+        assertEquals(10L, params.get(0).getValue("offset"));
+
+        fullText.search("rama", 7L, 3L, null, PageRequest.of(0, 10));
+        assertTrue(sql.get(2).contains("m.conversation_type = 'CHALLENGE' AND m.challenge_id = :challengeId"));
+        assertFalse(params.get(2).hasValue("userId"));
+
+        fullText.search("rama", 7L, null, 5L, PageRequest.of(0, 10));
+        assertTrue(sql.get(4).contains("m.conversation_type = 'MENTORSHIP' AND m.mentorship_id = :mentorshipId"));
+        assertEquals(5L, params.get(4).getValue("mentorshipId"));
+    }
+
+    @Test
+    void testMessageSearchIndex_SearchAndSnapshot(@TempDir Path tempDir) throws Exception {
+        Long challengeId = 3L; // ID simulado
+        Path snapshot = tempDir.resolve("index.bin");
+
+        MessageSearchIndex index = new MessageSearchIndex(
+                messageRepository, jdbcTemplate, new SimpleMeterRegistry(), "index", snapshot.toString(), 300000);
+        index.start();
+        for (int i = 0; i < 100 && !index.isReady(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(index.isReady());
+
+        User sender = userRepository.findByEmail("user1@example.com").orElseThrow();
+        String[] contents = {"Revisad el despliegue", "El despliegue falló", "Nada que ver"};
+        for (String content : contents) {
+            Message message = messageRepository.save(Message.builder()
+                    .content(content)
+                    .type(ChatMessageType.TEXT)
+                    .sender(sender)
+                    .challengeId(challengeId)
+                    .conversationType(Message.ConversationType.CHALLENGE)
+                    .build());
+            index.onMessageStored(new MessageStoredEvent(message));
+        }
+        entityManager.flush();
+
+        Page<ChatMessageResponse> results = index.search("desplie", null, challengeId, null, PageRequest.of(0, 10));
+        assertEquals(2, results.getTotalElements());
+        assertEquals("El despliegue falló", results.getContent().get(0).getContent());
+        assertEquals(1, index.search("despliegue FALLÓ", null, challengeId, null, PageRequest.of(0, 10)).getTotalElements());
+        assertEquals(0, index.search("despliegue", null, challengeId + 1, null, PageRequest.of(0, 10)).getTotalElements());
+
+        // Una instancia nueva arranca desde la instantánea
+        index.snapshot();
+        MessageSearchIndex restored = new MessageSearchIndex(
+                messageRepository, jdbcTemplate, new SimpleMeterRegistry(), "index", snapshot.toString(), 300000);
+        restored.start();
+        for (int i = 0; i < 100 && !restored.isReady(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, restored.search("desplie", null, challengeId, null, PageRequest.of(0, 10)).getTotalElements());
+
+        // Un mensaje borrado sale del índice la primera vez que aparece en una página
+        jdbcTemplate.update("UPDATE messages SET is_deleted = true WHERE content = 'El despliegue falló'");
+        Page<ChatMessageResponse> afterDelete = restored.search("desplie", null, challengeId, null, PageRequest.of(0, 10));
+        assertEquals(1, afterDelete.getTotalElements());
+        assertEquals("Revisad el despliegue", afterDelete.getContent().get(0).getContent());
+        assertEquals(0, restored.search("falló", null, challengeId, null, PageRequest.of(0, 10)).getTotalElements());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void testMessageSearchIndex_CatchesUpMessagesCommittedOutOfIdOrder(@TempDir Path tempDir) throws Exception {
+        Long challengeId = 4L; // ID simulado
+        Path snapshot = tempDir.resolve("index.bin");
+        User sender = userRepository.findByEmail("user1@example.com").orElseThrow();
+        try {
+            MessageSearchIndex index = new MessageSearchIndex(
+                    messageRepository, jdbcTemplate, new SimpleMeterRegistry(), "index", snapshot.toString(), 300000);
+            index.start();
+            for (int i = 0; i < 100 && !index.isReady(); i++) {
+                Thread.sleep(50);
+            }
+            // El id menor se confirma sin que este nodo reciba su evento (otro nodo, write-behind pendiente)
+            messageRepository.save(Message.builder()
+                    .content("entrega tardía")
+                    .type(ChatMessageType.TEXT)
+                    .sender(sender)
+                    .challengeId(challengeId)
+                    .conversationType(Message.ConversationType.CHALLENGE)
+                    .build());
+            Message later = messageRepository.save(Message.builder()
+                    .content("entrega puntual")
+                    .type(ChatMessageType.TEXT)
+                    .sender(sender)
+                    .challengeId(challengeId)
+                    .conversationType(Message.ConversationType.CHALLENGE)
+                    .build());
+            index.onMessageStored(new MessageStoredEvent(later));
+            assertEquals(1, index.search("entrega", null, challengeId, null, PageRequest.of(0, 10)).getTotalElements());
+            index.snapshot();
+
+            MessageSearchIndex restored = new MessageSearchIndex(
+                    messageRepository, jdbcTemplate, new SimpleMeterRegistry(), "index", snapshot.toString(), 300000);
+            restored.start();
+            for (int i = 0; i < 100 && !restored.isReady(); i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(2, restored.search("entrega", null, challengeId, null, PageRequest.of(0, 10)).getTotalElements());
+        } finally {
+            messageRepository.deleteAll();
+            conversationRepository.deleteAll();
+            userRepository.deleteAll();
+        }
+    }
+
+    @Test
+    void testLiveViewerRegistry_CountsSubscriptionsAndFlushesHighWaterMark() {
+        User creator = userRepository.findByEmail("user1@example.com").orElseThrow();
+        Mentorship mentorship = new Mentorship();
+        mentorship.setTitle("Mentoría en directo");
+        mentorship.setCreator(creator);
+        mentorship.setStatus(ContentStatus.PUBLISHED);
+        mentorship.setType(ContentType.MENTORSHIP);
+        mentorship.setDurationMinutes(60);
+        mentorship.setMentorshipType(MentorshipType.GROUP);
+        Long mentorshipId = contentRepository.saveAndFlush(mentorship).getId();
+        jdbcTemplate.update("INSERT INTO streaming_sessions (mentorship_id, status, current_viewers) VALUES (?, 'LIVE', 0)",
+                mentorshipId);
+
+        LiveViewerRegistry registry = new LiveViewerRegistry(messagingTemplate, jdbcTemplate, new SimpleMeterRegistry());
+        String room = "/topic/mentorship/" + mentorshipId;
+        registry.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s1", "sub-1", room)));
+        registry.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s2", "sub-1", room)));
+        registry.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s3", "sub-1", room)));
+        // Otros destinos no cuentan como espectadores
+        registry.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "s1", "sub-2", "/user/queue/messages")));
+        assertEquals(3, registry.getViewers(mentorshipId));
+
+        registry.flush();
+        registry.push();
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "SELECT current_viewers FROM streaming_sessions WHERE mentorship_id = ?", Integer.class, mentorshipId));
+
+        registry.onUnsubscribe(new SessionUnsubscribeEvent(this, stomp(StompCommand.UNSUBSCRIBE, "s2", "sub-1", null)));
+        registry.onDisconnect(new SessionDisconnectEvent(this,
+                stomp(StompCommand.DISCONNECT, "s1", null, null), "s1", CloseStatus.NORMAL));
+        // Una desconexión repetida no descuenta dos veces
+        registry.onDisconnect(new SessionDisconnectEvent(this,
+                stomp(StompCommand.DISCONNECT, "s1", null, null), "s1", CloseStatus.NORMAL));
+        assertEquals(1, registry.getViewers(mentorshipId));
+
+        registry.flush();
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT current_viewers FROM streaming_sessions WHERE mentorship_id = ?", Integer.class, mentorshipId));
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "SELECT max_viewers FROM streaming_sessions WHERE mentorship_id = ?", Integer.class, mentorshipId));
+    }
+
+    @Test
+    void testLiveViewerRegistry_NodesAddTheirOwnViewersPerSession() {
+        User creator = userRepository.findByEmail("user1@example.com").orElseThrow();
+        Mentorship mentorship = new Mentorship();
+        mentorship.setTitle("Mentoría en varios nodos");
+        mentorship.setCreator(creator);
+        mentorship.setStatus(ContentStatus.PUBLISHED);
+        mentorship.setType(ContentType.MENTORSHIP);
+        mentorship.setDurationMinutes(60);
+        mentorship.setMentorshipType(MentorshipType.GROUP);
+        Long mentorshipId = contentRepository.saveAndFlush(mentorship).getId();
+        String room = "/topic/mentorship/" + mentorshipId;
+
+        SimpleMeterRegistry metricsA = new SimpleMeterRegistry();
+        LiveViewerRegistry nodeA = new LiveViewerRegistry(messagingTemplate, jdbcTemplate, metricsA);
+        LiveViewerRegistry nodeB = new LiveViewerRegistry(messagingTemplate, jdbcTemplate, new SimpleMeterRegistry());
+
+        // Sin sesión en directo no hay fila que actualizar: el aporte espera a que empiece
+        nodeA.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "a1", "sub-1", room)));
+        nodeA.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "a2", "sub-1", room)));
+        nodeA.flush();
+        jdbcTemplate.update("INSERT INTO streaming_sessions (mentorship_id, status, current_viewers) VALUES (?, 'LIVE', 0)",
+                mentorshipId);
+        nodeA.flush();
+        assertEquals(2, currentViewers(mentorshipId, "LIVE"));
+
+        // Cada nodo suma sus propios espectadores en lugar de sobrescribir el total
+        for (int i = 1; i <= 3; i++) {
+            nodeB.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "b" + i, "sub-1", room)));
+        }
+        nodeB.flush();
+        assertEquals(5, currentViewers(mentorshipId, "LIVE"));
+
+        nodeA.onDisconnect(new SessionDisconnectEvent(this,
+                stomp(StompCommand.DISCONNECT, "a1", null, null), "a1", CloseStatus.NORMAL));
+        nodeA.flush();
+        assertEquals(4, currentViewers(mentorshipId, "LIVE"));
+        assertEquals(5, jdbcTemplate.queryForObject(
+                "SELECT max_viewers FROM streaming_sessions WHERE mentorship_id = ?", Integer.class, mentorshipId));
+
+        // Al parar un nodo se retira su aporte
+        nodeB.shutdown();
+        assertEquals(1, currentViewers(mentorshipId, "LIVE"));
+
+        // Una sesión nueva empieza de cero: el aporte a la anterior no se descuenta de ella
+        jdbcTemplate.update("UPDATE streaming_sessions SET status = 'ENDED' WHERE mentorship_id = ?", mentorshipId);
+        jdbcTemplate.update("INSERT INTO streaming_sessions (mentorship_id, status, current_viewers) VALUES (?, 'LIVE', 0)",
+                mentorshipId);
+        nodeA.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "a3", "sub-1", room)));
+        nodeA.flush();
+        assertEquals(2, currentViewers(mentorshipId, "LIVE"));
+        assertEquals(1, currentViewers(mentorshipId, "ENDED"));
+
+        // Cuando la sala se vacía desaparece de memoria, también las sesiones STOMP que ya no miran nada
+        nodeA.onUnsubscribe(new SessionUnsubscribeEvent(this, stomp(StompCommand.UNSUBSCRIBE, "a2", "sub-1", null)));
+        nodeA.onUnsubscribe(new SessionUnsubscribeEvent(this, stomp(StompCommand.UNSUBSCRIBE, "a3", "sub-1", null)));
+        nodeA.flush();
+        nodeA.push();
+        assertEquals(0, currentViewers(mentorshipId, "LIVE"));
+        assertEquals(0, metricsA.get("live.viewers.rooms").gauge().value());
+        assertEquals(0, metricsA.get("live.viewers.sessions").gauge().value());
+    }
+
+    private int currentViewers(Long mentorshipId, String status) {
+        return jdbcTemplate.queryForObject(
+                "SELECT current_viewers FROM streaming_sessions WHERE mentorship_id = ? AND status = ?",
+                Integer.class, mentorshipId, status);
+    }
+
+    @Test
+    void testPresenceRegistry_TracksRoomsAcrossSessions() throws Exception {
+        Long challengeId = 4L; // ID simulado
+        Long userOne = userRepository.findByEmail("user1@example.com").orElseThrow().getId();
+        Principal one = () -> userOne.toString();
+        Principal two = () -> otherUserId.toString();
+        String room = "/topic/challenge/" + challengeId;
+
+        // El usuario uno abre dos pestañas sobre la misma sala
+        presenceRegistry.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "p1", "sub-1", room), one));
+        presenceRegistry.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "p2", "sub-1", room), one));
+        presenceRegistry.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, "p3", "sub-1", room), two));
+        assertEquals(2, presenceRegistry.countUsers(PresenceRegistry.RoomType.CHALLENGE, challengeId));
+        assertEquals(0, presenceRegistry.countUsers(PresenceRegistry.RoomType.MENTORSHIP, challengeId));
+        assertEquals(2, presenceRegistry.getSessionCount(userOne));
+
+        mockMvc.perform(get("/api/presence/challenges/" + challengeId)
+                .header("Authorization", "Bearer " + authToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.userCount").value(2));
+
+        // Cerrar una pestaña no saca al usuario de la sala
+        presenceRegistry.onDisconnect(new SessionDisconnectEvent(this,
+                stomp(StompCommand.DISCONNECT, "p1", null, null), "p1", CloseStatus.NORMAL, one));
+        assertTrue(presenceRegistry.isPresent(PresenceRegistry.RoomType.CHALLENGE, challengeId, userOne));
+
+        presenceRegistry.onUnsubscribe(new SessionUnsubscribeEvent(this, stomp(StompCommand.UNSUBSCRIBE, "p2", "sub-1", null), one));
+        assertFalse(presenceRegistry.isPresent(PresenceRegistry.RoomType.CHALLENGE, challengeId, userOne));
+        assertTrue(presenceRegistry.isOnline(userOne));
+
+        presenceRegistry.onDisconnect(new SessionDisconnectEvent(this,
+                stomp(StompCommand.DISCONNECT, "p2", null, null), "p2", CloseStatus.NORMAL, one));
+        presenceRegistry.onDisconnect(new SessionDisconnectEvent(this,
+                stomp(StompCommand.DISCONNECT, "p3", null, null), "p3", CloseStatus.NORMAL, two));
+        assertFalse(presenceRegistry.isOnline(userOne));
+        assertEquals(0, presenceRegistry.countUsers(PresenceRegistry.RoomType.CHALLENGE, challengeId));
+
+        mockMvc.perform(get("/api/presence/users/" + otherUserId)
+                .header("Authorization", "Bearer " + authToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.online").value(false));
+    }
+
+    private static org.springframework.messaging.Message<byte[]> stomp(StompCommand command, String sessionId, String subscriptionId, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(sessionId);
+        if (subscriptionId != null) {
+            accessor.setSubscriptionId(subscriptionId);
+        }
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
 }
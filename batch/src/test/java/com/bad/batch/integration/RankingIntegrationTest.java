@@ -0,0 +1,381 @@
+package com.bad.batch.integration;
+
+import com.bad.batch.model.entities.ChallengeSubmission;
+import com.bad.batch.model.entities.Content;
+import com.bad.batch.model.entities.Mentorship;
+import com.bad.batch.model.entities.Participation;
+import com.bad.batch.model.entities.User;
+import com.bad.batch.model.enums.ContentStatus;
+import com.bad.batch.model.enums.ContentType;
+import com.bad.batch.model.enums.MentorshipType;
+import com.bad.batch.model.enums.ParticipationStatus;
+import com.bad.batch.model.enums.RankingType;
+import com.bad.batch.model.enums.SubmissionStatus;
+import com.bad.batch.model.enums.UserRole;
+import com.bad.batch.model.events.UserActivityEvent;
+import com.bad.batch.repository.ChallengeSubmissionRepository;
+import com.bad.batch.repository.ContentRepository;
+import com.bad.batch.repository.ParticipationRepository;
+import com.bad.batch.repository.UserRepository;
+import com.bad.batch.service.Leaderboard;
+import com.bad.batch.service.LeaderboardService;
+import com.bad.batch.service.UserStatsAggregator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureWebMvc
+@ActiveProfiles("test")
+@Transactional
+public class RankingIntegrationTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LeaderboardService leaderboardService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ContentRepository contentRepository;
+
+    @Autowired
+    private ParticipationRepository participationRepository;
+
+    @Autowired
+    private ChallengeSubmissionRepository challengeSubmissionRepository;
+
+    private MockMvc mockMvc;
+    private List<Long> userIds;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        userIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = new User();
+            user.setFirstName("Ranked");
+            user.setLastName("User" + (char) ('A' + i));
+            user.setEmail("ranked" + i + "@example.com");
+            user.setPassword("Password123!");
+            user.setRole(UserRole.DEVELOPER);
+            userIds.add(userRepository.save(user).getId());
+        }
+    }
+
+    @Test
+    void testLeaderboard_MatchesSortedOrder() {
+        Leaderboard leaderboard = new Leaderboard();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 5000; i++) {
+            long userId = random.nextInt(500);
+            if (random.nextInt(10) == 0) {
+                leaderboard.remove(userId);
+                expected.remove(userId);
+            } else {
+                int points = random.nextInt(200);
+                leaderboard.update(userId, points);
+                expected.put(userId, points);
+            }
+        }
+
+        List<Long> sorted = expected.keySet().stream()
+                .sorted(Comparator.<Long>comparingInt(expected::get).reversed().thenComparing(Comparator.naturalOrder()))
+                .toList();
+        assertEquals(sorted.size(), leaderboard.size());
+        assertEquals(sorted.subList(0, 10), leaderboard.top(10).stream().map(Leaderboard.Entry::userId).toList());
+        for (int position = 1; position <= sorted.size(); position++) {
+            assertEquals(position, leaderboard.get(sorted.get(position - 1)).position());
+        }
+
+        Long middle = sorted.get(sorted.size() / 2);
+        List<Leaderboard.Entry> around = leaderboard.around(middle, 3);
+        assertEquals(7, around.size());
+        assertEquals(middle, around.get(3).userId());
+        assertEquals(sorted.get(0), leaderboard.around(sorted.get(0), 3).get(0).userId());
+    }
+
+    @Test
+    void testRankingEndpoints_TopAndAround() throws Exception {
+        // Ámbito propio para no depender de otras pruebas que compartan la clasificación
+        String category = "RANKING_TEST_" + System.nanoTime();
+        LeaderboardService.BoardKey key = LeaderboardService.BoardKey.of(RankingType.TECHNOLOGY_SPECIFIC, category, null);
+        for (int i = 0; i < userIds.size(); i++) {
+            leaderboardService.updatePoints(key, userIds.get(i), (i + 1) * 10);
+        }
+
+        mockMvc.perform(get("/api/rankings/TECHNOLOGY_SPECIFIC/top")
+                .param("category", category)
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].userId").value(userIds.get(4)))
+                .andExpect(jsonPath("$[0].points").value(50))
+                .andExpect(jsonPath("$[0].userName").value("Ranked UserE"))
+                .andExpect(jsonPath("$[1].position").value(2));
+
+        mockMvc.perform(get("/api/rankings/TECHNOLOGY_SPECIFIC/around/" + userIds.get(0))
+                .param("category", category)
+                .param("window", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].userId").value(userIds.get(0)))
+                .andExpect(jsonPath("$[1].position").value(5));
+
+        mockMvc.perform(get("/api/rankings/TECHNOLOGY_SPECIFIC/top"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testLeaderboardService_PersistsAndReloads() {
+        // Instancia propia: la programada podría guardar antes que la prueba
+        LeaderboardService service = new LeaderboardService(jdbcTemplate, new SimpleMeterRegistry());
+        LeaderboardService.BoardKey key = LeaderboardService.BoardKey.of(RankingType.GLOBAL, null, null);
+        service.updatePoints(key, userIds.get(0), 30);
+        service.updatePoints(key, userIds.get(1), 70);
+        service.flush();
+
+        service.updatePoints(key, userIds.get(0), 90);
+        service.flush();
+        service.syncPositions();
+
+        Integer position = jdbcTemplate.queryForObject(
+                "SELECT position FROM rankings WHERE user_id = ? AND type = 'GLOBAL'", Integer.class, userIds.get(1));
+        assertEquals(2, position);
+
+        LeaderboardService reloaded = new LeaderboardService(jdbcTemplate, new SimpleMeterRegistry());
+        reloaded.load();
+        Leaderboard.Entry leader = reloaded.top(key, 1).get(0);
+        assertEquals(userIds.get(0), leader.userId());
+        assertEquals(90, leader.points());
+    }
+
+    @Test
+    void testLeaderboardService_ReloadsOtherNodesAndRetriesFailedBatches() {
+        LeaderboardService.BoardKey key = LeaderboardService.BoardKey.of(RankingType.GLOBAL, null, null);
+        LeaderboardService node = new LeaderboardService(jdbcTemplate, new SimpleMeterRegistry());
+        LeaderboardService otherNode = new LeaderboardService(jdbcTemplate, new SimpleMeterRegistry());
+        node.updatePoints(key, userIds.get(0), 30);
+        node.updatePoints(key, userIds.get(1), 70);
+        node.flush();
+        otherNode.load();
+
+        // Los cambios guardados por un nodo llegan al otro en la siguiente recarga
+        node.updatePoints(key, userIds.get(0), 90);
+        node.flush();
+        otherNode.reload();
+        assertEquals(90, otherNode.getEntry(key, userIds.get(0)).points());
+        assertEquals(userIds.get(0), otherNode.top(key, 1).get(0).userId());
+
+        // Un cambio local aún sin guardar no se pisa con la fila de la tabla
+        otherNode.updatePoints(key, userIds.get(1), 10);
+        otherNode.reload();
+        assertEquals(10, otherNode.getEntry(key, userIds.get(1)).points());
+
+        // Las filas borradas desaparecen de la clasificación
+        jdbcTemplate.update("DELETE FROM rankings WHERE user_id = ? AND type = 'GLOBAL'", userIds.get(0));
+        otherNode.reload();
+        assertNull(otherNode.getEntry(key, userIds.get(0)));
+
+        // Un lote que falla vuelve a la cola y se guarda en el siguiente ciclo
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        JdbcTemplate failing = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                if (failNext.getAndSet(false)) {
+                    throw new TransientDataAccessResourceException("Fallo simulado");
+                }
+                return super.batchUpdate(sql, batchArgs);
+            }
+        };
+        LeaderboardService failingNode = new LeaderboardService(failing, new SimpleMeterRegistry());
+        failingNode.load();
+        failingNode.updatePoints(key, userIds.get(1), 55);
+        failingNode.flush();
+        String pointsSql = "SELECT points FROM rankings WHERE user_id = ? AND type = 'GLOBAL'";
+        assertEquals(70, jdbcTemplate.queryForObject(pointsSql, Integer.class, userIds.get(1)));
+        failingNode.flush();
+        assertEquals(55, jdbcTemplate.queryForObject(pointsSql, Integer.class, userIds.get(1)));
+    }
+
+    @Test
+    void testUserStatsAggregator_AppliesDeltasWithRunningMean() {
+        // Instancias propias: la programada podría aplicar los eventos antes que la prueba
+        LeaderboardService leaderboard = new LeaderboardService(jdbcTemplate, new SimpleMeterRegistry());
+        UserStatsAggregator aggregator = new UserStatsAggregator(
+                jdbcTemplate, transactionManager, leaderboard, new SimpleMeterRegistry(), false);
+        Long userId = userIds.get(0);
+
+        aggregator.onUserActivity(UserActivityEvent.of(userId, UserActivityEvent.Type.CHALLENGE_CREATED));
+        aggregator.onUserActivity(UserActivityEvent.of(userId, UserActivityEvent.Type.CHALLENGE_CREATED));
+        aggregator.onUserActivity(UserActivityEvent.of(userId, UserActivityEvent.Type.MENTORSHIP_JOINED));
+        aggregator.onUserActivity(UserActivityEvent.scored(userId, 80));
+        aggregator.onUserActivity(UserActivityEvent.scored(userId, 90));
+        aggregator.flush();
+
+        Map<String, Object> stats = jdbcTemplate.queryForMap("SELECT * FROM user_stats WHERE user_id = ?", userId);
+        assertEquals(2, ((Number) stats.get("challenges_created")).intValue());
+        assertEquals(1, ((Number) stats.get("mentorships_attended")).intValue());
+        assertEquals(0, new BigDecimal("85.00").compareTo((BigDecimal) stats.get("average_challenge_score")));
+
+        aggregator.onUserActivity(UserActivityEvent.scored(userId, 70));
+        aggregator.onUserActivity(UserActivityEvent.of(userId, UserActivityEvent.Type.MENTORSHIP_LEFT));
+        aggregator.flush();
+
+        stats = jdbcTemplate.queryForMap("SELECT * FROM user_stats WHERE user_id = ?", userId);
+        assertEquals(0, ((Number) stats.get("mentorships_attended")).intValue());
+        assertEquals(3, ((Number) stats.get("scored_submissions")).intValue());
+        assertEquals(240, ((Number) stats.get("total_challenge_score")).intValue());
+        assertEquals(0, new BigDecimal("80.00").compareTo((BigDecimal) stats.get("average_challenge_score")));
+        assertEquals(240, ((Number) stats.get("total_points")).intValue());
+
+        LeaderboardService.BoardKey global = LeaderboardService.BoardKey.of(RankingType.GLOBAL, null, null);
+        assertEquals(240, leaderboard.getEntry(global, userId).points());
+    }
+
+    @Test
+    void testUserStatsAggregator_ReplayRebuildsFromHistory() {
+        User creator = userRepository.findById(userIds.get(0)).orElseThrow();
+        Mentorship mentorship = new Mentorship();
+        mentorship.setTitle("Mentoría con historial");
+        mentorship.setCreator(creator);
+        mentorship.setStatus(ContentStatus.PUBLISHED);
+        mentorship.setType(ContentType.MENTORSHIP);
+        mentorship.setDurationMinutes(60);
+        mentorship.setMentorshipType(MentorshipType.GROUP);
+        Mentorship content = contentRepository.save(mentorship);
+
+        Participation attended = participation(content, userIds.get(1), ParticipationStatus.COMPLETED);
+        participation(content, userIds.get(2), ParticipationStatus.DROPPED);
+        ChallengeSubmission submission = new ChallengeSubmission();
+        submission.setParticipation(attended);
+        submission.setStatus(SubmissionStatus.APPROVED);
+        submission.setScore(75);
+        challengeSubmissionRepository.saveAndFlush(submission);
+
+        LeaderboardService leaderboard = new LeaderboardService(jdbcTemplate, new SimpleMeterRegistry());
+        UserStatsAggregator aggregator = new UserStatsAggregator(
+                jdbcTemplate, transactionManager, leaderboard, new SimpleMeterRegistry(), false);
+        // Un evento pendiente ya incluido en el historial no debe contarse dos veces
+        aggregator.onUserActivity(UserActivityEvent.of(userIds.get(0), UserActivityEvent.Type.MENTORSHIP_CREATED));
+        aggregator.replay();
+        aggregator.flush();
+
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT mentorships_created FROM user_stats WHERE user_id = ?", Integer.class, userIds.get(0)));
+        Map<String, Object> stats = jdbcTemplate.queryForMap("SELECT * FROM user_stats WHERE user_id = ?", userIds.get(1));
+        assertEquals(1, ((Number) stats.get("mentorships_attended")).intValue());
+        assertEquals(1, ((Number) stats.get("mentorships_completed")).intValue());
+        assertEquals(75, ((Number) stats.get("total_points")).intValue());
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM user_stats WHERE user_id = ?", Integer.class, userIds.get(2)));
+
+        LeaderboardService.BoardKey global = LeaderboardService.BoardKey.of(RankingType.GLOBAL, null, null);
+        assertEquals(75, leaderboard.getEntry(global, userIds.get(1)).points());
+    }
+
+    @Test
+    void testUserStatsAggregator_ReplayWaitsForCommittingActivity() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UserStatsAggregator aggregator = new UserStatsAggregator(jdbcTemplate, transactionManager,
+                new LeaderboardService(jdbcTemplate, new SimpleMeterRegistry()), meterRegistry, false);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Transacción que publica actividad y se detiene justo antes de confirmar
+            Future<?> writer = executor.submit(() -> transaction.executeWithoutResult(status -> {
+                UserActivityEvent event = UserActivityEvent.of(userIds.get(0), UserActivityEvent.Type.CHALLENGE_CREATED);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        aggregator.holdReplayFence(event);
+                        committing.countDown();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    @Override
+                    public void afterCommit() {
+                        aggregator.onUserActivity(event);
+                    }
+                });
+            }));
+            assertTrue(committing.await(10, TimeUnit.SECONDS));
+
+            Future<Integer> replay = executor.submit(aggregator::replay);
+            Thread.sleep(300);
+            assertFalse(replay.isDone(), "replay debe esperar a que la transacción encole sus eventos");
+
+            release.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+            replay.get(10, TimeUnit.SECONDS);
+            // El evento se encoló antes de leer el historial: se descarta en lugar de contarse dos veces
+            assertEquals(0.0, meterRegistry.get("user.stats.queue.size").gauge().value());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private Participation participation(Content content, Long userId, ParticipationStatus status) {
+        Participation participation = new Participation();
+        participation.setContent(content);
+        participation.setParticipant(userRepository.getReferenceById(userId));
+        participation.setStatus(status);
+        participation.setJoinedAt(LocalDateTime.now());
+        return participationRepository.saveAndFlush(participation);
+    }
+}
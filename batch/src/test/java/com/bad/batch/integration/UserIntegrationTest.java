@@ -1,7 +1,9 @@
 package com.bad.batch.integration;
 
+import com.bad.batch.dto.security.AuthPrincipal;
 import com.bad.batch.dto.security.TokenResponse;
 import com.bad.batch.dto.security.UserRegistrationRequest;
+import com.bad.batch.model.entities.User;
 import com.bad.batch.model.enums.UserRole;
 import com.bad.batch.repository.UserRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -11,6 +13,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
@@ -18,6 +25,12 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -36,6 +49,12 @@ public class UserIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
     private MockMvc mockMvc;
     private String authToken;
 
@@ -119,6 +138,42 @@ public class UserIntegrationTest {
                 .andExpect(jsonPath("$.length()").value(1));
     }
 
+    @Test
+    void testAuthPrincipal_ProjectsCredentialsAndActiveFlag() {
+        User user = userRepository.findByEmail("test@example.com").orElseThrow();
+
+        AuthPrincipal byEmail = userRepository.findAuthPrincipalByEmail("test@example.com").orElseThrow();
+        assertEquals(user.getId(), byEmail.id());
+        assertEquals("test@example.com", byEmail.email());
+        assertTrue(passwordEncoder.matches("Password123!", byEmail.password()));
+        assertEquals(UserRole.DEVELOPER, byEmail.role());
+        assertTrue(byEmail.isEnabled());
+        assertEquals(byEmail, userRepository.findAuthPrincipalById(user.getId()).orElseThrow());
+
+        user.setIsActive(false);
+        userRepository.saveAndFlush(user);
+        assertFalse(userRepository.findAuthPrincipalById(user.getId()).orElseThrow().isEnabled());
+
+        assertTrue(userRepository.findAuthPrincipalByEmail("nadie@example.com").isEmpty());
+        assertTrue(userRepository.findAuthPrincipalById(user.getId() + 1000).isEmpty());
+    }
+
+    @Test
+    void testUserDetailsService_LoadsUserFromAuthPrincipal() {
+        UserDetails details = userDetailsService.loadUserByUsername("test@example.com");
+        assertEquals("test@example.com", details.getUsername());
+        assertTrue(passwordEncoder.matches("Password123!", details.getPassword()));
+        assertEquals(List.of("ROLE_DEVELOPER"), details.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        assertTrue(details.isEnabled());
+
+        User user = userRepository.findByEmail("test@example.com").orElseThrow();
+        user.setIsActive(false);
+        userRepository.saveAndFlush(user);
+        assertFalse(userDetailsService.loadUserByUsername("test@example.com").isEnabled());
+
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("nadie@example.com"));
+    }
+
     private void createAdditionalUser(String email, String firstName, String lastName) throws Exception {
         UserRegistrationRequest userRequest = new UserRegistrationRequest();
         userRequest.setFirstName(firstName);